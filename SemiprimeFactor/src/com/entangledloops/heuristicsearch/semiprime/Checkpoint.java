@@ -0,0 +1,532 @@
+package com.entangledloops.heuristicsearch.semiprime;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A snapshot of a search on disk, so a long run survives a restart:
+ * [int MAGIC][int VERSION][varint target bytes][target magnitude][varint journal generation][varint counter count][varint counters...]
+ * [varint open count][open nodes, each followed by its double h][varint closed count][closed nodes...]
+ *
+ * Nodes are sorted in bit-trie order (by their lowest differing bit), so neighbours share the low bits
+ * their common ancestors fixed. Each node is its depth, then for p and q the number of low bits shared
+ * w/the previous node and the remaining bits little-endian. Siblings cost a few bytes instead of two full factors.
+ *
+ * Snapshots are written next to the file and renamed over it, so a crash mid-write leaves the
+ * previous one intact. They are read back through memory maps.
+ *
+ * Between snapshots, a {@link Journal} can record every expansion, so a crash loses seconds of work
+ * instead of everything since the last snapshot. Each snapshot names the first journal segment it does
+ * not include; recovery is the snapshot plus the replay of that segment and any after it.
+ *
+ * @since October 19, 2026
+ */
+public class Checkpoint
+{
+  public static final int MAGIC   = 0x53504350; ///< "SPCP"
+  public static final int VERSION = 2; ///< 1 had no journal generation
+
+  public static final int JOURNAL_MAGIC   = 0x53504A4C; ///< "SPJL"
+  public static final int JOURNAL_VERSION = 1;
+
+  private static final int  BUFFER_BYTES = 1 << 20; ///< write buffer
+  private static final long WINDOW_BYTES = 1L << 30; ///< largest single mapping while reading
+
+  /**
+   * An open node and its h (NaN if it still has to be evaluated).
+   */
+  public static class Entry extends Packet.Factors
+  {
+    private static final long serialVersionUID = 1L;
+
+    public final double h;
+
+    public Entry(int depth, BigInteger p, BigInteger q, double h)
+    {
+      super(depth, p, q);
+      this.h = h;
+    }
+  }
+
+  /**
+   * Everything read back from a checkpoint.
+   */
+  public static class Snapshot
+  {
+    public final BigInteger           target;
+    public final long                 journal; ///< first journal segment not included
+    public final long[]               counters; ///< solver stats, in the order they were saved
+    public final List<Entry>          open;
+    public final List<Packet.Factors> closed;
+    public final long                 bytes;
+
+    Snapshot(BigInteger target, long journal, long[] counters, List<Entry> open, List<Packet.Factors> closed, long bytes)
+    {
+      this.target = target;
+      this.journal = journal;
+      this.counters = counters;
+      this.open = open;
+      this.closed = closed;
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * Writes a snapshot, replacing any previous one only once it is complete.
+   * @param file the checkpoint
+   * @param target the semiprime being searched
+   * @param journal the first journal segment written after open and closed were copied (0 if none)
+   * @param counters solver stats to restore on resume
+   * @param open unexpanded nodes
+   * @param closed generated nodes
+   * @return the size of the file in bytes
+   */
+  public static long write(File file, BigInteger target, long journal, long[] counters, List<Entry> open, List<Packet.Factors> closed) throws IOException
+  {
+    final File tmp = new File(file.getPath() + ".tmp");
+    final int max = maxNodeBytes(target);
+    final ByteBuffer buf = ByteBuffer.allocate(Math.max(BUFFER_BYTES, 2 * max));
+    long bytes = 0;
+    try (final FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+    {
+      final byte[] magnitude = target.abs().toByteArray();
+      buf.putInt(MAGIC).putInt(VERSION);
+      Packet.varint(buf, magnitude.length); buf.put(magnitude);
+      Packet.varint(buf, journal);
+      Packet.varint(buf, counters.length);
+      for (long c : counters) Packet.varint(buf, Packet.zigzag(c));
+
+      for (List<? extends Packet.Factors> nodes : Arrays.asList(open, closed))
+      {
+        final Key[] keys = new Key[nodes.size()];
+        for (int i = 0; i < keys.length; ++i) keys[i] = new Key(nodes.get(i));
+        Arrays.sort(keys);
+
+        Packet.varint(buf, keys.length);
+        Key prev = null;
+        for (Key k : keys)
+        {
+          if (buf.remaining() < max) bytes += flush(out, buf);
+          node(buf, k, prev);
+          if (k.f instanceof Entry) buf.putDouble(((Entry) k.f).h);
+          prev = k;
+        }
+      }
+
+      bytes += flush(out, buf);
+      out.force(false);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return bytes;
+  }
+
+  /**
+   * Maps a snapshot and decodes it.
+   * @param file the checkpoint
+   * @return its contents
+   * @throws IOException if the file cannot be read or is not a complete checkpoint
+   */
+  public static Snapshot read(File file) throws IOException
+  {
+    try (final FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+    {
+      final Window w = new Window(in);
+      ByteBuffer buf = w.ensure(2 * Integer.BYTES + 5);
+      if (MAGIC != buf.getInt()) throw new IOException("not a checkpoint: " + file);
+      final int version = buf.getInt();
+      if (version < 1 || version > VERSION) throw new IOException("unsupported checkpoint version " + version + ": " + file);
+
+      final int len = count(Packet.varint(buf), w.size);
+      final byte[] magnitude = new byte[len];
+      w.ensure(len).get(magnitude);
+      final BigInteger target = new BigInteger(1, magnitude);
+      final int max = maxNodeBytes(target);
+
+      buf = w.ensure(max);
+      final long journal = version >= 2 ? Packet.varint(buf) : 0;
+      final long[] counters = new long[count(Packet.varint(buf), w.size)];
+      for (int i = 0; i < counters.length; ++i) counters[i] = Packet.unzigzag(Packet.varint(w.ensure(10)));
+
+      final int opened = count(Packet.varint(w.ensure(5)), w.size);
+      final List<Entry> open = new ArrayList<>(opened);
+      final byte[] p = new byte[max], q = new byte[max]; // little-endian bits of the previous node
+      for (int i = 0; i < opened; ++i)
+      {
+        buf = w.ensure(max);
+        final int depth = depth(buf);
+        open.add(new Entry(depth, bits(buf, p, depth + 1), bits(buf, q, depth + 1), buf.getDouble()));
+      }
+
+      final int closedCount = count(Packet.varint(w.ensure(5)), w.size);
+      final List<Packet.Factors> closed = new ArrayList<>(closedCount);
+      for (int i = 0; i < closedCount; ++i)
+      {
+        buf = w.ensure(max);
+        final int depth = depth(buf);
+        closed.add(new Packet.Factors(depth, bits(buf, p, depth + 1), bits(buf, q, depth + 1)));
+      }
+
+      return new Snapshot(target, journal, counters, open, closed, w.size);
+    }
+    catch (RuntimeException e) { throw new IOException("corrupt checkpoint: " + file, e); }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //
+  // journal
+  //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * An append-only log of expanded nodes, written sequentially in segments next to the checkpoint.
+   * A segment is [int JOURNAL_MAGIC][int JOURNAL_VERSION][long generation] followed by batches of
+   * [int length][int crc32][nodes...], each node delta-encoded against the one before it in the batch,
+   * as in a snapshot. A node's children are not recorded: they follow from the node and the target.
+   *
+   * Nodes are buffered and only reach the disk as whole batches, so replay stops cleanly at the first
+   * batch a crash cut short. Not thread-safe; the solver appends from a single thread.
+   */
+  public static class Journal implements AutoCloseable
+  {
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES;
+    private static final int BATCH_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final File       checkpoint;
+    private final int        max;
+    private final ByteBuffer buf;
+    private final CRC32      crc = new CRC32();
+    private FileChannel      out;
+    private long             generation;
+    private Key              prev = null;
+    private long             appended = 0;
+    private long             bytes = 0;
+
+    /**
+     * Starts a new segment.
+     * @param checkpoint the checkpoint this journal belongs to
+     * @param target the semiprime being searched
+     * @param generation the new segment's generation, past any already on disk
+     */
+    public Journal(File checkpoint, BigInteger target, long generation) throws IOException
+    {
+      this.checkpoint = checkpoint;
+      this.max = maxNodeBytes(target);
+      this.buf = ByteBuffer.allocate(Math.max(BUFFER_BYTES, 2 * max));
+      open(generation);
+    }
+
+    public long generation() { return generation; }
+    public long appended() { return appended; } ///< nodes, in every segment so far
+    public long bytes() { return bytes; } ///< written, in every segment so far
+
+    /// queues one expanded node for the next batch
+    public void append(Packet.Factors f) throws IOException
+    {
+      if (buf.remaining() < max) flush();
+      if (0 == buf.position()) { buf.position(BATCH_HEADER_BYTES); prev = null; }
+      final Key k = new Key(f);
+      node(buf, k, prev);
+      prev = k;
+      ++appended;
+    }
+
+    /// writes the pending batch and forces it to disk
+    public void sync() throws IOException
+    {
+      flush();
+      out.force(false);
+    }
+
+    /**
+     * Syncs and closes this segment, and starts the next.
+     * @return the new segment's generation
+     */
+    public long rotate() throws IOException
+    {
+      sync();
+      out.close();
+      open(generation + 1);
+      return generation;
+    }
+
+    @Override public void close() throws IOException
+    {
+      try { sync(); }
+      finally { out.close(); }
+    }
+
+    private void open(long generation) throws IOException
+    {
+      this.generation = generation;
+      out = FileChannel.open(segment(checkpoint, generation).toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      header.putInt(JOURNAL_MAGIC).putInt(JOURNAL_VERSION).putLong(generation).flip();
+      while (header.hasRemaining()) out.write(header);
+      bytes += HEADER_BYTES;
+    }
+
+    private void flush() throws IOException
+    {
+      if (buf.position() <= BATCH_HEADER_BYTES) { buf.clear(); return; }
+      final int len = buf.position() - BATCH_HEADER_BYTES;
+      crc.reset();
+      crc.update(buf.array(), BATCH_HEADER_BYTES, len);
+      buf.putInt(0, len).putInt(Integer.BYTES, (int) crc.getValue());
+      bytes += Checkpoint.flush(out, buf);
+    }
+
+    /// the file holding one segment
+    public static File segment(File checkpoint, long generation) { return new File(checkpoint.getPath() + ".journal." + generation); }
+
+    /**
+     * @return the generations of every segment on disk, oldest first
+     */
+    public static long[] segments(File checkpoint)
+    {
+      final File dir = null != checkpoint.getAbsoluteFile().getParentFile() ? checkpoint.getAbsoluteFile().getParentFile() : new File(".");
+      final String prefix = checkpoint.getName() + ".journal.";
+      final String[] names = dir.list((d, name) -> name.startsWith(prefix));
+      if (null == names) return new long[0];
+
+      final long[] generations = new long[names.length];
+      int n = 0;
+      for (String name : names) try { generations[n] = Long.parseLong(name.substring(prefix.length())); ++n; } catch (NumberFormatException ignored) {}
+      final long[] found = Arrays.copyOf(generations, n);
+      Arrays.sort(found);
+      return found;
+    }
+
+    /**
+     * Deletes the segments a snapshot already includes.
+     * @param before the first generation still needed
+     */
+    public static void compact(File checkpoint, long before)
+    {
+      for (long g : segments(checkpoint)) if (g < before && !segment(checkpoint, g).delete()) Log.e("journal: failed to delete " + segment(checkpoint, g));
+    }
+
+    /**
+     * Replays every segment from a generation on, oldest first, stopping at the first damaged batch.
+     * @param from the first generation to replay (a snapshot's {@link Snapshot#journal})
+     * @param expanded receives each recorded node, in order
+     * @return the number of nodes replayed
+     */
+    public static long replay(File checkpoint, BigInteger target, long from, Consumer<Packet.Factors> expanded) throws IOException
+    {
+      final int max = maxNodeBytes(target);
+      final byte[] p = new byte[max], q = new byte[max];
+      final CRC32 crc = new CRC32();
+      long replayed = 0;
+
+      for (long g : segments(checkpoint))
+      {
+        if (g < from) continue;
+        final File file = segment(checkpoint, g);
+        try (final FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+          final Window w = new Window(in);
+          if (w.size < HEADER_BYTES) { Log.e("journal: empty segment " + file); break; }
+          ByteBuffer buf = w.ensure(HEADER_BYTES);
+          if (JOURNAL_MAGIC != buf.getInt() || JOURNAL_VERSION != buf.getInt() || g != buf.getLong()) throw new IOException("not a journal segment: " + file);
+
+          while (w.base + (buf = w.ensure(BATCH_HEADER_BYTES)).position() + BATCH_HEADER_BYTES <= w.size)
+          {
+            final int len = buf.getInt(), sum = buf.getInt();
+            if (len <= 0 || len > Math.max(BUFFER_BYTES, 2 * max) || w.base + buf.position() + len > w.size) { Log.o("journal: " + file + " ends in a partial batch"); return replayed; }
+
+            final ByteBuffer batch = w.ensure(len).slice();
+            batch.limit(len);
+            crc.reset();
+            crc.update(batch.duplicate());
+            if (sum != (int) crc.getValue()) { Log.e("journal: damaged batch in " + file + ", replay stopped"); return replayed; }
+
+            while (batch.hasRemaining())
+            {
+              final int depth = depth(batch);
+              expanded.accept(new Packet.Factors(depth, bits(batch, p, depth + 1), bits(batch, q, depth + 1)));
+              ++replayed;
+            }
+            w.buf.position(w.buf.position() + len);
+          }
+        }
+        catch (RuntimeException e) { throw new IOException("corrupt journal: " + file, e); }
+      }
+      return replayed;
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //
+  // encoding
+  //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /// a node never needs more than this: 3 varints, both factors in full, and h
+  private static int maxNodeBytes(BigInteger target) { return 3 * 5 + 2 * ((target.bitLength() + 8) >>> 3) + Double.BYTES; }
+
+  private static long flush(FileChannel out, ByteBuffer buf) throws IOException
+  {
+    buf.flip();
+    final int n = buf.remaining();
+    while (buf.hasRemaining()) out.write(buf);
+    buf.clear();
+    return n;
+  }
+
+  /**
+   * A node's factors as little-endian 64-bit words, compared from the low bit up w/o any BigInteger arithmetic.
+   */
+  private static class Key implements Comparable<Key>
+  {
+    final Packet.Factors f;
+    final long[] p, q;
+
+    Key(Packet.Factors f)
+    {
+      this.f = f;
+      this.p = words(f.p);
+      this.q = words(f.q);
+    }
+
+    /// trie order: by the lowest bit in which p (then q) differs, then by depth
+    @Override public int compareTo(Key o)
+    {
+      int c = compare(p, o.p);
+      if (0 == c) c = compare(q, o.q);
+      return 0 != c ? c : Integer.compare(f.depth, o.f.depth);
+    }
+
+    private static int compare(long[] a, long[] b)
+    {
+      for (int i = 0, n = Math.max(a.length, b.length); i < n; ++i)
+      {
+        final long x = word(a, i), y = word(b, i);
+        if (x != y) return 0 != (x & Long.lowestOneBit(x ^ y)) ? 1 : -1;
+      }
+      return 0;
+    }
+  }
+
+  private static long[] words(BigInteger v)
+  {
+    final byte[] bytes = v.toByteArray(); // big-endian, maybe w/a sign byte
+    final long[] words = new long[(bytes.length + 7) >>> 3];
+    for (int i = 0; i < bytes.length; ++i) words[i >>> 3] |= (bytes[bytes.length - 1 - i] & 0xFFL) << ((i & 7) << 3);
+    return words;
+  }
+
+  private static long word(long[] v, int i) { return i < v.length ? v[i] : 0L; }
+
+  /// the 8 bits of v starting at bit offset
+  private static byte bits8(long[] v, int offset)
+  {
+    final int i = offset >>> 6, r = offset & 63;
+    return (byte) (r <= 56 ? word(v, i) >>> r : (word(v, i) >>> r) | (word(v, i + 1) << (64 - r)));
+  }
+
+  private static void node(ByteBuffer buf, Key k, Key prev)
+  {
+    Packet.varint(buf, k.f.depth);
+    bits(buf, k.p, null != prev ? prev.p : null, k.f.depth + 1);
+    bits(buf, k.q, null != prev ? prev.q : null, k.f.depth + 1);
+  }
+
+  /// how many of the low len bits v shares w/prev, then the rest of those bits, little-endian
+  private static void bits(ByteBuffer buf, long[] v, long[] prev, int len)
+  {
+    int shared = len;
+    if (null == prev) shared = 0;
+    else for (int i = 0, n = (len + 63) >>> 6; i < n; ++i)
+    {
+      final long x = word(v, i) ^ word(prev, i);
+      if (0 != x) { shared = Math.min(len, (i << 6) + Long.numberOfTrailingZeros(x)); break; }
+    }
+    Packet.varint(buf, shared);
+    for (int offset = shared; offset < len; offset += 8) buf.put(bits8(v, offset));
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //
+  // decoding
+  //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static int depth(ByteBuffer buf)
+  {
+    final long depth = Packet.varint(buf);
+    if (depth < 0 || depth > Integer.MAX_VALUE) throw new IllegalArgumentException("bad depth: " + depth);
+    return (int) depth;
+  }
+
+  /**
+   * Reads the bits of one factor on top of the previous node's.
+   * @param prev the previous factor's little-endian bits, updated in place
+   * @return the factor
+   */
+  private static BigInteger bits(ByteBuffer buf, byte[] prev, int len)
+  {
+    final int shared = (int) Packet.varint(buf);
+    final int bytes = (len + 7) >>> 3;
+    if (shared < 0 || shared > len || bytes > prev.length) throw new IllegalArgumentException("bad shared bit count: " + shared);
+
+    // keep the low shared bits, then or in the rest at that offset
+    final int i = shared >>> 3, r = shared & 7;
+    prev[i] &= (byte) ((1 << r) - 1);
+    Arrays.fill(prev, i + 1, prev.length, (byte) 0);
+    for (int j = 0, n = (len - shared + 7) >>> 3; j < n; ++j)
+    {
+      final int b = buf.get() & 0xFF;
+      prev[i + j] |= (byte) (b << r);
+      if (0 != r && i + j + 1 < prev.length) prev[i + j + 1] |= (byte) (b >>> (8 - r));
+    }
+
+    final byte[] magnitude = new byte[bytes];
+    for (int j = 0; j < bytes; ++j) magnitude[bytes - 1 - j] = prev[j];
+    return new BigInteger(1, magnitude);
+  }
+
+  /// a count that cannot be larger than the file it was read from
+  private static int count(long n, long size)
+  {
+    if (n < 0 || n > size || n > Integer.MAX_VALUE) throw new IllegalArgumentException("bad count: " + n);
+    return (int) n;
+  }
+
+  /**
+   * Maps a file a window at a time, so files past 2 GB can be read w/plain buffers.
+   */
+  private static class Window
+  {
+    final FileChannel in;
+    final long        size;
+    long              base = 0; ///< file offset of buf's position 0
+    ByteBuffer        buf;
+
+    Window(FileChannel in) throws IOException
+    {
+      this.in = in;
+      this.size = in.size();
+      this.buf = in.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_BYTES));
+    }
+
+    /// the mapping, moved forward if fewer than bytes are left in it (and more are in the file)
+    ByteBuffer ensure(int bytes) throws IOException
+    {
+      if (buf.remaining() >= bytes || base + buf.limit() >= size) return buf;
+      base += buf.position();
+      buf = in.map(FileChannel.MapMode.READ_ONLY, base, Math.min(size - base, WINDOW_BYTES));
+      return buf;
+    }
+  }
+}
@@ -0,0 +1,300 @@
+package com.entangledloops.heuristicsearch.semiprime;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Flight recorder events for the search's hot paths, so a production run can be profiled w/the standard
+ * tools and its phases lined up against gc and lock contention. Nothing here is touched unless
+ * {@link Solver#flight()} is set; after that an event costs a check of its type's enabled flag until a
+ * recording turns it on. Per-node events (closed inserts, evaluations) are sampled, 1 in
+ * {@link Solver#flightSample()}; expansions are reported in batches of the same size.
+ *
+ * jdk.jfr is only reached through reflection, and the events are defined at runtime w/its EventFactory,
+ * so the same source still builds for java 8. The per-event calls go through method handles looked up once,
+ * not {@link Method#invoke}, so checking a type costs no argument array or boxing. Needs jdk.jfr (java 8u262+ or 11+) to record anything,
+ * see {@link Utils#flightRecorder()}; w/o it every event type stays disabled.
+ *
+ * @since October 19, 2026
+ */
+public class Flight
+{
+  private static final Class<?>       annotationElement = type("jdk.jfr.AnnotationElement");
+  private static final Constructor<?> annotation = constructor(annotationElement, Class.class, Object.class);
+  private static final Constructor<?> field      = constructor(type("jdk.jfr.ValueDescriptor"), Class.class, String.class, List.class);
+  private static final Method         create     = method("jdk.jfr.EventFactory", "create", List.class, List.class);
+  private static final Method         eventType  = method("jdk.jfr.EventFactory", "getEventType");
+  private static final MethodHandle   newEvent   = handle(method("jdk.jfr.EventFactory", "newEvent"), Object.class, Object.class);
+  private static final MethodHandle   isEnabled  = handle(method("jdk.jfr.EventType", "isEnabled"), boolean.class, Object.class);
+  private static final MethodHandle   begin      = handle(method("jdk.jfr.Event", "begin"), void.class, Object.class);
+  private static final MethodHandle   set        = handle(method("jdk.jfr.Event", "set", int.class, Object.class), void.class, Object.class, int.class, Object.class);
+  private static final MethodHandle   commit     = handle(method("jdk.jfr.Event", "commit"), void.class, Object.class);
+
+  private static final Type BATCH = new Type("semiprime.ExpansionBatch", "Expansion Batch", "Search", "A run of one worker's search steps", null,
+      field(int.class, "worker", "Worker", null), field(int.class, "steps", "Steps", null),
+      field(long.class, "expanded", "Expanded", "Solver total at the end of the batch"), field(int.class, "open", "Open", null));
+  private static final Type OPEN_WAIT = new Type("semiprime.OpenWait", "Open List Wait", "Search", "Time a worker spent taking a node from open", "1 ms",
+      field(long.class, "fails", "Empty Polls", null), field(boolean.class, "found", "Found", null));
+  private static final Type CLOSED_INSERT = new Type("semiprime.ClosedInsert", "Closed Set Insert", "Search", null, null,
+      field(int.class, "depth", "Depth", null), field(boolean.class, "duplicate", "Duplicate", null));
+  private static final Type EVALUATION = new Type("semiprime.Evaluation", "Heuristic Evaluation", "Search", null, null,
+      field(int.class, "depth", "Depth", null), field(int.class, "arms", "Arms", "Heuristics evaluated for the node"), field(double.class, "h", "H", null));
+  private static final Type RECEIVED = new Type("semiprime.PacketReceived", "Packet Received", "Network", "Reading and decoding one frame, from its length prefix on", null,
+      field(String.class, "type", "Type", null), bytes(int.class, "bytes", "Bytes"), field(boolean.class, "compressed", "Compressed", null));
+  private static final Type FLUSH = new Type("semiprime.PacketFlush", "Packet Flush", "Network", "Encoding and sending the packets coalesced into one write", null,
+      field(int.class, "frames", "Frames", null), bytes(long.class, "rawBytes", "Raw Bytes"), bytes(long.class, "sentBytes", "Sent Bytes"));
+  private static final Type[] TYPES = { BATCH, OPEN_WAIT, CLOSED_INSERT, EVALUATION, RECEIVED, FLUSH };
+
+  private static Class<?> type(String klass)
+  {
+    try { return Class.forName(klass); }
+    catch (Throwable t) { return null; }
+  }
+
+  private static Constructor<?> constructor(Class<?> klass, Class<?>... params)
+  {
+    try { return klass.getConstructor(params); }
+    catch (Throwable t) { return null; }
+  }
+
+  private static Method method(String klass, String method, Class<?>... params)
+  {
+    try { return Class.forName(klass).getMethod(method, params); }
+    catch (Throwable t) { return null; }
+  }
+
+  /// a method as a handle taking and returning erased types, so callers need not name jdk.jfr's; null if missing
+  private static MethodHandle handle(Method method, Class<?> returns, Class<?>... params)
+  {
+    try { return MethodHandles.publicLookup().unreflect(method).asType(MethodType.methodType(returns, params)); }
+    catch (Throwable t) { return null; }
+  }
+
+  /// an annotation on a runtime-defined event or field, e.g. (jdk.jfr.Label, "Depth")
+  private static Object annotation(String klass, Object value) throws ReflectiveOperationException
+  {
+    return annotation.newInstance(Class.forName(klass), value);
+  }
+
+  /// a field of a runtime-defined event; its value is set by position, in the order fields are given
+  private static Object field(Class<?> type, String name, String label, String description)
+  {
+    try
+    {
+      final List<Object> annotations = new ArrayList<>();
+      annotations.add(annotation("jdk.jfr.Label", label));
+      if (null != description) annotations.add(annotation("jdk.jfr.Description", description));
+      return field.newInstance(type, name, annotations);
+    }
+    catch (Throwable t) { return null; }
+  }
+
+  /// a field holding a number of bytes
+  private static Object bytes(Class<?> type, String name, String label)
+  {
+    try { return field.newInstance(type, name, Arrays.asList(annotation("jdk.jfr.Label", label), annotation("jdk.jfr.DataAmount", "BYTES"))); }
+    catch (Throwable t) { return null; }
+  }
+
+  /**
+   * An event type defined at runtime; disabled for good if jdk.jfr is missing.
+   */
+  private static class Type
+  {
+    final String name;
+    private final MethodHandle enabled, factory; ///< bound to this type, so a check is one call
+
+    Type(String name, String label, String category, String description, String threshold, Object... fields)
+    {
+      this.name = name;
+      MethodHandle enabled = null, factory = null;
+      try
+      {
+        final List<Object> annotations = new ArrayList<>();
+        annotations.add(annotation("jdk.jfr.Name", name));
+        annotations.add(annotation("jdk.jfr.Label", label));
+        annotations.add(annotation("jdk.jfr.Category", new String[] { "Semiprime", category }));
+        annotations.add(annotation("jdk.jfr.StackTrace", false));
+        if (null != description) annotations.add(annotation("jdk.jfr.Description", description));
+        if (null != threshold) annotations.add(annotation("jdk.jfr.Threshold", threshold));
+        final Object f = create.invoke(null, annotations, Arrays.asList(fields));
+        enabled = isEnabled.bindTo(eventType.invoke(f));
+        factory = newEvent.bindTo(f);
+      }
+      catch (Throwable t) { enabled = factory = null; }
+      this.enabled = enabled;
+      this.factory = factory;
+    }
+
+    boolean enabled()
+    {
+      try { return null != enabled && (boolean) enabled.invokeExact(); }
+      catch (Throwable t) { return false; }
+    }
+
+    /// @return a new, started event, or null if it could not be made
+    Object begin()
+    {
+      try { final Object e = (Object) factory.invokeExact(); Flight.begin.invokeExact(e); return e; }
+      catch (Throwable t) { return null; }
+    }
+  }
+
+  /// sets an event's fields in order, then commits it
+  private static void commit(Object event, Object... values)
+  {
+    try
+    {
+      for (int i = 0; i < values.length; ++i) set.invokeExact(event, i, values[i]);
+      commit.invokeExact(event);
+    }
+    catch (Throwable t) { Log.e("flight event lost", t); }
+  }
+
+  public static class OpenWait
+  {
+    private final Object event;
+    private OpenWait(Object event) { this.event = event; }
+    public void done(long fails, boolean found) { commit(event, fails, found); }
+  }
+
+  public static class ClosedInsert
+  {
+    private final Object event;
+    private ClosedInsert(Object event) { this.event = event; }
+    public void done(int depth, boolean duplicate) { commit(event, depth, duplicate); }
+  }
+
+  public static class Evaluation
+  {
+    private final Object event;
+    private Evaluation(Object event) { this.event = event; }
+    public void done(int depth, int arms, double h) { commit(event, depth, arms, h); }
+  }
+
+  public static class PacketReceived
+  {
+    private final Object event;
+    private PacketReceived(Object event) { this.event = event; }
+    public void done(Packet packet, int bytes, boolean compressed) { commit(event, null != packet ? packet.type().name() : null, bytes, compressed); }
+  }
+
+  public static class PacketFlush
+  {
+    private final Object event;
+    private PacketFlush(Object event) { this.event = event; }
+    public void done(int frames, long rawBytes, long sentBytes) { commit(event, frames, rawBytes, sentBytes); }
+  }
+
+  /**
+   * Tracks one worker's current batch; only that worker may use it.
+   */
+  public static class Batch
+  {
+    private final int worker, size;
+    private Object event;
+    private int steps;
+
+    public Batch(int worker, int size) { this.worker = worker; this.size = Math.max(1, size); }
+
+    /// @return true once the batch is full and should be ended
+    public boolean step()
+    {
+      if (null == event) { if (!BATCH.enabled() || null == (event = BATCH.begin())) return false; }
+      return ++steps >= size;
+    }
+
+    public void end(long expanded, int open)
+    {
+      if (null == event) return;
+      commit(event, worker, steps, expanded, open);
+      event = null; steps = 0;
+    }
+  }
+
+  /// @return a started event, or null if no recording wants it
+  public static OpenWait openWait()
+  {
+    final Object e = OPEN_WAIT.enabled() ? OPEN_WAIT.begin() : null;
+    return null != e ? new OpenWait(e) : null;
+  }
+
+  /// @return a started event for 1 in sample calls, otherwise (or if no recording wants it) null
+  public static ClosedInsert closedInsert(int sample)
+  {
+    final Object e = CLOSED_INSERT.enabled() && sampled(sample) ? CLOSED_INSERT.begin() : null;
+    return null != e ? new ClosedInsert(e) : null;
+  }
+
+  /// @return a started event for 1 in sample calls, otherwise (or if no recording wants it) null
+  public static Evaluation evaluation(int sample)
+  {
+    final Object e = EVALUATION.enabled() && sampled(sample) ? EVALUATION.begin() : null;
+    return null != e ? new Evaluation(e) : null;
+  }
+
+  /// @return a started event, or null if no recording wants it
+  public static PacketReceived received()
+  {
+    final Object e = RECEIVED.enabled() ? RECEIVED.begin() : null;
+    return null != e ? new PacketReceived(e) : null;
+  }
+
+  /// @return a started event, or null if no recording wants it
+  public static PacketFlush flush()
+  {
+    final Object e = FLUSH.enabled() ? FLUSH.begin() : null;
+    return null != e ? new PacketFlush(e) : null;
+  }
+
+  private static boolean sampled(int sample) { return sample <= 1 || 0 == ThreadLocalRandom.current().nextInt(sample); }
+
+  /**
+   * A recording of every event defined here, driven through reflection like the events themselves,
+   * so tests and tools need not depend on jdk.jfr either.
+   */
+  public static class Recording implements AutoCloseable
+  {
+    private final Object recording;
+
+    public Recording() throws ReflectiveOperationException
+    {
+      final Class<?> klass = Class.forName("jdk.jfr.Recording");
+      recording = klass.getConstructor().newInstance();
+      final Method enable = klass.getMethod("enable", String.class);
+      for (Type type : TYPES) enable.invoke(recording, type.name);
+    }
+
+    private void call(String method) throws ReflectiveOperationException { recording.getClass().getMethod(method).invoke(recording); }
+
+    public void start() throws ReflectiveOperationException { call("start"); }
+    public void stop() throws ReflectiveOperationException { call("stop"); }
+    public void dump(File file) throws ReflectiveOperationException { recording.getClass().getMethod("dump", Path.class).invoke(recording, file.toPath()); }
+    @Override public void close() throws ReflectiveOperationException { call("close"); }
+  }
+
+  /**
+   * @param dump a recording written by {@link Recording#dump(File)} (or any jfr file)
+   * @return the number of events of each type in it, by event name
+   */
+  public static Map<String, Integer> count(File dump) throws ReflectiveOperationException
+  {
+    final Method getEventType = Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getEventType");
+    final Method getName = Class.forName("jdk.jfr.EventType").getMethod("getName");
+    final Map<String, Integer> counts = new TreeMap<>();
+    for (Object e : (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile").getMethod("readAllEvents", Path.class).invoke(null, dump.toPath()))
+      counts.merge((String) getName.invoke(getEventType.invoke(e)), 1, Integer::sum);
+    return counts;
+  }
+}
@@ -0,0 +1,81 @@
+package com.entangledloops.heuristicsearch.semiprime;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-range histogram cheap enough to update on every expansion. Counts are striped: each thread
+ * adds to the stripe its id picks, so workers rarely share a cache line, and the stripes are only
+ * summed when a snapshot is taken. Values outside [min, max) land in the first or last bucket.
+ *
+ * @since October 19, 2026
+ */
+public class Histogram
+{
+  private static final int PAD = 8; ///< longs between stripes (one cache line)
+
+  private final double          min;
+  private final double          width; ///< of one bucket
+  private final int             buckets;
+  private final int             mask; ///< stripes - 1
+  private final AtomicLongArray counts; ///< stripe-major, each stripe followed by padding
+
+  /**
+   * @param buckets number of equal-width buckets
+   * @param min low end of the first bucket
+   * @param max high end of the last bucket
+   */
+  public Histogram(int buckets, double min, double max)
+  {
+    if (buckets < 1 || !(max > min)) throw new NullPointerException("invalid histogram: " + buckets + " buckets in [" + min + ", " + max + ")");
+    this.buckets = buckets;
+    this.min = min;
+    this.width = (max - min) / buckets;
+    final int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) << 1;
+    this.mask = stripes - 1;
+    this.counts = new AtomicLongArray(stripes * (buckets + PAD));
+  }
+
+  public void record(double v)
+  {
+    final int bucket = v < min ? 0 : (int) Math.min(buckets - 1, (v - min) / width);
+    final int stripe = (int) Thread.currentThread().getId() & mask;
+    counts.incrementAndGet(stripe * (buckets + PAD) + bucket);
+  }
+
+  /**
+   * @return every bucket's count, summed over the stripes (not atomic w/respect to concurrent records)
+   */
+  public long[] snapshot()
+  {
+    final long[] sum = new long[buckets];
+    for (int stripe = 0; stripe <= mask; ++stripe) for (int i = 0; i < buckets; ++i) sum[i] += counts.get(stripe * (buckets + PAD) + i);
+    return sum;
+  }
+
+  public void reset() { for (int i = 0; i < counts.length(); ++i) counts.set(i, 0); }
+
+  /**
+   * @param counts a snapshot
+   * @param q the quantile, in [0, 1]
+   * @return the high end of the bucket holding it, or NaN if nothing was recorded
+   */
+  public double quantile(long[] counts, double q)
+  {
+    long total = 0;
+    for (long c : counts) total += c;
+    if (0 == total) return Double.NaN;
+    final long rank = (long) Math.ceil(q * total);
+    long seen = 0;
+    for (int i = 0; i < counts.length; ++i) if ((seen += counts[i]) >= Math.max(1, rank)) return min + (i + 1) * width;
+    return min + counts.length * width;
+  }
+
+  /// p50, p90, p99 and the top of the highest non-empty bucket
+  @Override public String toString()
+  {
+    final long[] counts = snapshot();
+    int top = -1;
+    for (int i = 0; i < counts.length; ++i) if (0 != counts[i]) top = i;
+    return -1 == top ? "empty" : String.format("p50 %.4g, p90 %.4g, p99 %.4g, max %.4g", quantile(counts, 0.5), quantile(counts, 0.9), quantile(counts, 0.99), min + (top + 1) * width);
+  }
+}
@@ -1,21 +1,68 @@
 package com.entangledloops.heuristicsearch.semiprime;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
+ * Messages are queued in a bounded ring and printed (and handed to the callback) by a single
+ * drainer thread, so a caller never blocks on the console or the gui. Trace may only fill part of the
+ * ring, so a flood of it never crowds out anything else. When there is no room the message is dropped
+ * and counted instead, and the drainer reports how many were lost once it catches up; errors are never
+ * dropped, their caller waits for room instead. Messages below the current level are dropped before they are queued.
+ *
  * @author Stephen Dunn
  * @since October 31, 2015
  */
 public class Log
 {
-  private static final AtomicBoolean    enabled        = new AtomicBoolean(true);
-  private static final ReentrantLock    outputLock     = new ReentrantLock(true);
-  private static       Consumer<String> outputCallback = null;
+  public enum Level { TRACE, INFO, ERROR }
 
+  private static final int CAPACITY = 1 << 16; ///< queued messages, a power of 2
+  private static final int TRACE_CAPACITY = CAPACITY - (CAPACITY >>> 2); ///< the last quarter is kept for info and errors
+
+  private static final AtomicBoolean           enabled        = new AtomicBoolean(true);
+  private static final AtomicReference<Level>  level          = new AtomicReference<>(Level.TRACE);
+  private static volatile Consumer<String>     outputCallback = null;
+
+  // ring: producers claim a slot by moving tail, the drainer empties slots and moves head
+  private static final AtomicReferenceArray<Entry> ring    = new AtomicReferenceArray<>(CAPACITY);
+  private static final AtomicLong                  tail    = new AtomicLong(0); ///< next slot to claim
+  private static final AtomicLong                  head    = new AtomicLong(0); ///< next slot to drain (drainer only writes)
+  private static final LongAdder                   dropped = new LongAdder();
+  private static volatile boolean                  parked  = false; ///< drainer is waiting for work
+  private static final Thread                      drainer;
+
+  static
+  {
+    drainer = new Thread(Log::drain, "log");
+    drainer.setDaemon(true);
+    drainer.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log flush"));
+  }
+
+  private static class Entry
+  {
+    final Level level;
+    final String msg;
+    final Supplier<String> deferred; ///< appended to msg by the drainer, if set
+    final Throwable t;
+    Entry(Level level, String msg, Throwable t) { this(level, msg, null, t); }
+    Entry(Level level, String msg, Supplier<String> deferred, Throwable t) { this.level = level; this.msg = msg; this.deferred = deferred; this.t = t; }
+  }
+
+  /**
+   * Messages already queued still go to the previous callback.
+   */
   public static void init(Consumer<String> outputCallback)
   {
+    flush();
     Log.outputCallback = outputCallback;
   }
 
@@ -25,24 +72,112 @@ public class Log
   public static void disable() { enabled.set(false); }
   public static boolean disabled() { return !enabled(); }
 
+  public static Level level() { return level.get(); }
+  public static void level(Level level) { if (null == level) e("invalid level: null"); else Log.level.set(level); }
+
+  /// true if a message at this level would be kept; check before building an expensive one
+  public static boolean enabled(Level level) { return enabled() && level.ordinal() >= level().ordinal(); }
+
+  /**
+   * @return messages lost because the ring was full
+   */
+  public static long dropped() { return dropped.sum(); }
+
+  /// for per-node tracing on hot paths
+  public static void t(final String s) { if (enabled(Level.TRACE)) offer(new Entry(Level.TRACE, s, null)); }
+
+  /**
+   * Traces s + arg, but only builds the message if trace is on, so a filtered call costs neither the
+   * concatenation nor arg.toString(). arg is formatted before queuing, since nodes change after they are traced.
+   */
+  public static void t(final String s, final Object arg) { if (enabled(Level.TRACE)) offer(new Entry(Level.TRACE, s + arg, null)); }
+
+  /**
+   * Traces s + message.get(), leaving the formatting to the drainer, so the caller pays for neither.
+   * message must only read values that never change; capture the rest when it is made (see Solver.Node#trace()).
+   */
+  public static void t(final String s, final Supplier<String> message) { if (enabled(Level.TRACE)) offer(new Entry(Level.TRACE, s, message, null)); }
+
   public static void o(final String s)
   {
-    if (disabled()) return;
-
-    if (null != s) System.out.println(s); else e(null, null);
-    if (null != outputCallback) Utils.lockAndRun(outputLock, () -> outputCallback.accept(s));
+    if (!enabled(Level.INFO)) return;
+    if (null != s) offer(new Entry(Level.INFO, s, null)); else e(null, null);
   }
 
   public static void e(final String msg) { e(msg, null); }
   public static void e(final Throwable t) { e(null, t); }
   public static void e(final String s, final Throwable t)
   {
-    if (disabled()) return;
+    if (!enabled(Level.ERROR)) return;
 
     final String msg = (null != s && s.trim().length() > 0 ? s.trim() : "") + (null != t ? t.getMessage() : "");
-    System.err.println(!"".equals(msg) ? msg : "empty error reported");
+    offer(new Entry(Level.ERROR, !"".equals(msg) ? msg : "empty error reported", t));
+  }
 
-    if (null != t) t.printStackTrace();
-    if (null != outputCallback) Utils.lockAndRun(outputLock, () -> outputCallback.accept(msg));
+  /**
+   * Waits (up to a few seconds) until every message queued before the call has been handled.
+   */
+  public static void flush()
+  {
+    if (Thread.currentThread() == drainer) return;
+    final long target = tail.get(), deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (head.get() < target && System.nanoTime() < deadline) { LockSupport.unpark(drainer); Thread.yield(); }
+  }
+
+  private static void offer(Entry entry)
+  {
+    final long limit = Level.TRACE == entry.level ? TRACE_CAPACITY : CAPACITY;
+    for (long t; ; )
+    {
+      t = tail.get();
+      if (t - head.get() >= limit)
+      {
+        // an error waits for the drainer to make room, unless it is the drainer's own
+        if (Level.ERROR != entry.level || Thread.currentThread() == drainer) { dropped.increment(); return; }
+        LockSupport.unpark(drainer); Thread.yield(); continue;
+      }
+      if (tail.compareAndSet(t, t + 1)) { ring.lazySet((int) t & (CAPACITY - 1), entry); break; }
+    }
+    if (parked) LockSupport.unpark(drainer);
+  }
+
+  private static void drain()
+  {
+    long reported = 0;
+    while (true)
+    {
+      final long h = head.get();
+      final int slot = (int) h & (CAPACITY - 1);
+      final Entry entry = ring.get(slot);
+      if (null == entry)
+      {
+        if (tail.get() == h)
+        {
+          final long lost = dropped.sum();
+          if (lost != reported) { print(new Entry(Level.ERROR, "log: " + (lost - reported) + " messages dropped (ring full)", null)); reported = lost; }
+          parked = true;
+          if (tail.get() == h) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+          parked = false;
+        }
+        else Thread.yield(); // slot claimed, not yet written
+        continue;
+      }
+      ring.lazySet(slot, null);
+      print(entry);
+      head.set(h + 1);
+    }
+  }
+
+  private static void print(Entry entry)
+  {
+    try
+    {
+      final String msg = null != entry.deferred ? entry.msg + entry.deferred.get() : entry.msg;
+      if (Level.ERROR == entry.level) { System.err.println(msg); if (null != entry.t) entry.t.printStackTrace(); }
+      else System.out.println(msg);
+      final Consumer<String> callback = outputCallback;
+      if (null != callback) callback.accept(msg);
+    }
+    catch (Throwable ignored) {}
   }
 }
@@ -0,0 +1,131 @@
+package com.entangledloops.heuristicsearch.semiprime;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed-size node records outside the Java heap, in a memory-mapped scratch file, so a frontier can
+ * outgrow the heap and the collector never has to trace it. A record is
+ * [int depth][int flags][long key][double h][p, width bytes][q, width bytes] (factors big-endian),
+ * where width is fixed by the target's length. Freed slots are reused before the file grows.
+ *
+ * The file is deleted as soon as it is open (where the platform allows), so nothing is left behind.
+ * Not thread-safe; the owner serializes access.
+ *
+ * @since October 19, 2026
+ */
+public class NodeArena implements AutoCloseable
+{
+  public static final int DEPTH = 0;
+  public static final int FLAGS = Integer.BYTES;
+  public static final int KEY   = 2 * Integer.BYTES;
+  public static final int H     = KEY + Long.BYTES;
+  public static final int P     = H + Double.BYTES;
+
+  private static final int CHUNK_BYTES = 1 << 26; ///< one mapping; records never span two
+
+  private final FileChannel        channel;
+  private final int                width; ///< bytes per factor
+  private final int                recordBytes;
+  private final int                perChunk; ///< records per mapping
+  private final List<ByteBuffer>   chunks = new ArrayList<>();
+  private int[]                    free = new int[1024]; ///< stack of released slots
+  private int                      freed = 0;
+  private int                      next = 0; ///< first slot never used
+
+  /**
+   * @param dir where to put the scratch file (null for the default temp directory)
+   * @param bits the most bits a factor can have
+   */
+  public NodeArena(File dir, int bits) throws IOException
+  {
+    this.width = (bits + 7) >>> 3;
+    this.recordBytes = (P + 2 * width + 7) & ~7;
+    this.perChunk = CHUNK_BYTES / recordBytes;
+    final File file = File.createTempFile("arena-", ".bin", dir);
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (!file.delete()) file.deleteOnExit();
+  }
+
+  public int width() { return width; }
+  public int recordBytes() { return recordBytes; }
+  public int size() { return next - freed; } ///< slots in use
+  public long bytes() { return (long) chunks.size() * perChunk * recordBytes; } ///< mapped so far
+
+  /**
+   * @return a slot for a new record, mapping more of the file if every slot is taken
+   */
+  public int allocate() throws IOException
+  {
+    if (freed > 0) return free[--freed];
+    if (next == chunks.size() * perChunk)
+    {
+      final ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, (long) chunks.size() * perChunk * recordBytes, (long) perChunk * recordBytes);
+      chunks.add(chunk.order(ByteOrder.LITTLE_ENDIAN));
+    }
+    return next++;
+  }
+
+  public void free(int slot)
+  {
+    if (freed == free.length) free = Arrays.copyOf(free, free.length << 1);
+    free[freed++] = slot;
+  }
+
+  /// releases every slot, keeping the mappings for reuse
+  public void clear() { freed = 0; next = 0; }
+
+  /// the mapping holding a slot; read and write it at offset(slot)
+  public ByteBuffer chunk(int slot) { return chunks.get(slot / perChunk); }
+  public int offset(int slot) { return (slot % perChunk) * recordBytes; }
+
+  private static final byte[] ZEROS = new byte[256];
+
+  /**
+   * Writes a factor's magnitude, big-endian and zero-padded on the left to width.
+   */
+  public void factor(int slot, int field, BigInteger v) { factor(slot, field, v.toByteArray()); }
+
+  /**
+   * Writes a factor already converted w/BigInteger.toByteArray(), so the conversion can happen outside the owner's lock.
+   */
+  public void factor(int slot, int field, byte[] bytes)
+  {
+    final int skip = bytes.length > width ? bytes.length - width : 0;
+    if (skip > 1 || (1 == skip && 0 != bytes[0])) throw new IllegalArgumentException("factor wider than " + width + " bytes");
+
+    final ByteBuffer chunk = chunk(slot);
+    chunk.position(offset(slot) + field);
+    for (int pad = width - (bytes.length - skip); pad > 0; pad -= ZEROS.length) chunk.put(ZEROS, 0, Math.min(pad, ZEROS.length));
+    chunk.put(bytes, skip, bytes.length - skip);
+  }
+
+  /**
+   * Copies a factor's magnitude out, so it can be built outside the owner's lock.
+   */
+  public byte[] factor(int slot, int field)
+  {
+    final ByteBuffer chunk = chunk(slot);
+    chunk.position(offset(slot) + field);
+    final byte[] bytes = new byte[width];
+    chunk.get(bytes);
+    return bytes;
+  }
+
+  /// where q starts in a record
+  public int q() { return P + width; }
+
+  @Override public void close() throws IOException
+  {
+    chunks.clear(); // mappings are released once collected
+    channel.close();
+  }
+}
@@ -1,10 +1,28 @@
 package com.entangledloops.heuristicsearch.semiprime;
 
 import java.io.Serializable;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
+ * Packets are sent as length-prefixed binary frames:
+ * [int frame length][varint type][varint value count][tagged values...]
+ *
+ * A large frame may instead be deflated, flagged by the top bit of its length:
+ * [int frame length | COMPRESSED][int inflated length][deflate stream]
+ *
+ * Integers are zigzag varints, BigIntegers are raw magnitude bytes, and nodes are
+ * only their depth and factors, so no class descriptors or solver state cross the wire.
+ *
  * @author Stephen Dunn
  * @since November 4, 2015
  */
@@ -12,18 +30,31 @@ public class Packet implements Serializable
 {
   public enum Type
   {
-    UPDATE,
+    UPDATE, ///< seq, target, generated nodes, expanded nodes (only those since the previous update)
     TARGET_UPDATE,
     USERNAME_UPDATE,
     EMAIL_UPDATE,
     OPEN_UPDATE,
     OPEN_CHECK,
-    CLOSED_UPDATE,
-    CLOSED_CHECK,
+    CLOSED_UPDATE, ///< id, target, fingerprints of expanded nodes to add to the sharded closed set
+    CLOSED_CHECK, ///< id, target, fingerprints to look up in the sharded closed set
     SOLUTION_UPDATE,
-    ERROR
+    ERROR,
+    UPDATE_ACK, ///< seq of an update the server has merged
+    CLOSED_FOUND, ///< id, target, fingerprints that were in the sharded closed set (answer to a CLOSED_CHECK)
+    CAPABILITY_UPDATE ///< processors, processor cap %, memory cap %, measured expansions/s
   }
 
+  /// value tags, the ordinal is written as one byte
+  private enum Tag { NULL, FALSE, TRUE, INT, LONG, DOUBLE, STRING, BIG_INTEGER, NODE, LIST, LONGS }
+
+  public static final int HEADER_BYTES    = Integer.BYTES; ///< frame length prefix
+  public static final int MAX_FRAME_BYTES = 64 << 20; ///< larger frames are treated as corrupt
+  public static final int COMPRESSED      = 1 << 31; ///< length prefix flag of a deflated frame
+
+  private static final Type[] types = Type.values();
+  private static final Tag[]  tags  = Tag.values();
+
   private final Type type;
   private final Object[] data;
 
@@ -49,4 +80,260 @@ public class Packet implements Serializable
 
   public <T> List<T> asList() { return asList(0); }
   public <T> List<T> asList(int i) { return (List<T>) data[i]; }
+
+  public long[] asLongs(int i) { return data(i, long[].class); }
+
+  /**
+   * A search node as it appears on the wire: what is needed to rebuild it in any solver.
+   */
+  public static class Factors implements Serializable
+  {
+    private static final long serialVersionUID = 1L;
+
+    public final int depth;
+    public final BigInteger p, q;
+
+    public Factors(int depth, BigInteger p, BigInteger q)
+    {
+      this.depth = depth;
+      this.p = p;
+      this.q = q;
+    }
+
+    @Override public String toString() { return p + ":p:" + q + ":q:" + depth + ":depth"; }
+    @Override public boolean equals(Object o) { return o instanceof Factors && ((Factors) o).depth == depth && p.equals(((Factors) o).p) && q.equals(((Factors) o).q); }
+    @Override public int hashCode() { return 37 * (37 * depth + p.hashCode()) + q.hashCode(); }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //
+  // encoding
+  //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Writes this packet as one frame after buf's position, growing the buffer if needed.
+   * @param buf a reusable buffer, cleared by the caller
+   * @return the buffer holding the frame (buf, or a larger replacement), flipped and ready to send
+   */
+  public ByteBuffer encode(ByteBuffer buf)
+  {
+    final int start = buf.position();
+    while (true)
+    {
+      try
+      {
+        buf.position(start + HEADER_BYTES);
+        varint(buf, type.ordinal());
+        varint(buf, size());
+        for (int i = 0; i < size(); ++i) value(buf, data[i]);
+
+        buf.putInt(start, buf.position() - start - HEADER_BYTES);
+        buf.flip();
+        return buf;
+      }
+      catch (BufferOverflowException e)
+      {
+        final ByteBuffer larger = ByteBuffer.allocate(buf.capacity() << 1);
+        buf.position(start).flip();
+        larger.put(buf);
+        buf = larger;
+      }
+    }
+  }
+
+  /**
+   * Deflates the frame between start and buf's position in place, unless that would not make it smaller.
+   * @param buf in write mode, w/the frame just encoded (encode() then position(limit).limit(capacity))
+   * @param start where the frame's length prefix is
+   * @param deflater reused by the caller
+   * @return true if the frame was compressed
+   */
+  public static boolean deflate(ByteBuffer buf, int start, Deflater deflater)
+  {
+    final int len = buf.position() - start - HEADER_BYTES, room = len - Integer.BYTES;
+    if (room <= 0) return false;
+
+    final byte[] deflated = new byte[room];
+    deflater.reset();
+    deflater.setInput(buf.array(), buf.arrayOffset() + start + HEADER_BYTES, len);
+    deflater.finish();
+    int n = 0;
+    while (!deflater.finished() && n < room) n += deflater.deflate(deflated, n, room - n);
+    if (!deflater.finished()) return false;
+
+    buf.putInt(start, (Integer.BYTES + n) | COMPRESSED);
+    buf.position(start + HEADER_BYTES);
+    buf.putInt(len).put(deflated, 0, n);
+    return true;
+  }
+
+  /// @return the body length in a frame's length prefix
+  public static int length(int prefix) { return prefix & ~COMPRESSED; }
+  public static boolean compressed(int prefix) { return 0 != (prefix & COMPRESSED); }
+
+  private static void value(ByteBuffer buf, Object o)
+  {
+    if (null == o) tag(buf, Tag.NULL);
+    else if (o instanceof Boolean) tag(buf, (Boolean) o ? Tag.TRUE : Tag.FALSE);
+    else if (o instanceof Integer) { tag(buf, Tag.INT); varint(buf, zigzag((Integer) o)); }
+    else if (o instanceof Long) { tag(buf, Tag.LONG); varint(buf, zigzag((Long) o)); }
+    else if (o instanceof Double) { tag(buf, Tag.DOUBLE); buf.putDouble((Double) o); }
+    else if (o instanceof String) { tag(buf, Tag.STRING); bytes(buf, ((String) o).getBytes(StandardCharsets.UTF_8)); }
+    else if (o instanceof BigInteger) { tag(buf, Tag.BIG_INTEGER); buf.put((byte) ((BigInteger) o).signum()); magnitude(buf, (BigInteger) o); }
+    else if (o instanceof Solver.Node) { final Solver.Node n = (Solver.Node) o; tag(buf, Tag.NODE); node(buf, n.depth(), n.p, n.q); }
+    else if (o instanceof Factors) { final Factors f = (Factors) o; tag(buf, Tag.NODE); node(buf, f.depth, f.p, f.q); }
+    else if (o instanceof long[]) { final long[] longs = (long[]) o; tag(buf, Tag.LONGS); varint(buf, longs.length); for (long l : longs) buf.putLong(l); } // fixed width, fingerprints do not shrink as varints
+    else if (o instanceof Map) value(buf, ((Map) o).keySet());
+    else if (o instanceof Collection)
+    {
+      // concurrent collections may change while we write, so the count is patched in afterward
+      tag(buf, Tag.LIST);
+      final int countAt = buf.position();
+      buf.putInt(0);
+      int count = 0;
+      for (Object e : (Collection) o) { value(buf, e); ++count; }
+      buf.putInt(countAt, count);
+    }
+    else throw new IllegalArgumentException("unsupported packet value: " + o.getClass().getName());
+  }
+
+  private static void tag(ByteBuffer buf, Tag tag) { buf.put((byte) tag.ordinal()); }
+
+  private static void node(ByteBuffer buf, int depth, BigInteger p, BigInteger q)
+  {
+    varint(buf, depth);
+    magnitude(buf, p);
+    magnitude(buf, q);
+  }
+
+  /// unsigned big-endian bytes of |i|, w/o the sign byte BigInteger.toByteArray() may add
+  private static void magnitude(ByteBuffer buf, BigInteger i)
+  {
+    final byte[] bytes = i.abs().toByteArray();
+    final int skip = bytes.length > 1 && 0 == bytes[0] ? 1 : 0;
+    varint(buf, bytes.length - skip);
+    buf.put(bytes, skip, bytes.length - skip);
+  }
+
+  private static void bytes(ByteBuffer buf, byte[] bytes) { varint(buf, bytes.length); buf.put(bytes); }
+
+  static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+  static long unzigzag(long v) { return (v >>> 1) ^ -(v & 1); }
+
+  static void varint(ByteBuffer buf, long v)
+  {
+    while ((v & ~0x7FL) != 0) { buf.put((byte) ((v & 0x7F) | 0x80)); v >>>= 7; }
+    buf.put((byte) v);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //
+  // decoding
+  //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Reads one frame body (everything after the length prefix).
+   * Nodes come back as {@link Factors}; use {@link Solver#node(Factors)} to rebuild them.
+   * @param buf the frame body, positioned at its start and limited to its end
+   * @param compressed true if the frame's length prefix was flagged, see {@link #compressed(int)}
+   * @return the decoded packet
+   * @throws IllegalArgumentException if the frame is malformed
+   */
+  public static Packet decode(ByteBuffer buf, boolean compressed)
+  {
+    if (!compressed) return decode(buf);
+
+    final Inflater inflater = new Inflater();
+    try
+    {
+      final int len = buf.getInt();
+      if (len < 0 || len > MAX_FRAME_BYTES) throw new IllegalArgumentException("bad inflated length: " + len);
+      final byte[] inflated = new byte[len];
+      inflater.setInput(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+      int n = 0;
+      for (int k; n < len && 0 != (k = inflater.inflate(inflated, n, len - n)); ) n += k;
+      if (n != len) throw new IllegalArgumentException("truncated compressed frame");
+      buf.position(buf.limit());
+      return decode(ByteBuffer.wrap(inflated));
+    }
+    catch (DataFormatException | RuntimeException e) { throw e instanceof IllegalArgumentException ? (IllegalArgumentException) e : new IllegalArgumentException("malformed compressed frame", e); }
+    finally { inflater.end(); }
+  }
+
+  /// an uncompressed frame body
+  public static Packet decode(ByteBuffer buf)
+  {
+    try
+    {
+      final int type = (int) varint(buf);
+      if (type < 0 || type >= types.length) throw new IllegalArgumentException("unknown packet type: " + type);
+
+      final int size = count(buf, varint(buf));
+      final Object[] data = new Object[size];
+      for (int i = 0; i < size; ++i) data[i] = value(buf);
+      return new Packet(types[type], data);
+    }
+    catch (RuntimeException e) { throw e instanceof IllegalArgumentException ? e : new IllegalArgumentException("malformed packet", e); }
+  }
+
+  private static Object value(ByteBuffer buf)
+  {
+    final int tag = buf.get() & 0xFF;
+    if (tag >= tags.length) throw new IllegalArgumentException("unknown value tag: " + tag);
+
+    switch (tags[tag])
+    {
+      case NULL: return null;
+      case FALSE: return Boolean.FALSE;
+      case TRUE: return Boolean.TRUE;
+      case INT: return (int) unzigzag(varint(buf));
+      case LONG: return unzigzag(varint(buf));
+      case DOUBLE: return buf.getDouble();
+      case STRING: return new String(bytes(buf), StandardCharsets.UTF_8);
+      case BIG_INTEGER: { final int signum = buf.get(); return new BigInteger(signum, bytes(buf)); }
+      case NODE: { final int depth = (int) varint(buf); return new Factors(depth, new BigInteger(1, bytes(buf)), new BigInteger(1, bytes(buf))); }
+      case LIST:
+      {
+        final int size = count(buf, buf.getInt());
+        final List<Object> list = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) list.add(value(buf));
+        return list;
+      }
+      case LONGS:
+      {
+        final long[] longs = new long[count(buf, varint(buf) * Long.BYTES) / Long.BYTES];
+        for (int i = 0; i < longs.length; ++i) longs[i] = buf.getLong();
+        return longs;
+      }
+      default: throw new IllegalArgumentException("unhandled value tag: " + tags[tag]);
+    }
+  }
+
+  private static byte[] bytes(ByteBuffer buf)
+  {
+    final byte[] bytes = new byte[count(buf, varint(buf))];
+    buf.get(bytes);
+    return bytes;
+  }
+
+  /// every value takes at least one byte, so a count can never exceed what is left
+  private static int count(ByteBuffer buf, long count)
+  {
+    if (count < 0 || count > buf.remaining()) throw new IllegalArgumentException("bad length: " + count);
+    return (int) count;
+  }
+
+  static long varint(ByteBuffer buf)
+  {
+    long v = 0;
+    for (int shift = 0; shift < 64; shift += 7)
+    {
+      final byte b = buf.get();
+      v |= (long) (b & 0x7F) << shift;
+      if (b >= 0) return v;
+    }
+    throw new IllegalArgumentException("varint too long");
+  }
 }
@@ -0,0 +1,86 @@
+package com.entangledloops.heuristicsearch.semiprime;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Tie-breaking policies for nodes w/equal f. Every node carries a single long sort key: f's bits in the
+ * high bits, mapped so the key sorts exactly as {@link Double#compare} does, and the tie-breaker chosen here
+ * in the low bits. Each policy reserves only the tie bits it needs; those come off the bottom of f's
+ * mantissa, so f stays exact under NONE and keeps 52 - {@link #bits} bits of relative precision otherwise,
+ * at any magnitude (f never saturates, however large the target or anytimeWeight).
+ *
+ * @since October 19, 2026
+ */
+public enum Priority
+{
+  NONE("None", "Ties are popped in whatever order the heap yields them.", 0, (depth, seq) -> 0L),
+
+  DEEPEST("Deepest First", "Among equal f, prefer the node furthest from the root.\nKeeps the frontier narrow when h is coarse.", 16,
+      (depth, seq) -> Priority.DEPTH_MASK - Math.min(depth, Priority.DEPTH_MASK)),
+
+  FIFO("First In, First Out", "Among equal f, prefer the node generated earliest.", 32, (depth, seq) -> seq),
+
+  LIFO("Last In, First Out", "Among equal f, prefer the node generated most recently.", 32, (depth, seq) -> ~seq),
+
+  RANDOM("Random", "Among equal f, pick uniformly at random.", 16, (depth, seq) -> ThreadLocalRandom.current().nextLong()),
+  ;
+
+  private static final long DEPTH_MASK = (1L << 16) - 1L; ///< deepest first ranks depths up to 2^16, past any the search reaches
+
+  public final int bits; ///< low key bits reserved for the tie-breaker; 32 for fifo/lifo, whose insertion order wraps after 2^32, far beyond any open list
+  private final long mask;
+  private final String name, desc;
+  private final LongBinaryOperator function;
+  Priority(String name, String desc, int bits, LongBinaryOperator function)
+  {
+    this.name = name;
+    this.desc = "<html>" + desc.replace("\n","<br>") + "</html>";
+    this.bits = bits;
+    this.mask = (1L << bits) - 1L;
+    this.function = function;
+  }
+
+  @Override public String toString() { return name; }
+  public String description() { return desc; }
+
+  /**
+   * @return true if this policy needs a global insertion counter
+   */
+  public boolean ordered() { return FIFO == this || LIFO == this; }
+
+  /**
+   * @param depth depth of the node being prioritized
+   * @param seq insertion sequence number (only meaningful if {@link #ordered()})
+   * @return the tie-breaker, in [0, 2^bits)
+   */
+  public long tie(int depth, long seq) { return function.applyAsLong(depth, seq) & mask; }
+
+  /**
+   * Packs f and a tie-breaker into one comparable key; smaller keys are popped first.
+   * @param f the node's priority
+   * @param tie a value from {@link #tie(int, long)}
+   */
+  public long key(double f, long tie)
+  {
+    final long raw = Double.doubleToLongBits(f);
+    final long sortable = raw ^ ((raw >> 63) & Long.MAX_VALUE); // negatives flip their magnitude bits, so signed order is numeric order
+    return (sortable >> bits << bits) | (tie & mask);
+  }
+
+  /// @return the tie-breaker of a key made by this policy
+  public long tie(long key) { return key & mask; }
+
+  /// @return the f of a key made by this policy, w/the low mantissa bits its tie-breaker took cleared
+  public double f(long key)
+  {
+    final long sortable = key >> bits << bits;
+    return Double.longBitsToDouble(sortable ^ ((sortable >> 63) & Long.MAX_VALUE));
+  }
+
+  public static Priority fromFormattedName(String name)
+  {
+    for (Priority p : Priority.values()) if (p.toString().equals(name)) return p;
+    return null;
+  }
+}
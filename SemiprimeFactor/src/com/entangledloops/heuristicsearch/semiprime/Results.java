@@ -0,0 +1,338 @@
+package com.entangledloops.heuristicsearch.semiprime;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Targets already factored, on disk, so a repeat search is answered w/o searching.
+ * Results are keyed by the target and the p and q lengths the search was constrained to.
+ *
+ * Two files: an append-only log of results, [int DATA_MAGIC][int VERSION] then records of
+ * [int length][varint pLen][varint qLen][varint depth][varint bytes][target][varint bytes][p][varint bytes][q],
+ * and a memory-mapped index over it, [int MAGIC][int VERSION][int capacity][int count][long end] then
+ * capacity slots of [long key][long record offset], open addressed w/linear probing and rebuilt twice
+ * as large at half full. A lookup is a probe of the mapping and one read of the record.
+ *
+ * The index can always be rebuilt from the log, so it is rebuilt whenever it is missing or damaged.
+ * Writers take a lock on the log, so several processes can share one store.
+ *
+ * @since October 19, 2026
+ */
+public class Results
+{
+  public static final int MAGIC      = 0x53505249; ///< "SPRI"
+  public static final int DATA_MAGIC = 0x53505244; ///< "SPRD"
+  public static final int VERSION    = 1;
+
+  private static final int  HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+  private static final int  DATA_HEADER_BYTES = 2 * Integer.BYTES;
+  private static final int  SLOT_BYTES = 2 * Long.BYTES;
+  private static final int  MIN_CAPACITY = 1 << 10;
+  private static final long EMPTY = 0L; ///< 0 is never a key; key() remaps it
+
+  private static final Map<File, Results> opened = new ConcurrentHashMap<>(); ///< one instance (and mapping) per store
+
+  private final File        file; ///< the index
+  private final File        data; ///< the log
+  private final FileChannel log; ///< kept open for lookups
+  private MappedByteBuffer  index;
+  private Object            indexKey; ///< identity of the mapped index file, to notice when another process replaces it
+  private int               capacity;
+
+  private Results(File file) throws IOException
+  {
+    this.file = file.getAbsoluteFile();
+    this.data = new File(this.file.getPath() + ".dat");
+    map();
+    this.log = FileChannel.open(data.toPath(), StandardOpenOption.READ);
+  }
+
+  /**
+   * @param file the index; the log is kept next to it
+   * @return the store, or null if it cannot be opened
+   */
+  public static Results open(File file)
+  {
+    if (null == file) return null;
+    try { return opened.computeIfAbsent(file.getAbsoluteFile(), f -> { try { return new Results(f); } catch (IOException e) { throw new IllegalStateException(e); } }); }
+    catch (Throwable t) { Log.e("result cache unavailable: " + file, t); return null; }
+  }
+
+  public File file() { return file; }
+  public synchronized int size() { return index.getInt(3 * Integer.BYTES); }
+
+  /**
+   * Hashes a result's key to 64 bits.
+   */
+  public static long key(BigInteger target, int pLen, int qLen)
+  {
+    long h = Fingerprints.mix((long) pLen << 32 | (qLen & 0xFFFFFFFFL));
+    h = Fingerprints.mix(h ^ target.longValue()) ^ ((long) target.bitLength() << 32 | (target.hashCode() & 0xFFFFFFFFL));
+    h = Fingerprints.mix(h);
+    return EMPTY != h ? h : 1L;
+  }
+
+  /**
+   * @param target the semiprime
+   * @param pLen the length p was constrained to (0 if any)
+   * @param qLen the length q was constrained to (0 if any)
+   * @return the factors found for it before, or null
+   */
+  public synchronized Packet.Factors get(BigInteger target, int pLen, int qLen)
+  {
+    try
+    {
+      final Packet.Factors found = find(target, pLen, qLen);
+      if (null != found || Objects.equals(indexKey, identity())) return found;
+      map(); // another process grew or rebuilt the index since it was mapped
+      return find(target, pLen, qLen);
+    }
+    catch (Throwable t) { Log.e("result cache lookup failed: " + file, t); return null; }
+  }
+
+  /**
+   * Records a solution, unless it is already known or does not multiply to the target.
+   * @return true if it was added
+   */
+  public synchronized boolean put(BigInteger target, int pLen, int qLen, Packet.Factors solution)
+  {
+    if (null == target || null == solution || !target.equals(solution.p.multiply(solution.q))) { Log.e("result cache: not a solution for " + target + ": " + solution); return false; }
+    try (final FileChannel out = FileChannel.open(data.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+    {
+      final FileLock lock = out.lock();
+      try
+      {
+        if (!Objects.equals(indexKey, identity())) map();
+        if (null != find(target, pLen, qLen)) return false;
+
+        // append past the last complete record (overwriting anything a crash left half written), then index it
+        final long end = index.getLong(4 * Integer.BYTES);
+        final ByteBuffer record = record(target, pLen, qLen, solution);
+        while (record.hasRemaining()) out.write(record, end + record.position());
+        out.force(false);
+
+        final int count = size() + 1;
+        if (count << 1 > capacity) { rebuild(out, capacity << 1); map(); return true; }
+        slot(index, key(target, pLen, qLen), end);
+        index.putInt(3 * Integer.BYTES, count).putLong(4 * Integer.BYTES, end + record.limit());
+        index.force();
+        return true;
+      }
+      finally { lock.release(); }
+    }
+    catch (Throwable t) { Log.e("result cache: failed to record " + target, t); return false; }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //
+  // index
+  //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private Packet.Factors find(BigInteger target, int pLen, int qLen) throws IOException
+  {
+    final long key = key(target, pLen, qLen);
+    final int mask = capacity - 1;
+    for (int i = (int) key & mask; ; i = (i + 1) & mask)
+    {
+      final int at = HEADER_BYTES + i * SLOT_BYTES;
+      final long k = index.getLong(at);
+      if (EMPTY == k) return null;
+      if (key != k) continue;
+
+      // a matching key can still be a collision, so compare the record itself
+      final Record r = read(index.getLong(at + Long.BYTES));
+      if (null != r && r.pLen == pLen && r.qLen == qLen && target.equals(r.target)) return r.solution;
+    }
+  }
+
+  private static void slot(ByteBuffer index, long key, long offset)
+  {
+    final int mask = index.getInt(2 * Integer.BYTES) - 1;
+    for (int i = (int) key & mask; ; i = (i + 1) & mask)
+    {
+      final int at = HEADER_BYTES + i * SLOT_BYTES;
+      if (EMPTY != index.getLong(at)) continue;
+      index.putLong(at + Long.BYTES, offset);
+      index.putLong(at, key);
+      return;
+    }
+  }
+
+  /// maps the index, rebuilding it first if it is missing or does not match the log
+  private void map() throws IOException
+  {
+    if (!valid())
+    {
+      try (final FileChannel out = FileChannel.open(data.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+      {
+        final FileLock lock = out.lock();
+        try
+        {
+          if (0 == out.size())
+          {
+            final ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_BYTES);
+            header.putInt(DATA_MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) out.write(header, header.position());
+            out.force(false);
+          }
+          if (!valid()) rebuild(out, 0);
+        }
+        finally { lock.release(); }
+      }
+    }
+
+    try (final FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE))
+    {
+      index = in.map(FileChannel.MapMode.READ_WRITE, 0, in.size());
+      capacity = index.getInt(2 * Integer.BYTES);
+      indexKey = identity();
+    }
+  }
+
+  /// true if the index file exists and has a sane header
+  private boolean valid()
+  {
+    if (!file.exists()) return false;
+    try (final FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+    {
+      if (in.size() < HEADER_BYTES) return false;
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      while (header.hasRemaining() && in.read(header) >= 0) {}
+      header.flip();
+      final int magic = header.getInt(), version = header.getInt(), capacity = header.getInt(), count = header.getInt();
+      final long end = header.getLong();
+      return MAGIC == magic && VERSION == version && capacity >= MIN_CAPACITY && 0 == (capacity & (capacity - 1)) &&
+          count >= 0 && count <= capacity >> 1 && in.size() == HEADER_BYTES + (long) capacity * SLOT_BYTES && end >= DATA_HEADER_BYTES && end <= data.length();
+    }
+    catch (IOException e) { return false; }
+  }
+
+  /**
+   * Writes a new index of every complete record in the log, and renames it over the old one.
+   * The caller holds the log's lock.
+   * @param capacity the smallest capacity to use
+   */
+  private void rebuild(FileChannel log, int capacity) throws IOException
+  {
+    final long size = log.size();
+    final ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_BYTES);
+    while (header.hasRemaining() && log.read(header, header.position()) > 0) {}
+    header.flip();
+    if (size < DATA_HEADER_BYTES || DATA_MAGIC != header.getInt() || VERSION != header.getInt()) throw new IOException("not a result log: " + data);
+
+    // count the records first, to size the table once
+    int count = 0;
+    long end = DATA_HEADER_BYTES;
+    for (Record r; null != (r = read(log, end, size)); end += r.bytes) ++count;
+    capacity = Math.max(Math.max(MIN_CAPACITY, capacity), Integer.highestOneBit(Math.max(1, count) << 2));
+
+    final ByteBuffer table = ByteBuffer.allocate(HEADER_BYTES + capacity * SLOT_BYTES);
+    table.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(count).putLong(end);
+    for (long at = DATA_HEADER_BYTES; at < end; )
+    {
+      final Record r = read(log, at, size);
+      slot(table, key(r.target, r.pLen, r.qLen), at);
+      at += r.bytes;
+    }
+    table.clear();
+
+    final File tmp = new File(file.getPath() + ".tmp");
+    try (final FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+    {
+      while (table.hasRemaining()) out.write(table);
+      out.force(false);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Log.o("result cache: indexed " + count + " results in " + file + " (capacity " + capacity + ")");
+  }
+
+  /// the index file's identity, which changes when it is replaced
+  private Object identity()
+  {
+    try { return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey(); }
+    catch (IOException e) { return null; }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //
+  // records
+  //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static class Record
+  {
+    final BigInteger     target;
+    final int            pLen, qLen;
+    final Packet.Factors solution;
+    final int            bytes; ///< including the length prefix
+
+    Record(BigInteger target, int pLen, int qLen, Packet.Factors solution, int bytes)
+    {
+      this.target = target;
+      this.pLen = pLen;
+      this.qLen = qLen;
+      this.solution = solution;
+      this.bytes = bytes;
+    }
+  }
+
+  private static ByteBuffer record(BigInteger target, int pLen, int qLen, Packet.Factors solution)
+  {
+    final byte[] s = target.toByteArray(), p = solution.p.toByteArray(), q = solution.q.toByteArray();
+    final ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES + 6 * 5 + s.length + p.length + q.length);
+    buf.position(Integer.BYTES);
+    Packet.varint(buf, pLen); Packet.varint(buf, qLen); Packet.varint(buf, solution.depth);
+    Packet.varint(buf, s.length); buf.put(s);
+    Packet.varint(buf, p.length); buf.put(p);
+    Packet.varint(buf, q.length); buf.put(q);
+    buf.putInt(0, buf.position() - Integer.BYTES).flip();
+    return buf;
+  }
+
+  private Record read(long offset) throws IOException { return read(log, offset, log.size()); }
+
+  /**
+   * @return the record at offset, or null if there is no complete one there
+   */
+  private static Record read(FileChannel in, long offset, long size) throws IOException
+  {
+    if (offset + Integer.BYTES > size) return null;
+    final ByteBuffer prefix = ByteBuffer.allocate(Integer.BYTES);
+    while (prefix.hasRemaining() && in.read(prefix, offset + prefix.position()) > 0) {}
+    final int len = prefix.getInt(0);
+    if (len <= 0 || offset + Integer.BYTES + len > size) return null;
+
+    final ByteBuffer buf = ByteBuffer.allocate(len);
+    while (buf.hasRemaining() && in.read(buf, offset + Integer.BYTES + buf.position()) > 0) {}
+    buf.flip();
+    try
+    {
+      final int pLen = (int) Packet.varint(buf), qLen = (int) Packet.varint(buf), depth = (int) Packet.varint(buf);
+      final BigInteger s = new BigInteger(bytes(buf)), p = new BigInteger(bytes(buf)), q = new BigInteger(bytes(buf));
+      return new Record(s, pLen, qLen, new Packet.Factors(depth, p, q), Integer.BYTES + len);
+    }
+    catch (RuntimeException e) { return null; }
+  }
+
+  private static byte[] bytes(ByteBuffer buf)
+  {
+    final long len = Packet.varint(buf);
+    if (len <= 0 || len > buf.remaining()) throw new IllegalArgumentException("bad length: " + len);
+    final byte[] bytes = new byte[(int) len];
+    buf.get(bytes);
+    return bytes;
+  }
+}
@@ -1,17 +1,32 @@
 package com.entangledloops.heuristicsearch.semiprime;
 
 import com.entangledloops.heuristicsearch.semiprime.client.Client;
+import com.entangledloops.heuristicsearch.semiprime.server.Server;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -31,6 +46,7 @@ public class Solver implements Runnable, Serializable
 
   // networking
   private static final AtomicReference<Client> client = new AtomicReference<>(null); ///< worker threads
+  private static final AtomicReference<Server> server = new AtomicReference<>(null); ///< hands out work units when this is the search host
 
   // state vars
   private static final AtomicBoolean networkSearch    = new AtomicBoolean(false); ///< true if and only if this search is hosted remotely
@@ -42,10 +58,19 @@ public class Solver implements Runnable, Serializable
   private static final AtomicBoolean restrictNetwork  = new AtomicBoolean(false); ///< allow frequent network comm. during search?
   private static final AtomicBoolean restrictDisk     = new AtomicBoolean(true); ///< should we allow disk i/o during search to cache nodes?
   private static final AtomicBoolean favorPerformance = new AtomicBoolean(true); ///< if true, will take additional steps to trade memory for more CPU;
+  private static final AtomicBoolean lazyHeuristics   = new AtomicBoolean(false); ///< if true, children inherit parent h and are only evaluated once they reach the top of open
+  private static final AtomicBoolean adaptive         = new AtomicBoolean(false); ///< if true, each heuristic orders its own sub-frontier and a bandit shares expansions between them
+  private static final AtomicBoolean weighted         = new AtomicBoolean(false); ///< if true, f = depth + weight * h (weighted A*), otherwise f = h (greedy)
+  private static final AtomicBoolean anytime          = new AtomicBoolean(false); ///< if true, weighted search starts greedy at anytimeWeight and is tightened toward weight
+  private static final AtomicBoolean shardClosed      = new AtomicBoolean(false); ///< if true (and networked), expanded nodes join a closed set sharded across all clients, and generated nodes are checked against it
+  private static final AtomicBoolean portfolioClosed  = new AtomicBoolean(true); ///< if true, portfolio members share nodes and one closed set, so each node is expanded once by whichever member reaches it first
   private static final AtomicBoolean stats            = new AtomicBoolean(true); ///< timer prints stats according to user preferences
   private static final AtomicInteger processors       = new AtomicInteger(1); ///< num cores allowed
   private static final AtomicInteger processorCap     = new AtomicInteger(100); ///< percentage use allowed
   private static final AtomicInteger memoryCap        = new AtomicInteger(100); ///< percentage use allowed
+  private static final AtomicInteger adaptiveBatch    = new AtomicInteger(64); ///< expansions per bandit decision
+  private static final AtomicInteger networkBatch     = new AtomicInteger(4096); ///< max nodes per network update
+  private static final AtomicLong    budget           = new AtomicLong(0); ///< if > 0, the search stops after this many expansions (leased work units)
 
   // target info
   private static final AtomicInteger pLen         = new AtomicInteger(0); ///< optional: if set, only primes w/this len will be searched for
@@ -58,9 +83,29 @@ public class Solver implements Runnable, Serializable
   private static final AtomicLong lifetimeRegenerated = new AtomicLong(0);
   private static final AtomicLong lifetimeIgnored     = new AtomicLong(0);
   private static final AtomicLong lifetimeExpanded    = new AtomicLong(0);
+  private static final AtomicLong lifetimeEvaluated   = new AtomicLong(0);
   private static final AtomicLong lifetimeTotalDepth  = new AtomicLong(0); ///< nanoseconds
   private static final AtomicLong lifetimeMaxDepth    = new AtomicLong(0);
 
+  // network sync tuning
+  private static final AtomicLong networkSequence        = new AtomicLong(0); ///< update ids, unique across solvers so acks can be routed
+  private static final long       networkPeriodMillis    = 1000L;
+  private static final long       networkRestrictedMillis = 10000L; ///< sync period when restrictNetwork is set
+  private static final long       networkMaxPeriodMillis = 60000L; ///< longest the sync period backs off to
+  private static final int        networkUplinkHigh      = 64; ///< packets still queued on the uplink when a sync is due; more backs off
+  private static final int        networkWindow          = 16; ///< max unacknowledged updates in flight
+  private static final int        networkBacklog         = 1 << 20; ///< max unsent nodes; beyond this the server's view is left partial
+
+  // portfolio tuning
+  private static final long strideScale = 1L << 20; ///< stride = strideScale / share
+
+  // adaptive search tuning
+  private static final double banditDiscount    = 0.99; ///< weight kept by old rewards each round, so the bandit follows the lead as it changes w/depth
+  private static final double banditExploration = 0.5; ///< ucb exploration constant (rewards are in [0,1])
+
+  /// marks a node as expanded when it may be popped from several sub-frontiers
+  private static final AtomicIntegerFieldUpdater<Node> claim = AtomicIntegerFieldUpdater.newUpdater(Node.class, "claimed");
+
   // wait-for-work timeouts
   private static final long     statsPeriodMillis    = 10000L;
   private static final long     checkForWorkMaxFails = 60L;
@@ -69,27 +114,90 @@ public class Solver implements Runnable, Serializable
 
   // optional
   private static final List<Heuristic>                 heuristics = new CopyOnWriteArrayList<>(); ///< the list of heuristics to use for this search
+  private static final List<Member>                    portfolio  = new CopyOnWriteArrayList<>(); ///< if set, these sub-searches race each other instead of the single search configured above
+  private static final List<Packet.Factors>            roots      = new CopyOnWriteArrayList<>(); ///< if set, the search starts from these subtrees instead of the root (leased work units)
+  private static final AtomicReference<Priority>       priority   = new AtomicReference<>(Priority.NONE); ///< tie-breaking policy among nodes w/equal f
+  private static final AtomicReference<Double>         weight     = new AtomicReference<>(1.0); ///< weight on h when weighted (final weight when anytime)
+  private static final AtomicReference<Double>         anytimeWeight = new AtomicReference<>(64.0); ///< starting weight on h when anytime
+  private static final AtomicReference<Double>         anytimeDecay  = new AtomicReference<>(0.5); ///< weight multiplier applied each anytime step
+  private static final AtomicLong                      anytimePeriodMillis = new AtomicLong(10000L); ///< time between anytime steps
   private static final AtomicReference<Consumer<Node>> callback   = new AtomicReference<>(null); ///< a function to receive the goal node (or null) upon completion
   private static final AtomicReference<PrintWriter>    csv        = new AtomicReference<>(null); ///< path to csv file that will be written if set
+  private static final AtomicReference<PrintWriter>    series     = new AtomicReference<>(null); ///< if set, one stats record per period is streamed here for charting
+  private static final AtomicBoolean                   seriesJson = new AtomicBoolean(true); ///< json lines if true, else csv w/a header per search
+  private static final AtomicLong                      seriesPeriodMillis = new AtomicLong(1000L); ///< time between series records
+  private static final AtomicReference<File>           checkpoint = new AtomicReference<>(null); ///< if set, the search resumes from this file and is saved to it periodically
+  private static final AtomicLong                      checkpointPeriodMillis = new AtomicLong(600000L); ///< time between checkpoints
+  private static final AtomicBoolean                   journal    = new AtomicBoolean(false); ///< if set (and checkpointing), every expansion is also logged, so a crash loses seconds instead of a whole period
+  private static final AtomicLong                      journalSyncMillis = new AtomicLong(1000L); ///< time between journal writes (and fsyncs)
+  private static final AtomicReference<File>           results    = new AtomicReference<>(null); ///< if set, targets solved before are answered from this store, and new solutions are added to it
+  private static final AtomicBoolean                   arena      = new AtomicBoolean(false); ///< if set, open nodes are kept off-heap in a memory-mapped file, and closed only keeps fingerprints
+  private static final AtomicReference<File>           arenaDir   = new AtomicReference<>(null); ///< where the arena's scratch file goes (null for the temp directory)
+  private static final AtomicBoolean                   flight     = new AtomicBoolean(false); ///< if set (and jfr is available), hot paths emit flight recorder events, see Flight
+  private static final AtomicInteger                   flightSample = new AtomicInteger(1024); ///< 1 in this many closed inserts and evaluations are recorded; also expansions per batch event
+  private static final AtomicReference<File>           trace      = new AtomicReference<>(null); ///< if set, sampled nodes are traced into a ring that is saved here when the search ends, see Trace
+  private static final AtomicInteger                   traceSample = new AtomicInteger(4096); ///< 1 in this many nodes is traced (0 for only the depth range)
+  private static final AtomicInteger                   traceMinDepth = new AtomicInteger(0); ///< nodes from this depth...
+  private static final AtomicInteger                   traceMaxDepth = new AtomicInteger(-1); ///< ...to this one are all traced (none by default)
+  private static final AtomicInteger                   traceRecords = new AtomicInteger(1 << 20); ///< ring capacity; older records are overwritten
 
   //////////////////////////////////////////////////////////////////////////////
   // instance vars
 
   // this instance's search state
   private final List<Thread>                  threads = Collections.synchronizedList(new ArrayList<>()); ///< worker threads
-  private final PriorityBlockingQueue<Node>   open    = new PriorityBlockingQueue<>(); ///< unbounded queue backed by heap for fast pop() behavior w/o sorting
+  private final AtomicReference<Thread>       syncThread = new AtomicReference<>(null); ///< sends deltas to the server, stopped once the workers are done
+  private final BlockingQueue<Node>           open; ///< unbounded queue backed by heap for fast pop() behavior w/o sorting (off-heap if arena)
   private final ConcurrentHashMap<Node, Node> closed  = new ConcurrentHashMap<>(); ///< closed hash table
+  private final Fingerprints                  closedFingerprints = new Fingerprints(); ///< stands in for closed when nodes live in the arena
   private final AtomicReference<Node>         goal    = new AtomicReference<>(null); ///< set if/when goal is found; if set, search will end
   private final AtomicBoolean                 solving = new AtomicBoolean(false);
 
   // some stats tracking
   private final AtomicReference<Timer> statsTimer    = new AtomicReference<>(null); ///< periodic reporting on search
-  private final AtomicLong             generated     = new AtomicLong(0);
-  private final AtomicLong             regenerated   = new AtomicLong(0);
-  private final AtomicLong             ignored       = new AtomicLong(0);
-  private final AtomicLong             expanded      = new AtomicLong(0);
-  private final AtomicLong             totalDepth    = new AtomicLong(0); ///< nanoseconds
-  private final AtomicInteger          maxDepthSoFar = new AtomicInteger(0);
+  private final AtomicReference<Timer> anytimeTimer  = new AtomicReference<>(null); ///< periodic weight tightening
+  private final AtomicReference<Timer> checkpointTimer = new AtomicReference<>(null); ///< periodic snapshots of open and closed
+  private final AtomicReference<Timer> journalTimer  = new AtomicReference<>(null); ///< periodic journal writes
+  private final AtomicReference<Timer> seriesTimer   = new AtomicReference<>(null); ///< periodic series records
+  // per-expansion counters are striped so workers do not contend on one cache line; they are only summed when read
+  private final LongAdder              generated     = new LongAdder();
+  private final LongAdder              regenerated   = new LongAdder();
+  private final LongAdder              ignored       = new LongAdder();
+  private final LongAdder              expanded      = new LongAdder();
+  private final LongAdder              evaluated     = new LongAdder(); ///< full heuristic evaluations
+  private final LongAdder              reinserted    = new LongAdder(); ///< lazy nodes pushed back after evaluation
+  private final LongAdder              unclaimed     = new LongAdder(); ///< shared nodes not yet expanded; every arm holds each one once
+  private final AtomicLong             insertions    = new AtomicLong(0); ///< sequence for fifo/lifo tie-breaking
+  private final LongAdder              totalDepth    = new LongAdder();
+  private final LongAccumulator        maxDepthSoFar = new LongAccumulator(Math::max, 0);
+  private final Histogram              depths;
+  private final Histogram              hs = new Histogram(128, 0.0, 2.0); ///< the built-in heuristics stay in [0, 2)
+  private final AtomicLong             checkpoints   = new AtomicLong(0);
+  private final AtomicLong             checkpointNanos = new AtomicLong(0); ///< total time spent writing checkpoints
+  private final AtomicLong             checkpointPauseNanos = new AtomicLong(0); ///< part of that during which open was locked
+  private final AtomicLong             journalSyncs  = new AtomicLong(0);
+  private final AtomicLong             journalNanos  = new AtomicLong(0); ///< total time spent writing the journal
+
+  // expanded nodes not yet written to the journal, and the segment they go to next
+  private final Queue<Node>                   journaled       = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<Checkpoint.Journal> journalOut = new AtomicReference<>(null);
+
+  // network sync: nodes not yet sent, and updates sent but not yet acknowledged (resent after reconnect)
+  private final Queue<Node>                   outboxGenerated = new ConcurrentLinkedQueue<>();
+  private final Queue<Node>                   outboxExpanded  = new ConcurrentLinkedQueue<>();
+  private final ConcurrentSkipListMap<Long, Packet> unacked   = new ConcurrentSkipListMap<>();
+  private final AtomicInteger                 backlog         = new AtomicInteger(0); ///< nodes in both outboxes
+  private final AtomicLong                    synced          = new AtomicLong(0); ///< nodes sent, including resends
+  private final AtomicLong                    unsynced        = new AtomicLong(0); ///< nodes dropped because the backlog was full
+  private final AtomicLong                    backoff         = new AtomicLong(0); ///< last backed-off sync period reported
+
+  // sharded closed set: fingerprints of generated nodes to look up and expanded nodes to add, and those found closed elsewhere
+  private final Queue<Long>                   closedChecks    = new ConcurrentLinkedQueue<>();
+  private final Queue<Long>                   closedUpdates   = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger                 closedBacklog   = new AtomicInteger(0); ///< fingerprints in both queues
+  private final Fingerprints                  duplicates      = new Fingerprints();
+  private final AtomicLong                    checked         = new AtomicLong(0); ///< fingerprints looked up
+  private final AtomicLong                    pruned          = new AtomicLong(0); ///< nodes skipped because another machine expanded them
 
   private long startTime = 0; ///< nanoseconds
   private long endTime = 0; ///< nanoseconds
@@ -103,16 +211,47 @@ public class Solver implements Runnable, Serializable
   final int        cacheSLen2; ///< cached bit len
 
   // mutable state cache
-  private Client  cacheClient        = null;
+  private Client  cacheClient        = null; ///< the connection the unacked updates were last sent on
   private boolean cachePaused        = false;
   private boolean cachePrintAllNodes = false;
   private boolean cacheDetailedStats = false;
+  private boolean cacheLazyHeuristics = false;
+  private volatile boolean cacheResorting = false; ///< set while open is drained for re-keying, so idle workers keep waiting
 
   // initial state cache
   private final Thread         cacheThread;
   private final Consumer<Node> cacheCallback;
   private final Heuristic[]    cacheHeuristics;
+  private final Priority       cachePriority;
+  private final boolean        cacheWeighted;
+  private final boolean        cacheAnytime;
+  private final double         cacheFinalWeight;
+  private final double         cacheAnytimeDecay;
+  private final long           cacheAnytimePeriodMillis;
+  private final Arm            cacheBase; ///< settings used to order open
+  private final Arm[]          cacheArms; ///< null unless adaptive or portfolio; arm 0 is always cacheBase
+  private final Bandit         cacheBandit; ///< set if adaptive: arms share nodes, one per heuristic
+  private final Stride         cacheStride; ///< set if portfolio: arms are independent sub-searches
+  private final boolean        cacheShared; ///< every node is pushed to every arm and claimed on expansion (adaptive, or portfolio w/shared closed)
+  private final boolean        cacheOrdered; ///< some arm breaks ties by insertion order
+  private final long           cacheBudget;
+  private final AtomicLong     budgeted = new AtomicLong(0); ///< expansions counted against cacheBudget
+  private final Packet.Factors[] cacheRoots;
+  private final int            cacheAdaptiveBatch;
   private final PrintWriter    cacheCsv;
+  private final PrintWriter    cacheSeries;
+  private final boolean        cacheSeriesJson;
+  private final long           cacheSeriesPeriodMillis;
+  private final boolean        cacheFlight;
+  private final int            cacheFlightSample;
+  private final File           cacheTraceFile;
+  private final Trace          cacheTrace; ///< set if nodes are traced
+  private final File           cacheCheckpoint;
+  private final long           cacheCheckpointPeriodMillis;
+  private final boolean        cacheJournal;
+  private final long           cacheJournalSyncMillis;
+  private final Results        cacheResults;
+  private final NodeArena      cacheArena; ///< set if open lives off-heap
 
   // target info cache
   private final String cacheSStringInternal; ///< cached internal base
@@ -129,6 +268,7 @@ public class Solver implements Runnable, Serializable
   private final int     cacheMaxDepth; ///< max(pLen, qLen)
   private final int     cacheProcessors;
   private final boolean cacheNetworkSearch;
+  private final boolean cacheShardClosed;
   private final boolean cacheNetworkHost;
   private final boolean cacheStats;
 
@@ -137,7 +277,13 @@ public class Solver implements Runnable, Serializable
   private final long     cacheCheckForWorkTimeout;
   private final TimeUnit cacheCheckForWorkTimeUnit;
 
-  public Solver(final BigInteger semiprime)
+  public Solver(final BigInteger semiprime) { this(semiprime, null); }
+
+  /**
+   * @param semiprime the target
+   * @param unit if set, the search is a self-contained unit (a lease, a benchmark) w/its own settings, see {@link Unit}
+   */
+  public Solver(final BigInteger semiprime, final Unit unit)
   {
     // check for invalid params
     if (null == semiprime) throw new NullPointerException("invalid target or base");
@@ -165,17 +311,35 @@ public class Solver implements Runnable, Serializable
       cacheProcessors = Math.max(0, Math.min(Runtime.getRuntime().availableProcessors(), processors()));
       cacheSSetBitsOverLen2 = (double) cacheSSetBits / (double) cacheSLen2;
       cacheMaxDepth = (0 < cachePLen2 || 0 < cacheQLen2 ? Math.max(cachePLen2, cacheQLen2) : (cacheSLen2 -1)) - 1;  // -1 converts len -> depth, second -1 on spLen is multiplication logic
+      depths = new Histogram(Math.min(256, cacheMaxDepth + 1), 0, cacheMaxDepth + 1);
       cachePaused = paused();
-      cacheNetworkSearch = networkSearch();
-      cacheNetworkHost = networkHost();
+      cacheNetworkSearch = null != unit ? unit.network : networkSearch();
+      cacheNetworkHost = null == unit && networkHost();
+      cacheShardClosed = cacheNetworkSearch && shardClosed();
       cacheStats = stats();
       cacheDetailedStats = detailedStats();
-      cachePrintAllNodes = printAllNodes();
-      cacheCsv = csv();
+      cachePrintAllNodes = printAllNodes() && Log.enabled(Log.Level.TRACE); // not even built unless they would be kept
+      cacheLazyHeuristics = lazyHeuristics();
+      cacheCsv = null == unit ? csv() : null;
+      cacheSeries = null == unit ? series() : null;
+      cacheSeriesJson = seriesJson();
+      cacheSeriesPeriodMillis = Math.max(1L, seriesPeriodMillis());
+      if (flight() && !Utils.flightRecorder()) Log.o("flight events disabled: no flight recorder in this jvm");
+      cacheFlight = flight() && Utils.flightRecorder();
+      cacheFlightSample = flightSample();
+      cacheTraceFile = null == unit ? trace() : null;
+      cacheTrace = null != cacheTraceFile ? new Trace(traceRecords(), traceSample(), traceMinDepth(), traceMaxDepth(), cacheSLen2) : null;
       cacheStatsPeriodMillis = statsPeriodMillis;
       cacheCheckForWorkTimeout = checkForWorkTimeout;
       cacheCheckForWorkTimeUnit = checkForWorkTimeUnit;
-      cacheCallback = callback(); if (null == cacheCallback) throw new NullPointerException("no callback provided for search completion");
+      cacheCallback = null == unit ? callback() : null != unit.callback ? unit.callback : null != callback() ? callback() : n -> {};
+      if (null == cacheCallback) throw new NullPointerException("no callback provided for search completion");
+      cachePriority = priority();
+      cacheAnytime = anytime();
+      cacheWeighted = weighted() || cacheAnytime;
+      cacheFinalWeight = weight();
+      cacheAnytimeDecay = anytimeDecay();
+      cacheAnytimePeriodMillis = anytimePeriodMillis();
 
       // cache selected heuristics for this run
       cacheHeuristics = new Heuristic[ Solver.heuristics.size() ]; int i = -1;
@@ -184,13 +348,98 @@ public class Solver implements Runnable, Serializable
         if (++i >= cacheHeuristics.length) throw new NullPointerException("heuristics changed during prep");
         else cacheHeuristics[i] = heuristic;
       }
+
+      // cache portfolio members; each one becomes an independent sub-search
+      final Member[] members = Solver.portfolio.toArray(new Member[0]);
+
+      // the arena holds a single open list; adaptive arms share nodes between queues, and portfolio members keep their own
+      NodeArena nodes = null;
+      if (arena())
+      {
+        if (cacheNetworkHost || members.length > 0 || (adaptive() && cacheHeuristics.length > 1)) Log.o("arena disabled: " + (cacheNetworkHost ? "the network host does not search" : "only a single open list can be kept off-heap"));
+        else try { nodes = new NodeArena(arenaDir(), cacheSLen2); }
+        catch (Throwable t) { Log.e("arena unavailable, open stays on the heap", t); }
+      }
+      cacheArena = nodes;
+      open = null != cacheArena ? new ArenaQueue(cacheArena) : new PriorityBlockingQueue<>();
+      final double initialWeight = cacheAnytime ? Math.max(cacheFinalWeight, anytimeWeight()) : cacheFinalWeight;
+
+      // one sub-frontier per heuristic is only useful if there is more than one to choose from
+      cacheAdaptiveBatch = Math.max(1, adaptiveBatch());
+      if (members.length > 0)
+      {
+        final boolean shared = portfolioClosed();
+        cacheArms = new Arm[members.length];
+        for (int j = 0; j < members.length; ++j)
+        {
+          final Member m = members[j];
+          final int k = j-1;
+          cacheArms[j] = new Arm(j, m.toString(), m.heuristics, m.priority, m.weighted, m.weight, m.share,
+              0 == j ? open : shared ? new PriorityBlockingQueue<>(11, (n1, n2) -> Long.compare(n1.keys[k], n2.keys[k])) : new PriorityBlockingQueue<>(),
+              0 == j || shared ? closed : new ConcurrentHashMap<>());
+        }
+        cacheBase = cacheArms[0];
+        cacheBandit = null;
+        cacheStride = new Stride();
+        cacheShared = shared && members.length > 1;
+        if (adaptive()) Log.o("adaptive search ignored: a portfolio is configured");
+        if (cacheAnytime) Log.o("anytime search ignored: portfolio members keep their own weights");
+        if (cacheLazyHeuristics) { cacheLazyHeuristics = false; Log.o("lazy heuristics disabled: portfolio members are evaluated on generation"); }
+      }
+      else if (adaptive() && cacheHeuristics.length > 1)
+      {
+        cacheArms = new Arm[1 + cacheHeuristics.length];
+        cacheBase = cacheArms[0] = new Arm(0, "COMBINED", cacheHeuristics, cachePriority, cacheWeighted, initialWeight, 1, open, closed);
+        for (int j = 0; j < cacheHeuristics.length; ++j)
+        {
+          final int k = j;
+          cacheArms[1+j] = new Arm(1+j, cacheHeuristics[j].name(), new Heuristic[] { cacheHeuristics[j] }, cachePriority, cacheWeighted, initialWeight, 1,
+              new PriorityBlockingQueue<>(11, (n1, n2) -> Long.compare(n1.keys[k], n2.keys[k])), closed);
+        }
+        cacheBandit = new Bandit(cacheArms.length);
+        cacheStride = null;
+        cacheShared = true;
+        if (cacheLazyHeuristics) { cacheLazyHeuristics = false; Log.o("lazy heuristics disabled: adaptive search evaluates every heuristic on generation"); }
+      }
+      else
+      {
+        if (adaptive()) Log.o("adaptive search needs at least 2 heuristics, using a single frontier");
+        cacheBase = new Arm(0, "BASE", cacheHeuristics, cachePriority, cacheWeighted, initialWeight, 1, open, closed);
+        cacheArms = null;
+        cacheBandit = null;
+        cacheStride = null;
+        cacheShared = false;
+      }
+
+      boolean ordered = false;
+      for (Arm arm : null != cacheArms ? cacheArms : new Arm[] { cacheBase }) ordered |= arm.priority.ordered();
+      cacheOrdered = ordered;
+
+      cacheBudget = null != unit ? unit.budget : budget();
+      cacheRoots = null != unit ? unit.roots : Solver.roots.toArray(new Packet.Factors[0]);
+
+      // separate portfolio frontiers are not saved, so only a single open list (or one shared by every arm) can be resumed
+      final File file = null == unit ? checkpoint() : null;
+      if (null != file && (cacheNetworkHost || (null != cacheStride && !cacheShared) || null != cacheArena)) Log.o("checkpoints disabled: " + (cacheNetworkHost ? "the network host does not search" : null != cacheArena ? "the arena does not keep closed nodes" : "portfolio members keep separate open lists"));
+      cacheCheckpoint = null != file && !cacheNetworkHost && (null == cacheStride || cacheShared) && null == cacheArena ? file : null;
+      cacheCheckpointPeriodMillis = Math.max(1L, checkpointPeriodMillis());
+      cacheJournal = null != cacheCheckpoint && journal();
+      cacheJournalSyncMillis = Math.max(1L, journalSyncMillis());
+      cacheResults = null == unit ? Results.open(results()) : null;
     }
     catch (Throwable t) { Log.e(t); throw new NullPointerException("cache preparation failure"); }
 
     // build worker threads to search until goal is found or no nodes left
     if (cacheNetworkHost)
     {
-      threads.add(new Thread(() -> { try { while (null == goal() && solving() && !Thread.interrupted()) Thread.sleep(1000); } catch (Throwable ignored) {} }));
+      // the host does not search itself, the server leases subtrees to clients until one finds the goal
+      threads.add(new Thread(() ->
+      {
+        final Server host = server();
+        if (null == host) { Log.e("network host has no server to coordinate clients"); return; }
+        final Packet.Factors solution = host.coordinate(cacheS);
+        if (null != solution) goal.compareAndSet(null, node(solution));
+      }));
     }
     else
     {
@@ -199,7 +448,13 @@ public class Solver implements Runnable, Serializable
         try
         {
           Log.o("thread " + i + ": started");
-          while (expand( pop() )) { while (cachePaused) Thread.sleep(100); }
+          final Flight.Batch batch = cacheFlight ? new Flight.Batch(i, cacheFlightSample) : null;
+          while (null != cacheBandit ? adapt() : null != cacheStride ? race() : expand( pop() ))
+          {
+            if (null != batch && batch.step()) batch.end(expanded(), open.size());
+            while (cachePaused) Thread.sleep(100);
+          }
+          if (null != batch) batch.end(expanded(), open.size());
           Log.o("thread " + i + ": finished");
         }
         catch (Throwable ignored) {}
@@ -208,19 +463,23 @@ public class Solver implements Runnable, Serializable
       // if networked search, prepare special network sync thread
       if (cacheNetworkSearch)
       {
-        threads.add(new Thread(() ->
+        syncThread.set(new Thread(() ->
         {
           try
           {
+            long period = networkPeriodMillis;
             while (solving() && null == goal() && !Thread.interrupted())
             {
-              if (null != cacheClient)
-              {
-                if (cacheClient.disconnected()) cacheClient = client();
-                else cacheClient.write(Packet.Type.UPDATE, open, closed);
-              }
-              else cacheClient = client();
-              Thread.sleep(1000);
+              final Client c = client();
+              final int queued = null != c ? c.queued() : 0;
+              if (null != c && c.connected() && queued <= networkUplinkHigh) sync(c);
+
+              // a backed up uplink means the server or link is slow: sync less often until it drains
+              final long base = restrictNetwork() ? networkRestrictedMillis : networkPeriodMillis;
+              period = queued > networkUplinkHigh ? Math.min(networkMaxPeriodMillis, Math.max(base, period << 1)) : Math.max(base, period >> 1);
+              if (period == base) backoff.set(0);
+              else if (period != backoff.getAndSet(period)) Log.o("network: uplink has " + queued + " packets queued, syncing every " + period + " ms");
+              Thread.sleep(period);
             }
           }
           catch (Throwable ignored) {}
@@ -236,6 +495,7 @@ public class Solver implements Runnable, Serializable
   {
     return null != generated ? "solver: " + solvers() +
         "\nheuristics: " + (null != cacheHeuristics && cacheHeuristics.length > 0 ? Stream.of(cacheHeuristics).skip(1).map(Enum::name).reduce(cacheHeuristics[0].name(), (h1, h2) -> h1 + ", " + h2) : "NONE") +
+        (null != cacheStride ? "\nportfolio: " + Stream.of(cacheArms).map(a -> a.name + " (share " + a.share + ")").reduce((a1, a2) -> a1 + ", " + a2).orElse("") + (cacheShared ? ", shared closed" : ", separate closed") : "") +
         "\n\nlength (base 10): " + cacheSLen10 +
         "\ntarget (base 10): " + cacheSString10 +
         "\n\nlength (base " + cacheInternalBase + "): " + cacheSLenInternal +
@@ -245,12 +505,22 @@ public class Solver implements Runnable, Serializable
         "\n\nprocessors: " + cacheProcessors +
         "\nfavorPerformance: " + favorPerformance +
         "\ncompressMemory: " + compressMemory +
+        "\nlazyHeuristics: " + cacheLazyHeuristics +
+        "\npriority: " + (cacheBase.weighted ? "f = depth + " + cacheBase.weight + " * h" : "f = h") + ", ties: " + cacheBase.priority.name() +
+        (cacheAnytime ? "\nanytime: weight x" + cacheAnytimeDecay + " every " + cacheAnytimePeriodMillis + "ms until " + cacheFinalWeight : "") +
+        "\nadaptive: " + (null != cacheBandit ? cacheArms.length + " arms, batch " + cacheAdaptiveBatch : "no") +
+        "\ncheckpoint: " + (null != cacheCheckpoint ? cacheCheckpoint + " every " + cacheCheckpointPeriodMillis + "ms" : "no") +
+        "\njournal: " + (cacheJournal ? "synced every " + cacheJournalSyncMillis + "ms" : "no") +
+        "\nresults: " + (null != cacheResults ? cacheResults.file() : "no") +
+        "\narena: " + (null != cacheArena ? cacheArena.recordBytes() + " bytes per open node, off-heap" : "no") +
+        "\nflight: " + (cacheFlight ? "events on, 1 in " + cacheFlightSample + " sampled" : "no") +
+        "\ntrace: " + (null != cacheTrace ? cacheTraceFile + ", 1 in " + traceSample() + " nodes" + (traceMinDepth() <= traceMaxDepth() ? " and depths " + traceMinDepth() + "-" + traceMaxDepth() : "") + ", last " + cacheTrace.capacity() + " kept" : "no") +
         "\nmaxDepthSoFar: " + cacheMaxDepth +
         "\nbackground: " + background() +
         "\nprocessorCap: " + processorCap() +
         "\npaused: " + paused() +
         "\nopen.size(): " + open.size() +
-        "\nclosed.size(): " + closed.size() +
+        "\nclosed.size(): " + closedSize() +
         "\nthreads.size(): " + threads.size() +
         "\n" : "";
   }
@@ -262,14 +532,30 @@ public class Solver implements Runnable, Serializable
       // atomically cancel and clear any previous search
       if (!solving.compareAndSet(false, true)) { Log.e("a solver is already running or this solver was not started properly"); return; }
 
+      // a target solved before needs no search
+      if (null != cacheResults && recall()) return;
+
       // inform user of cache- and contract-bound search parameters
       Log.o(toString() + "\n********** search starting **********\n");
 
       // record the start time
       startTime =  System.nanoTime();
 
+      // pick up where a previous run left off
+      if (null != cacheCheckpoint && cacheCheckpoint.exists()) restore();
+
       // push a new root node if open list is empty
-      if (open.isEmpty()) push( new Node() );
+      if (open.isEmpty() && cacheRoots.length > 0)
+      {
+        for (Packet.Factors f : cacheRoots) { final Node root = node(f); root.h( root.evaluate() ); push(root); }
+      }
+      else if (open.isEmpty())
+      {
+        for (Arm arm : null != cacheStride && !cacheShared ? cacheArms : new Arm[] { cacheBase })
+        {
+          final Node root = new Node(arm); root.h( root.evaluate() ); push(root);
+        }
+      }
 
       // properly schedule a new timer if stats were requested
       if (cacheStats)
@@ -280,11 +566,65 @@ public class Solver implements Runnable, Serializable
         timer.schedule(new TimerTask() { @Override public void run() { if (cachePaused) return; Log.o("progress:" + statsToString(cacheDetailedStats)); } }, statsPeriodMillis, statsPeriodMillis);
       }
 
+      // log expansions from here on; a new search saves its roots first, so the journal always has a snapshot to replay onto
+      if (cacheJournal)
+      {
+        long last = 0;
+        for (long g : Checkpoint.Journal.segments(cacheCheckpoint)) last = Math.max(last, g);
+        journalOut.set(new Checkpoint.Journal(cacheCheckpoint, cacheS, last + 1));
+        if (!cacheCheckpoint.exists()) save();
+
+        final Timer timer = new Timer();
+        if (!journalTimer.compareAndSet(null, timer)) { Log.e("overlapping search request"); return; }
+        timer.schedule(new TimerTask() { @Override public void run() { writeJournal(); } }, cacheJournalSyncMillis, cacheJournalSyncMillis);
+      }
+
+      // stream a record per period for charting
+      final Series stream = null != cacheSeries ? new Series() : null;
+      if (null != stream)
+      {
+        final Timer timer = new Timer();
+        if (!seriesTimer.compareAndSet(null, timer)) { Log.e("overlapping search request"); return; }
+        timer.schedule(new TimerTask() { @Override public void run() { stream.sample(); } }, cacheSeriesPeriodMillis, cacheSeriesPeriodMillis);
+      }
+
+      // save open and closed in the background
+      if (null != cacheCheckpoint)
+      {
+        final Timer timer = new Timer();
+        if (!checkpointTimer.compareAndSet(null, timer)) { Log.e("overlapping search request"); return; }
+        timer.schedule(new TimerTask() { @Override public void run() { if (!cachePaused && null == goal()) save(); } }, cacheCheckpointPeriodMillis, cacheCheckpointPeriodMillis);
+      }
+
+      // start greedy and progressively tighten the weight
+      if (cacheAnytime && null == cacheStride && cacheBase.weight > cacheFinalWeight)
+      {
+        final Timer timer = new Timer();
+        if (!anytimeTimer.compareAndSet(null, timer)) { Log.e("overlapping search request"); return; }
+        timer.schedule(new TimerTask()
+        {
+          @Override public void run()
+          {
+            if (cachePaused || null != goal()) return;
+            final double next = Math.max(cacheFinalWeight, cacheBase.weight * cacheAnytimeDecay);
+            reweight(next);
+            if (next <= cacheFinalWeight) cancel();
+          }
+        }, cacheAnytimePeriodMillis, cacheAnytimePeriodMillis);
+      }
+
       // launch all worker threads and wait for completion
 
       threads.stream().forEach(thread -> thread.setUncaughtExceptionHandler(handler));
+      final Thread sync = syncThread.getAndSet(null);
+      if (null != sync) { sync.setUncaughtExceptionHandler(handler); sync.start(); }
       try { threads.stream().forEach(Thread::start); try { threads.stream().forEach((thread) -> { try { thread.join(); } catch (Throwable t) { Log.e("solving start interrupted", t); } }); } catch (Throwable ignored) {} } catch (Throwable t) { Log.e(t); }
       try { threads.stream().forEach((thread) -> { try { thread.interrupt(); } catch (Throwable ignored) {} }); } catch (Throwable ignored) {}
+      if (null != sync) { sync.interrupt(); try { sync.join(); } catch (Throwable ignored) {} }
+
+      // stop tightening
+      final Timer weightTimer = anytimeTimer.getAndSet(null);
+      if (null != weightTimer) weightTimer.cancel();
 
       // cancel the stats timer and record end time
       if (cacheStats)
@@ -293,12 +633,51 @@ public class Solver implements Runnable, Serializable
         if (null != timer) { timer.cancel(); endTime = System.nanoTime(); }
       }
 
+      // one last record covers the end of the search
+      final Timer sampleTimer = seriesTimer.getAndSet(null);
+      if (null != sampleTimer) sampleTimer.cancel();
+      if (null != stream) stream.close();
+
+      // save the trace ring for offline formatting
+      if (null != cacheTrace)
+      {
+        try { cacheTrace.dump(cacheTraceFile); Log.o("trace: " + cacheTrace.written() + " records, last " + Math.min(cacheTrace.written(), cacheTrace.capacity()) + " saved to " + cacheTraceFile); }
+        catch (Throwable t) { Log.e("trace could not be saved", t); }
+      }
+
       // clear used thread memory
       threads.clear();
 
+      // stop checkpointing; a search that stopped short of the goal saves exactly where it stopped
+      final Timer saveTimer = checkpointTimer.getAndSet(null);
+      if (null != saveTimer) saveTimer.cancel();
+      if (null != cacheCheckpoint && null == goal()) save();
+
+      // write out whatever the journal still holds
+      final Timer syncTimer = journalTimer.getAndSet(null);
+      if (null != syncTimer) syncTimer.cancel();
+      final Checkpoint.Journal out = journalOut.get();
+      if (null != out)
+      {
+        writeJournal();
+        synchronized (out) { try { out.close(); } catch (Throwable t) { Log.e("journal could not be closed", t); } }
+        journalOut.set(null);
+        Log.o("journal: " + out.appended() + " expansions, " + out.bytes() + " bytes, " + journalSyncs.get() + " syncs, " + String.format("%.2f", journalNanos.get() / 1e6 / Math.max(1, journalSyncs.get())) + " ms each");
+      }
+
       // print full final stats after all work is done
       Log.o( statsToString(true) );
 
+      // report how much of the search made it to the server
+      if (cacheNetworkSearch) Log.o("network: " + synced.get() + " nodes synced, " + backlog.get() + " unsent, " + unsynced.get() + " dropped, " + unacked.size() + " updates unacknowledged");
+      if (cacheShardClosed) Log.o("sharded closed: " + checked.get() + " checked, " + duplicates.size() + " expanded elsewhere, " + pruned.get() + " pruned");
+
+      // report which sub-search won the race
+      if (null != cacheStride && null != goal()) Log.o("portfolio: goal found by " + goal().arm.name);
+
+      // remember the answer for the next search of this target
+      if (null != cacheResults && null != goal()) cacheResults.put(cacheS, cachePLen2, cacheQLen2, new Packet.Factors(goal().depth, goal().p, goal().q));
+
       // notify waiters that we've completed factoring
       cacheCallback.accept( goal() );
 
@@ -318,6 +697,7 @@ public class Solver implements Runnable, Serializable
       lifetimeRegenerated.addAndGet( regenerated() );
       lifetimeIgnored.addAndGet( ignored() );
       lifetimeExpanded.addAndGet( expanded() );
+      lifetimeEvaluated.addAndGet( evaluated() );
       lifetimeTotalDepth.addAndGet( totalDepth() );
       lifetimeMaxDepth.updateAndGet(l -> l + maxDepth());
 
@@ -325,12 +705,32 @@ public class Solver implements Runnable, Serializable
     }
   }
 
-  public Solver cleanup() { try { if (null != cacheCsv) cacheCsv.close(); } catch (Throwable t) { Log.e(t); } return this; }
+  public Solver cleanup() { try { if (null != cacheCsv) cacheCsv.close(); if (null != cacheArena) cacheArena.close(); } catch (Throwable t) { Log.e(t); } return this; }
   public Solver start() { try { if (!solving()) cacheThread.start(); } catch (Throwable t) { Log.e(t); } return this; }
   public Solver interrupt() { final Thread thread = cacheThread; if (null != thread) thread.interrupt(); return this; }
   public Solver join() { try { final Thread thread = cacheThread; if (null != thread) thread.join(); } catch (Throwable ignored) {} return this; }
   public Solver interruptAndJoin() { return interrupt().join(); }
 
+  /**
+   * Answers the search from the result store, if it holds this target.
+   * @return true if the goal was set and the waiters notified, so no search is needed
+   */
+  private boolean recall()
+  {
+    startTime = System.nanoTime();
+    final Packet.Factors known = cacheResults.get(cacheS, cachePLen2, cacheQLen2);
+    if (null == known || !goal.compareAndSet(null, node(known))) return false;
+    endTime = System.nanoTime();
+
+    // the workers were never started
+    threads.clear();
+    syncThread.set(null);
+
+    Log.o("result cache: " + cacheS + " = " + known.p + " * " + known.q + " (found in " + ((endTime - startTime) / 1000L) + "us)\n");
+    cacheCallback.accept( goal() );
+    return true;
+  }
+
   /**
    * if this node is newly closed, ensure we update the counter in a start-safe manner
    * @param n
@@ -338,11 +738,23 @@ public class Solver implements Runnable, Serializable
    */
   private Node close(Node n)
   {
-    final Node prev = closed.put(n, n);
-    if (null != prev) regenerated.addAndGet(1);
+    final Flight.ClosedInsert event = cacheFlight ? Flight.closedInsert(cacheFlightSample) : null;
+    final boolean duplicate = null != cacheArena ? !closedFingerprints.add(n.fingerprint()) : null != n.arm.closed.put(n, n);
+    if (duplicate) regenerated.increment();
+    if (null != event) event.done(n.depth, duplicate);
     return n;
   }
 
+  /**
+   * records the node in the trace ring if it is sampled or in the traced depth range
+   * @param event one of Trace's event codes
+   * @param n the node
+   */
+  private void trace(byte event, Node n)
+  {
+    if (null != cacheTrace && cacheTrace.wants(n.depth, n.hashCode)) cacheTrace.record(event, n.depth, n.h, n.fingerprint());
+  }
+
   /**
    * tests if goal node
    * @param n a node to attempt adding
@@ -351,12 +763,128 @@ public class Solver implements Runnable, Serializable
   private boolean push(Node n)
   {
     if (goal(n)) return false;
-    if (!open.offer(n)) { regenerated.addAndGet(1); return false; }
+    if (cacheShared)
+    {
+      for (Arm arm : cacheArms) if (!arm.open.offer(n)) { regenerated.increment(); return false; }
+      unclaimed.increment();
+      return true;
+    }
+    if (!n.arm.open.offer(n)) { regenerated.increment(); return false; }
+    return true;
+  }
+
+  /**
+   * pop the best unexpanded node of a sub-frontier
+   * w/shared nodes every node lives in all arms and is claimed by the first arm to pop it
+   * @param arm the sub-frontier to take from
+   * @return the next available node or null if goal was found or error occurred
+   */
+  private Node pop(Arm arm)
+  {
+    try
+    {
+      final Flight.OpenWait wait = cacheFlight ? Flight.openWait() : null;
+      long fails = 0; Node node;
+      while (true)
+      {
+        node = arm.open.poll(cacheCheckForWorkTimeout, cacheCheckForWorkTimeUnit);
+        if (null == node) { if (++fails > checkForWorkMaxFails) { if (!cacheResorting) break; fails = 0; } }
+        else if (claim.compareAndSet(node, 0, 1)) { unclaimed.decrement(); break; }
+      }
+      if (null != wait) wait.done(fails, null != node);
+      return null != goal() ? null : node;
+    }
+    catch (Throwable t) { return null; }
+  }
+
+  /**
+   * a node expanded through one arm stays behind in the others as a stale copy until they pop it, and arms the
+   * bandit seldom picks would keep them forever; once stale copies are over half of an arm, they are swept out,
+   * so no arm holds more than twice the unexpanded nodes (plus a batch) and each sweep pays for itself
+   */
+  private void prune()
+  {
+    final long limit = 2 * unclaimed.sum() + cacheAdaptiveBatch;
+    for (Arm arm : cacheArms) if (arm.open.size() > limit) sweep(arm);
+  }
+
+  /**
+   * removes every claimed node from an arm
+   * @param arm a shared sub-frontier
+   */
+  private synchronized void sweep(Arm arm)
+  {
+    if (arm.open.size() <= 2 * unclaimed.sum() + cacheAdaptiveBatch) return; // another worker just swept it
+    cacheResorting = true;
+    try
+    {
+      final List<Node> nodes = new ArrayList<>(arm.open.size());
+      arm.open.drainTo(nodes);
+      for (Node n : nodes) if (0 == n.claimed) arm.open.offer(n);
+    }
+    finally { cacheResorting = false; }
+  }
+
+  /**
+   * lets the bandit pick a sub-frontier and expands a batch of nodes from it,
+   * rewarding the arm by how close the batch's expansions stayed to the deepest one
+   * @return true continues the search, false indicates completion
+   */
+  private boolean adapt()
+  {
+    final Arm arm = cacheArms[ cacheBandit.select() ];
+    final int before = cacheBandit.deepest(); int deepest = before;
+    long depths = 0;
+    for (int i = 0; i < cacheAdaptiveBatch; ++i)
+    {
+      final Node n = pop(arm);
+      if (null == n) return false;
+      arm.expanded.increment();
+      depths += n.depth;
+      if (n.depth > deepest) deepest = n.depth;
+      if (!expand(n)) return false;
+    }
+    arm.gained.addAndGet(deepest - before);
+    cacheBandit.reward(arm.index, deepest, depths / (double) cacheAdaptiveBatch);
+    prune();
+    return true;
+  }
+
+  /**
+   * expands a batch from the portfolio member that is furthest behind its cpu share
+   * w/shared nodes every member holds every unexpanded node, so one empty member means the search is over;
+   * otherwise a member is only retired once its open list is empty and no other worker is expanding it,
+   * since only its own expansions can refill it
+   * @return true continues the search, false indicates completion
+   */
+  private boolean race()
+  {
+    final Arm arm = cacheStride.select(cacheArms);
+    if (null == arm) return false;
+
+    boolean drained = false;
+    arm.active.incrementAndGet();
+    try
+    {
+      for (int i = 0; i < cacheAdaptiveBatch; ++i)
+      {
+        final Node n = pop(arm);
+        if (null == n) { if (null != goal() || cacheShared) return false; drained = true; break; }
+        arm.expanded.increment();
+        if (!expand(n)) return false;
+      }
+    }
+    finally { if (0 == arm.active.decrementAndGet() && drained && arm.open.isEmpty()) arm.exhausted = true; }
+    if (cacheShared) prune();
+
+    if (arm.exhausted) Log.o("portfolio: " + arm.name + " exhausted its search space");
     return true;
   }
 
   /**
    * pop available node of opened
+   * in lazy mode, a node still holding its parent's h is evaluated on pop and
+   * pushed back if its true h no longer beats the next node in open
    * @return the next available node or null if goal was found or error occurred
    */
   @SuppressWarnings("StatementWithEmptyBody")
@@ -364,16 +892,226 @@ public class Solver implements Runnable, Serializable
   {
     try
     {
+      final Flight.OpenWait wait = cacheFlight ? Flight.openWait() : null;
       long fails = 0; Node node;
-      while (null == (node = open.poll(cacheCheckForWorkTimeout, cacheCheckForWorkTimeUnit)))
+      while (true)
       {
-        if (++fails > checkForWorkMaxFails) break;
+        while (null == (node = open.poll(cacheCheckForWorkTimeout, cacheCheckForWorkTimeUnit)))
+        {
+          if (++fails > checkForWorkMaxFails) { if (!cacheResorting) break; fails = 0; }
+        }
+        if (null == node || !node.pending || !reinsert(node)) break;
       }
+      if (null != wait) wait.done(fails, null != node);
       return null != goal() ? null : node;
     }
     catch (Throwable t) { return null; }
   }
 
+  /**
+   * computes the true h of a lazily pushed node
+   * @param n a node that was popped w/its parent's h
+   * @return true if the node was pushed back into open, false if it should be expanded now
+   */
+  private boolean reinsert(Node n)
+  {
+    final double bound = n.h;
+    n.h( n.evaluate() ); n.pending = false;
+    if (n.h <= bound) return false;
+
+    final Node next = open.peek();
+    if (null == next || next.compareTo(n) >= 0) return false;
+
+    reinserted.increment();
+    if (cachePrintAllNodes) Log.t("reinserted: ", n.trace());
+    trace(Trace.REINSERTED, n);
+    return open.offer(n);
+  }
+
+  /**
+   * changes the weight on h and re-keys every open node in place, keeping closed intact
+   * nodes generated while this runs are already keyed w/the new weight
+   * @param w the new weight
+   */
+  private synchronized void reweight(double w)
+  {
+    final double prev = cacheBase.weight;
+    if (prev == w) return;
+
+    final long start = System.nanoTime();
+    cacheResorting = true;
+    try
+    {
+      if (null != cacheArms) for (Arm arm : cacheArms) arm.weight = w;
+      else cacheBase.weight = w;
+      final List<Node> nodes = new ArrayList<>(open.size());
+      open.drainTo(nodes);
+      for (Node n : nodes) n.h(n.h);
+      open.addAll(nodes);
+
+      // sub-frontier keys only hold f, so recover each h from the old weight
+      if (null != cacheBandit) for (int i = 1; i < cacheArms.length; ++i)
+      {
+        final int k = i-1;
+        nodes.clear(); cacheArms[i].open.drainTo(nodes);
+        final Priority priority = cacheArms[i].priority;
+        for (Node n : nodes) n.keys[k] = priority.key(n.depth + w * ((priority.f(n.keys[k]) - n.depth) / prev), priority.tie(n.keys[k]));
+        cacheArms[i].open.addAll(nodes);
+      }
+    }
+    finally { cacheResorting = false; }
+
+    Log.o("anytime: weight " + prev + " -> " + w + " (" + open.size() + " open nodes re-keyed in " + ((System.nanoTime() - start) / 1000000L) + "ms)");
+  }
+
+  /**
+   * Saves open and closed so the search can be resumed after a restart.
+   * Workers only wait while open is copied (one array copy under its lock); closed is read
+   * concurrently, and the encoding and writing happen on the calling thread. Nodes expanded while
+   * this runs may be saved as open, in which case they are expanded again after a resume.
+   *
+   * If journaling, the journal moves to a new segment just before open is copied, so every
+   * expansion in the old segments is already reflected in the snapshot; they are deleted once it is on disk.
+   */
+  private synchronized void save()
+  {
+    try
+    {
+      final long start = System.nanoTime();
+      final long generation = rotate();
+      final Object[] nodes = open.toArray();
+      final long copied = System.nanoTime();
+
+      final List<Checkpoint.Entry> unexpanded = new ArrayList<>(nodes.length);
+      for (Object o : nodes)
+      {
+        final Node n = (Node) o;
+        if (0 == n.claimed) unexpanded.add(new Checkpoint.Entry(n.depth, n.p, n.q, n.pending || Double.isInfinite(n.h) ? Double.NaN : n.h));
+      }
+      final List<Packet.Factors> seen = new ArrayList<>(closed.size());
+      for (Node n : closed.keySet()) seen.add(new Packet.Factors(n.depth, n.p, n.q));
+
+      final long bytes = Checkpoint.write(cacheCheckpoint, cacheS, generation, counters(), unexpanded, seen);
+      if (0 != generation) Checkpoint.Journal.compact(cacheCheckpoint, generation);
+      final long end = System.nanoTime();
+      checkpoints.incrementAndGet();
+      checkpointNanos.addAndGet(end - start);
+      checkpointPauseNanos.addAndGet(copied - start);
+      Log.o("checkpoint: " + unexpanded.size() + " open, " + seen.size() + " closed, " + bytes + " bytes in " + ((end - start) / 1000000L) + "ms (open locked " + ((copied - start) / 1000L) + "us)");
+    }
+    catch (Throwable t) { Log.e("checkpoint failed: " + cacheCheckpoint, t); }
+  }
+
+  /**
+   * Writes the expansions queued since the last call to the journal, and forces them to disk.
+   */
+  private void writeJournal()
+  {
+    final Checkpoint.Journal out = journalOut.get();
+    if (null == out) return;
+    synchronized (out)
+    {
+      try
+      {
+        final long start = System.nanoTime();
+        for (Node n; null != (n = journaled.poll()); ) out.append(new Packet.Factors(n.depth, n.p, n.q));
+        out.sync();
+        journalSyncs.incrementAndGet();
+        journalNanos.addAndGet(System.nanoTime() - start);
+      }
+      catch (Throwable t) { Log.e("journal write failed: " + cacheCheckpoint, t); }
+    }
+  }
+
+  /**
+   * Ends the journal segment that the next snapshot will include.
+   * @return the first generation the snapshot will not include, or 0 if not journaling
+   */
+  private long rotate() throws IOException
+  {
+    final Checkpoint.Journal out = journalOut.get();
+    if (null == out) return 0;
+    synchronized (out)
+    {
+      for (Node n; null != (n = journaled.poll()); ) out.append(new Packet.Factors(n.depth, n.p, n.q));
+      return out.rotate();
+    }
+  }
+
+  /**
+   * Reloads open and closed from the checkpoint, unless it is for another target, then replays
+   * any journal written since. Saved h values are reused; nodes that were never evaluated, or that
+   * need a key per arm, are evaluated again.
+   *
+   * Replay expands each logged node again w/o evaluating its children: each is removed from the
+   * frontier and its children are added, unless they were themselves expanded earlier in the log
+   * (another worker can log a child before its parent).
+   */
+  private void restore()
+  {
+    try
+    {
+      final long start = System.nanoTime();
+      final Checkpoint.Snapshot snapshot = Checkpoint.read(cacheCheckpoint);
+      if (!cacheS.equals(snapshot.target)) { Log.e("checkpoint ignored, it is for another target: " + cacheCheckpoint); return; }
+
+      final long[] c = snapshot.counters;
+      if (8 == c.length)
+      {
+        final LongAdder[] counters = { generated, regenerated, ignored, expanded, evaluated, reinserted, totalDepth };
+        for (int i = 0; i < counters.length; ++i) { counters[i].reset(); counters[i].add(c[i]); }
+        maxDepthSoFar.reset(); maxDepthSoFar.accumulate(c[7]);
+      }
+
+      for (Packet.Factors f : snapshot.closed) { final Node n = node(f); closed.put(n, n); }
+      final Map<Node, Double> frontier = new LinkedHashMap<>();
+      for (Checkpoint.Entry e : snapshot.open) frontier.put(node(e), e.h);
+
+      long replayed = 0;
+      if (cacheJournal)
+      {
+        final long replayStart = System.nanoTime();
+        final Set<Node> done = new HashSet<>();
+        try
+        {
+          replayed = Checkpoint.Journal.replay(cacheCheckpoint, cacheS, snapshot.journal, f ->
+          {
+            final Node n = node(f);
+            frontier.remove(n);
+            done.add(n);
+            expanded.increment();
+            if (n.depth >= cacheMaxDepth) return;
+            for (int i = 0; i < cacheInternalBase; ++i)
+            {
+              for (int j = 0; j < cacheInternalBase; ++j)
+              {
+                if (i > j && n.identicalFactors()) continue;
+                final Node node = close(new Node(n, i, j));
+                if (!node.validFactors()) { ignored.increment(); continue; }
+                generated.increment();
+                if (!done.contains(node)) frontier.put(node, Double.NaN);
+              }
+            }
+          });
+        }
+        catch (Throwable t) { Log.e("journal replay stopped, resuming from what was read", t); }
+        Log.o("journal: replayed " + replayed + " expansions in " + ((System.nanoTime() - replayStart) / 1000000L) + "ms");
+      }
+
+      for (Map.Entry<Node, Double> e : frontier.entrySet())
+      {
+        final Node n = e.getKey();
+        n.h( null == n.keys && !Double.isNaN(e.getValue()) ? e.getValue() : n.evaluate() );
+        if (!push(n)) break; // goal
+      }
+      Log.o("resumed from checkpoint: " + snapshot.open.size() + " open, " + snapshot.closed.size() + " closed, " + snapshot.bytes + " bytes" + (replayed > 0 ? ", then " + replayed + " journaled expansions (" + frontier.size() + " open)" : "") + " in " + ((System.nanoTime() - start) / 1000000L) + "ms");
+    }
+    catch (Throwable t) { Log.e("checkpoint could not be resumed, starting over: " + cacheCheckpoint, t); open.clear(); closed.clear(); }
+  }
+
+  /// the stats saved w/a checkpoint, in the order restore() puts them back
+  private long[] counters() { return new long[] { generated(), regenerated(), ignored(), expanded(), evaluated(), reinserted(), totalDepth(), maxDepth() }; }
+
   /**
    * expands the current node, pushing any generated children
    * @param n a node to expand
@@ -381,17 +1119,31 @@ public class Solver implements Runnable, Serializable
    */
   private boolean expand(final Node n)
   {
+    // another machine already expanded this node
+    if (cacheShardClosed && duplicates.contains(n.fingerprint())) { pruned.incrementAndGet(); return true; }
+
+    // out of budget: leave the node for whoever takes over the remaining frontier
+    if (cacheBudget > 0 && budgeted.incrementAndGet() > cacheBudget) { n.claimed = 0; push(n); return false; }
+
+    // only now is the node certain to be expanded here, so other machines may skip it
+    if (cacheShardClosed) shard(closedUpdates, n);
+
     // stats
-    if (cachePrintAllNodes) Log.o("expanding: " + n);
+    if (cachePrintAllNodes) Log.t("expanding: ", n.trace());
+    trace(Trace.EXPANDED, n);
     if (cacheStats)
     {
-      expanded.incrementAndGet();
-      maxDepthSoFar.set(Math.max(maxDepthSoFar.get(), n.depth));
-      totalDepth.addAndGet(n.depth);
+      expanded.increment();
+      maxDepthSoFar.accumulate(n.depth);
+      totalDepth.add(n.depth);
+      depths.record(n.depth);
+      hs.record(n.h);
     }
 
+    if (cacheNetworkSearch) outbox(outboxExpanded, n);
+
     // early interruptAndJoin if possible
-    if (n.depth >= cacheMaxDepth) return true;
+    if (n.depth >= cacheMaxDepth) { if (cacheJournal) journaled.offer(n); return true; }
 
     // generate all node combinations
     for (int i = 0; i < cacheInternalBase; ++i)
@@ -403,72 +1155,251 @@ public class Solver implements Runnable, Serializable
         final Node node = close(new Node(n, i, j));
         if (null != node && node.validFactors())
         {
-          generated.incrementAndGet();
-          node.h = node.h(); // defer h() calc until necessary
-          if (cachePrintAllNodes) Log.o("generated: " + node);
+          generated.increment();
+          if (cacheLazyHeuristics) { node.h( n.h() ); node.pending = true; } // defer h() calc until popped
+          else node.h( node.evaluate() );
+          if (cachePrintAllNodes) Log.t("generated: ", node.trace());
+          trace(Trace.GENERATED, node);
           if (!push(node)) return false;
+          if (cacheNetworkSearch) outbox(outboxGenerated, node);
+          if (cacheShardClosed) shard(closedChecks, node);
         }
         else
         {
-          ignored.incrementAndGet();
-          if (cachePrintAllNodes) Log.o("ignored: " + node);
+          ignored.increment();
+          if (cachePrintAllNodes) Log.t("ignored: ", node.trace());
+          trace(Trace.IGNORED, node);
         }
       }
     }
 
+    // logged only once its children are in open, so a snapshot taken after the node is written includes them
+    if (cacheJournal) journaled.offer(n);
     return true;
   }
 
-  public boolean solved() { return null != goal(); }
-  public boolean solving() { return solving.get(); }
-  public boolean paused() { return cachePaused; }
-  public void pause() { Log.o("search paused"); cachePaused = true; }
-  public void resume() { Log.o("search resumed"); cachePaused = false; }
+  /**
+   * Sends the nodes generated and expanded since the last update, in size-capped batches.
+   * Updates stay queued until the server acknowledges them, and are all resent if the
+   * connection changed, since the server may never have seen them.
+   * @param c the connection to the search host
+   */
+  private void sync(Client c)
+  {
+    final int batch = Math.max(1, networkBatch());
 
-  public BigInteger semiprime() { return cacheS; }
+    // the sharded closed set is best-effort: a lost batch only means fewer duplicates are pruned
+    for (int i = 0; i < networkWindow && !closedUpdates.isEmpty(); ++i) if (!c.write(Packet.Type.CLOSED_UPDATE, 0L, cacheS, fingerprints(closedUpdates, batch))) break;
+    for (int i = 0; i < networkWindow && !closedChecks.isEmpty(); ++i)
+    {
+      final long[] fingerprints = fingerprints(closedChecks, batch);
+      if (!c.write(Packet.Type.CLOSED_CHECK, 0L, cacheS, fingerprints)) break;
+      checked.addAndGet(fingerprints.length);
+    }
 
-  private String statsToString(boolean detailed)
-  {
-    final long elapsedNanos = System.nanoTime() - startTime;
-    final long seconds = (elapsedNanos/1000000000L);
-    return
-        "<table border=\"1\">" +
-        "<tr>" +
-        "<th>generated</th>" + "<th>regenerated</th>" + "<th>ignored</th>" +
-        "<th>expanded</th>" + "<th>maxDepthSoFar</th>" + "<th>avgDepth</th>" +
-        "</tr>" +
-        "<tr>" +
-        "<td>" + generated + "</td>" + "<td>" + regenerated + "</td>" + "<td>" + ignored + "</td>" +
-        "<td>" + expanded + "</td>" + "<td>" + maxDepthSoFar + "</td>" + "<td>" + avgDepth() + "</td>" +
-        "</tr>" +
-        "</table>" +
-        (detailed ? "\topen.size():\t" + open.size() : "") +
-        (detailed ? "\tclosed.size():\t" + closed.size() : "") +
-        "elapsed:\t" + (seconds/60L) + " minutes, " + (seconds%60L) + " seconds";
-  }
+    if (c != cacheClient)
+    {
+      cacheClient = c;
+      for (Packet p : unacked.values()) if (c.write(p)) synced.addAndGet(p.asCollection(2).size() + p.asCollection(3).size());
+    }
 
+    while (unacked.size() < networkWindow)
+    {
+      final List<Node> expanded = new ArrayList<>(), generated = new ArrayList<>();
+      for (boolean more = true; more && expanded.size() + generated.size() < batch; )
+      {
+        // interleave so neither kind starves the other
+        final Node e = outboxExpanded.poll(), g = outboxGenerated.poll();
+        if (null != e) expanded.add(e);
+        if (null != g) generated.add(g);
+        more = null != e || null != g;
+      }
+      if (expanded.isEmpty() && generated.isEmpty()) return;
+      backlog.addAndGet(-(expanded.size() + generated.size()));
+
+      final long seq = networkSequence.incrementAndGet();
+      final Packet update = new Packet(Packet.Type.UPDATE, seq, cacheS, generated, expanded);
+      unacked.put(seq, update);
+      if (!c.write(update)) return;
+      synced.addAndGet(expanded.size() + generated.size());
+    }
+  }
 
   /**
-   * goal test w/a somewhat optimized order of comparisons
-   * if it's the goal, it will be stored
-   * @param n a node to test against the target
-   * @return true if this is the goal or a goal node has been found
+   * Queues a node for the next update unless the backlog is full.
    */
-  private boolean goal(Node n) { return null == n ? null != goal() : (n.goal() && (goal.compareAndSet(null, n) || null != goal())); }
-  private Node goal() { return goal.get(); }
-
-  private long generated() { return generated.get(); }
-  private long regenerated() { return regenerated.get(); }
-  private long ignored() { return ignored.get(); }
-  private long expanded() { return expanded.get(); }
-  private long maxDepth() { return maxDepthSoFar.get(); }
-  private long totalDepth() { return totalDepth.get(); }
-  private long avgDepth()
+  private void outbox(Queue<Node> outbox, Node n)
   {
-    final long expanded = expanded();
-    return 0 != expanded ? totalDepth() / expanded : 0;
+    if (backlog.incrementAndGet() > networkBacklog) { backlog.decrementAndGet(); unsynced.incrementAndGet(); return; }
+    outbox.offer(n);
   }
 
+  /**
+   * Queues a node's fingerprint for the sharded closed set, unless the backlog is full.
+   */
+  private void shard(Queue<Long> queue, Node n)
+  {
+    if (closedBacklog.incrementAndGet() > networkBacklog) { closedBacklog.decrementAndGet(); return; }
+    queue.offer(n.fingerprint());
+  }
+
+  private long[] fingerprints(Queue<Long> queue, int max)
+  {
+    final long[] fingerprints = new long[max];
+    int n = 0;
+    for (Long f; n < max && null != (f = queue.poll()); ) fingerprints[n++] = f;
+    closedBacklog.addAndGet(-n);
+    return Arrays.copyOf(fingerprints, n);
+  }
+
+  /**
+   * Called as answers to closed checks stream back; those nodes are skipped when popped.
+   * @param target the search the fingerprints belong to
+   * @param fingerprints generated nodes some machine has already expanded
+   */
+  public static void duplicates(BigInteger target, long[] fingerprints)
+  {
+    for (Solver s : solvers) if (s.cacheShardClosed && s.cacheS.equals(target)) for (long f : fingerprints) s.duplicates.add(f);
+  }
+
+  /**
+   * Tells the server the moment this machine factors the target, so it can stop everyone else.
+   */
+  private void report(Node n)
+  {
+    final Client c = client();
+    if (null == c || !c.connected() || !c.write(Packet.Type.SOLUTION_UPDATE, cacheS, n.depth, n.p, n.q)) Log.e("failed to report solution to the server: " + n);
+  }
+
+  /**
+   * Called when the server announces that another machine has factored a target.
+   * Every running search for it takes the solution as its goal and interrupts its workers.
+   * @param target the semiprime
+   * @param solution the verified factors
+   */
+  public static void cancel(BigInteger target, Packet.Factors solution)
+  {
+    if (null == target || null == solution || !target.equals(solution.p.multiply(solution.q))) { Log.e("ignoring invalid solution for " + target + ": " + solution); return; }
+    for (Solver s : solvers)
+    {
+      if (!s.solving() || !s.cacheS.equals(target) || !s.goal.compareAndSet(null, s.node(solution))) continue;
+      Log.o("search cancelled, solved elsewhere: " + solution.p + " * " + solution.q);
+      synchronized (s.threads) { for (Thread thread : s.threads) thread.interrupt(); }
+    }
+  }
+
+  /**
+   * Called when the server has merged an update.
+   * @param seq the update's sequence number
+   */
+  public static void acknowledge(long seq) { for (Solver s : solvers) if (null != s.unacked.remove(seq)) return; }
+
+  public boolean solved() { return null != goal(); }
+  public boolean solving() { return solving.get(); }
+  public boolean paused() { return cachePaused; }
+  public void pause() { Log.o("search paused"); cachePaused = true; }
+  public void resume() { Log.o("search resumed"); cachePaused = false; }
+
+  public BigInteger semiprime() { return cacheS; }
+
+  /**
+   * Takes the best unexpanded nodes, e.g. to hand the rest of a leased work unit back to the server.
+   * Call once the search has stopped.
+   * @param max the most nodes to return
+   * @return up to max nodes, best first
+   */
+  public List<Packet.Factors> frontier(int max)
+  {
+    final Set<Packet.Factors> frontier = new LinkedHashSet<>();
+    for (Node n; frontier.size() < max && null != (n = open.poll()); ) if (0 == n.claimed) frontier.add(new Packet.Factors(n.depth, n.p, n.q));
+    return new ArrayList<>(frontier);
+  }
+
+  /**
+   * Rebuilds a node received over the network in this solver.
+   * @param f the node's depth and factors
+   * @return a new node belonging to the main search
+   */
+  public Node node(Packet.Factors f)
+  {
+    if (null == f) throw new NullPointerException("null factors");
+    return new Node(cacheBase, f.depth, f.p, f.q);
+  }
+
+  private String statsToString(boolean detailed)
+  {
+    final long elapsedNanos = System.nanoTime() - startTime;
+    final long seconds = (elapsedNanos/1000000000L);
+    return
+        "<table border=\"1\">" +
+        "<tr>" +
+        "<th>generated</th>" + "<th>regenerated</th>" + "<th>ignored</th>" +
+        "<th>expanded</th>" + "<th>evaluated</th>" + "<th>reinserted</th>" + "<th>maxDepthSoFar</th>" + "<th>avgDepth</th>" +
+        "</tr>" +
+        "<tr>" +
+        "<td>" + generated + "</td>" + "<td>" + regenerated + "</td>" + "<td>" + ignored + "</td>" +
+        "<td>" + expanded + "</td>" + "<td>" + evaluated + "</td>" + "<td>" + reinserted + "</td>" + "<td>" + maxDepthSoFar + "</td>" + "<td>" + avgDepth() + "</td>" +
+        "</tr>" +
+        "</table>" +
+        "depth:\t" + depths + "\th:\t" + hs + "\n" +
+        (null != cacheArms ? (null != cacheBandit ? "arms:" : "portfolio:") + Stream.of(cacheArms).map(Arm::toString).reduce("", (a1, a2) -> a1 + "\t" + a2) + "\n" : "") +
+        (detailed ? "\topen.size():\t" + open.size() : "") +
+        (detailed ? "\tclosed.size():\t" + closedSize() : "") +
+        "elapsed:\t" + (seconds/60L) + " minutes, " + (seconds%60L) + " seconds";
+  }
+
+
+  /**
+   * goal test w/a somewhat optimized order of comparisons
+   * if it's the goal, it will be stored
+   * @param n a node to test against the target
+   * @return true if this is the goal or a goal node has been found
+   */
+  private boolean goal(Node n)
+  {
+    if (null == n) return null != goal();
+    if (!n.goal()) return false;
+    if (goal.compareAndSet(null, n) && cacheNetworkSearch) report(n);
+    return true;
+  }
+  private Node goal() { return goal.get(); }
+  public Packet.Factors solution() { final Node n = goal(); return null != n ? new Packet.Factors(n.depth, n.p, n.q) : null; }
+
+  private long generated() { return generated.sum(); }
+  private long regenerated() { return regenerated.sum(); }
+  private long ignored() { return ignored.sum(); }
+  public long expanded() { return expanded.sum(); }
+  public long evaluated() { return evaluated.sum(); }
+  private long reinserted() { return reinserted.sum(); }
+  private long maxDepth() { return maxDepthSoFar.get(); }
+  private long totalDepth() { return totalDepth.sum(); }
+  public Histogram depths() { return depths; } ///< depth of each expanded node
+  public Histogram hs() { return hs; } ///< h of each expanded node (the parent's, if still pending)
+  private long avgDepth()
+  {
+    final long expanded = expanded();
+    return 0 != expanded ? totalDepth() / expanded : 0;
+  }
+
+  /**
+   * @return nodes waiting in every sub-frontier; a node held by several arms counts once per arm
+   */
+  public long openSize()
+  {
+    if (null == cacheArms) return open.size();
+    long size = 0; for (Arm arm : cacheArms) size += arm.open.size();
+    return size;
+  }
+
+  public int closedSize() { return null != cacheArena ? closedFingerprints.size() : closed.size(); }
+  public long arenaBytes() { return null != cacheArena ? cacheArena.bytes() : 0; } ///< mapped so far
+  BlockingQueue<Node> open() { return open; } ///< for tests
+  public long checkpoints() { return checkpoints.get(); }
+  public long checkpointNanos() { return checkpointNanos.get(); }
+  public long checkpointPauseNanos() { return checkpointPauseNanos.get(); }
+  public long journalSyncs() { return journalSyncs.get(); }
+  public long journalNanos() { return journalNanos.get(); }
+
   public long startTime() { return startTime; }
   public long endTime() { return endTime; }
   public long elapsed() { return endTime - startTime; }
@@ -482,12 +1413,59 @@ public class Solver implements Runnable, Serializable
   public static Client client() { return Solver.client.get(); }
   public static void client(Client client) { Solver.client.set(client); }
 
+  public static Server server() { return Solver.server.get(); }
+  public static void server(Server server) { Solver.server.set(server); }
+
   public static boolean detailedStats() { return Solver.detailedStats.get(); }
   public static void detailedStats(boolean enabled) { Solver.detailedStats.set(enabled); }
 
   public static boolean favorPerformance() { return Solver.favorPerformance.get(); }
   public static void favorPerformance(boolean enabled) { Solver.favorPerformance.set(enabled); }
 
+  public static boolean lazyHeuristics() { return Solver.lazyHeuristics.get(); }
+  public static void lazyHeuristics(boolean enabled) { Solver.lazyHeuristics.set(enabled); }
+
+  public static boolean adaptive() { return Solver.adaptive.get(); }
+  public static void adaptive(boolean enabled) { Solver.adaptive.set(enabled); }
+
+  public static int adaptiveBatch() { return adaptiveBatch.get(); }
+  public static void adaptiveBatch(int expansions) { if (expansions < 1) Log.e("invalid batch: " + expansions); else adaptiveBatch.set(expansions); }
+
+  public static boolean weighted() { return Solver.weighted.get(); }
+  public static void weighted(boolean enabled) { Solver.weighted.set(enabled); }
+
+  public static double weight() { return weight.get(); }
+  public static void weight(double w) { if (w < 0 || Double.isNaN(w) || Double.isInfinite(w)) Log.e("invalid weight: " + w); else weight.set(w); }
+
+  public static boolean anytime() { return Solver.anytime.get(); }
+  public static void anytime(boolean enabled) { Solver.anytime.set(enabled); }
+
+  public static double anytimeWeight() { return anytimeWeight.get(); }
+  public static void anytimeWeight(double w) { if (w < 0 || Double.isNaN(w) || Double.isInfinite(w)) Log.e("invalid weight: " + w); else anytimeWeight.set(w); }
+
+  public static double anytimeDecay() { return anytimeDecay.get(); }
+  public static void anytimeDecay(double decay) { if (!(decay > 0 && decay < 1)) Log.e("invalid decay: " + decay); else anytimeDecay.set(decay); }
+
+  public static long anytimePeriodMillis() { return anytimePeriodMillis.get(); }
+  public static void anytimePeriodMillis(long millis) { if (millis < 1) Log.e("invalid period: " + millis); else anytimePeriodMillis.set(millis); }
+
+  public static boolean portfolioClosed() { return Solver.portfolioClosed.get(); }
+  public static void portfolioClosed(boolean shared) { Solver.portfolioClosed.set(shared); }
+
+  /**
+   * Races several search configurations against the same target, sharing this solver's worker threads.
+   * @param members the sub-searches to run; none restores the single search configured by heuristics(), priority(), etc.
+   */
+  public static void portfolio(Member... members)
+  {
+    Solver.portfolio.clear();
+    if (null == members || 0 == members.length) return;
+    Collections.addAll(Solver.portfolio, members);
+  }
+
+  public static Priority priority() { return priority.get(); }
+  public static void priority(Priority policy) { priority.set(null != policy ? policy : Priority.NONE); }
+
   public static boolean compressMemory() { return Solver.compressMemory.get(); }
   public static void compressMemory(boolean enabled) { Solver.compressMemory.set(enabled); }
 
@@ -495,6 +1473,17 @@ public class Solver implements Runnable, Serializable
   public static void restrictDisk(boolean enabled) { Solver.restrictDisk.set(enabled); }
 
   public static boolean restrictNetwork() { return Solver.restrictNetwork.get(); }
+  public static int networkBatch() { return Solver.networkBatch.get(); }
+  public static void networkBatch(int nodes) { Solver.networkBatch.set(nodes); }
+
+  public static boolean shardClosed() { return Solver.shardClosed.get(); }
+  public static void shardClosed(boolean enabled) { Solver.shardClosed.set(enabled); }
+
+  public static long budget() { return Solver.budget.get(); }
+  public static void budget(long expansions) { Solver.budget.set(expansions); }
+
+  public static List<Packet.Factors> roots() { return Collections.unmodifiableList(Solver.roots); }
+  public static void roots(Collection<Packet.Factors> roots) { Solver.roots.clear(); if (null != roots) Solver.roots.addAll(roots); }
   public static void restrictNetwork(boolean enabled) { Solver.restrictNetwork.set(enabled); }
 
   public static void background(boolean background) { Solver.background.set(background); }
@@ -506,6 +1495,56 @@ public class Solver implements Runnable, Serializable
   public static PrintWriter csv() { return Solver.csv.get(); }
   public static void csv(PrintWriter csv) { Solver.csv.set(csv); }
 
+  public static PrintWriter series() { return Solver.series.get(); }
+  public static void series(PrintWriter out) { Solver.series.set(out); }
+
+  public static boolean seriesJson() { return Solver.seriesJson.get(); }
+  public static void seriesJson(boolean json) { Solver.seriesJson.set(json); }
+
+  public static long seriesPeriodMillis() { return seriesPeriodMillis.get(); }
+  public static void seriesPeriodMillis(long millis) { if (millis < 1) Log.e("invalid period: " + millis); else seriesPeriodMillis.set(millis); }
+
+  public static File trace() { return Solver.trace.get(); }
+  public static void trace(File file) { Solver.trace.set(file); }
+
+  public static int traceSample() { return traceSample.get(); }
+  public static void traceSample(int n) { if (n < 0) Log.e("invalid sample: " + n); else traceSample.set(n); }
+
+  public static int traceMinDepth() { return traceMinDepth.get(); }
+  public static int traceMaxDepth() { return traceMaxDepth.get(); }
+  /// every node w/depth in [min, max] is traced, regardless of the sample (max < min for none)
+  public static void traceDepths(int min, int max) { traceMinDepth.set(min); traceMaxDepth.set(max); }
+
+  public static int traceRecords() { return traceRecords.get(); }
+  public static void traceRecords(int records) { if (records < 1 || records > 1 << 26) Log.e("invalid trace size: " + records); else traceRecords.set(records); }
+
+  public static boolean flight() { return Solver.flight.get(); }
+  public static void flight(boolean enabled) { Solver.flight.set(enabled); }
+
+  public static int flightSample() { return flightSample.get(); }
+  public static void flightSample(int n) { if (n < 1) Log.e("invalid sample: " + n); else flightSample.set(n); }
+
+  public static File checkpoint() { return Solver.checkpoint.get(); }
+  public static void checkpoint(File file) { Solver.checkpoint.set(file); }
+
+  public static long checkpointPeriodMillis() { return checkpointPeriodMillis.get(); }
+  public static void checkpointPeriodMillis(long millis) { if (millis < 1) Log.e("invalid period: " + millis); else checkpointPeriodMillis.set(millis); }
+
+  public static File results() { return Solver.results.get(); }
+  public static void results(File file) { Solver.results.set(file); }
+
+  public static boolean arena() { return Solver.arena.get(); }
+  public static void arena(boolean enabled) { Solver.arena.set(enabled); }
+
+  public static File arenaDir() { return Solver.arenaDir.get(); }
+  public static void arenaDir(File dir) { Solver.arenaDir.set(dir); }
+
+  public static boolean journal() { return Solver.journal.get(); }
+  public static void journal(boolean enabled) { Solver.journal.set(enabled); }
+
+  public static long journalSyncMillis() { return journalSyncMillis.get(); }
+  public static void journalSyncMillis(long millis) { if (millis < 1) Log.e("invalid period: " + millis); else journalSyncMillis.set(millis); }
+
   public static void processors(int processors) { Solver.processors.set(processors); }
   public static int processors() { return processors.get(); }
 
@@ -555,6 +1594,49 @@ public class Solver implements Runnable, Serializable
 
   public static void release() { solvers.clear(); }
 
+  /**
+   * Forgets a finished solver: it no longer receives network updates, and its lists are freed.
+   * Take whatever is still needed (e.g. {@link #frontier(int)}) first.
+   */
+  public Solver retire()
+  {
+    if (solving()) interrupt().join();
+    solvers.remove(this);
+    open.clear(); closed.clear();
+    return cleanup();
+  }
+
+  /**
+   * Settings of a self-contained search, e.g. a leased work unit or a benchmark, used instead of the
+   * static ones so it can run alongside the user's own searches w/o racing them for the globals: it
+   * starts from its own roots and budget, and never checkpoints, journals, streams stats, traces, writes
+   * csv or touches the result store. Everything else (heuristics, processors, ...) still comes from the statics.
+   */
+  public static class Unit
+  {
+    final Packet.Factors[] roots;
+    final long             budget;
+    final boolean          network;
+    final Consumer<Node>   callback;
+
+    public Unit(Collection<Packet.Factors> roots, long budget, boolean network) { this(roots, budget, network, null); }
+
+    /**
+     * @param roots subtrees to start from (none for the target's root)
+     * @param budget if > 0, the search stops after this many expansions
+     * @param network if true, the search is synced w/the server like a network search
+     * @param callback receives this unit's goal (or null) in place of the global {@link #callback()}; if null, the
+     *                 global one does, and if that is unset too the unit completes silently
+     */
+    public Unit(Collection<Packet.Factors> roots, long budget, boolean network, Consumer<Node> callback)
+    {
+      this.roots = null != roots ? roots.toArray(new Packet.Factors[0]) : new Packet.Factors[0];
+      this.budget = budget;
+      this.network = network;
+      this.callback = callback;
+    }
+  }
+
   public static void shutdown()
   {
     while (null != solvers.peek())
@@ -569,6 +1651,7 @@ public class Solver implements Runnable, Serializable
         "\n\tregenerated: " + lifetimeRegenerated.get() +
         "\n\tignored: " + lifetimeIgnored.get() +
         "\n\texpanded: " + lifetimeExpanded.get() +
+        "\n\tevaluated: " + lifetimeEvaluated.get() +
         "\n\ttotalDepth: " + lifetimeTotalDepth.get() +
         "\n\tmaxDepth: " + lifetimeMaxDepth.get() +
         "\n\tsolvers: " + lifetimeSolvers.get());
@@ -584,17 +1667,28 @@ public class Solver implements Runnable, Serializable
     private final int     hashCode;
     private final int     depth;
     private double h = Double.POSITIVE_INFINITY; ///< the heuristic search factors for this node
+    private boolean pending; ///< true while h is only the parent's estimate (lazy mode)
+    private final long[] keys = cacheShared ? new long[cacheArms.length-1] : null; ///< sort keys for arms 1+ when nodes are shared
+    private long key; ///< f in the high bits, tie-breaker in the low bits (see Priority)
+    private final Arm arm; ///< the (sub-)search this node belongs to
+    volatile int claimed; ///< set once expanded (adaptive mode)
 
     public final BigInteger p, q; ///< the candidate factors
     public final BigInteger s; ///< the partial factors for this node
 
-    Node() { this(null, 1, 1); }
-    Node(final Node parent, int pBit, int qBit)
+    Node() { this(cacheBase); }
+    Node(final Arm arm) { this(arm, null, 1, 1); }
+    Node(final Node parent, int pBit, int qBit) { this(parent.arm, parent, pBit, qBit); }
+    private Node(final Arm arm, final Node parent, int pBit, int qBit)
     {
-      this.depth = null != parent ? parent.depth+1 : 0;
-
-      final BigInteger f1 = null != parent ? (0 != pBit ? parent.p.setBit(depth) : parent.p) : BigInteger.valueOf(pBit);
-      final BigInteger f2 = null != parent ? (0 != qBit ? parent.q.setBit(depth) : parent.q) : BigInteger.valueOf(qBit);
+      this(arm, null != parent ? parent.depth+1 : 0,
+          null != parent ? (0 != pBit ? parent.p.setBit(parent.depth+1) : parent.p) : BigInteger.valueOf(pBit),
+          null != parent ? (0 != qBit ? parent.q.setBit(parent.depth+1) : parent.q) : BigInteger.valueOf(qBit));
+    }
+    private Node(final Arm arm, int depth, final BigInteger f1, final BigInteger f2)
+    {
+      this.arm = arm;
+      this.depth = depth;
 
       final int compare = f1.compareTo(f2);
       this.identicalFactors = compare == 0;
@@ -608,15 +1702,28 @@ public class Solver implements Runnable, Serializable
       hash = 37 * hash + p.hashCode();
       hash = 37 * hash + q.hashCode();
       this.hashCode = hash;
+
+      // the tie-breaker is fixed at generation, f is filled in once h is known
+      final long seq = cacheOrdered ? insertions.incrementAndGet() : 0L;
+      this.key = arm.priority.tie(depth, seq);
+      if (null != keys) for (int i = 0; i < keys.length; ++i) keys[i] = cacheArms[1+i].priority.tie(depth, seq);
     }
 
-    @Override public String toString() { return s + "<sub>10</sub>:" + s.toString(cacheInternalBase) + "<sub>" + cacheInternalBase + "</sub>:" + p + ":p:" + q + ":q:" + depth + ":depth:" + h  + ":h:" + hashCode + ":hash"; }
+    @Override public String toString() { return format(h); }
+
+    /**
+     * @return this node's toString(), formatted later (by the log) w/h as it is now; every other field it prints never changes
+     */
+    Supplier<String> trace() { final double h = this.h; return () -> format(h); }
+
+    private String format(double h) { return s + "<sub>10</sub>:" + s.toString(cacheInternalBase) + "<sub>" + cacheInternalBase + "</sub>:" + p + ":p:" + q + ":q:" + depth + ":depth:" + h  + ":h:" + hashCode + ":hash"; }
     @Override public boolean equals(Object o) { return o instanceof Node && ((Node) o).depth == depth && p.equals(((Node) o).p) && q.equals(((Node) o).q); }
-    @Override public int compareTo(Object o) { return Double.compare(h(), ((Node) o).h()); }
+    @Override public int compareTo(Object o) { return Long.compare(key, ((Node) o).key); }
     @Override public int hashCode() { return hashCode; }
 
     Solver solver() { return Solver.this; }
-    String toCsv() { return generated + "," + ignored + "," + expanded + "," + open.size() + "," + closed.size() + "," + maxDepth() + "," + avgDepth() + "," + depth + "," + h + "," + hashCode + "," + s + "," + p + "," + q; }
+    long fingerprint() { return Fingerprints.fingerprint(depth, p, q); }
+    String toCsv() { return generated + "," + ignored + "," + expanded + "," + open.size() + "," + closedSize() + "," + maxDepth() + "," + avgDepth() + "," + depth + "," + h + "," + hashCode + "," + s + "," + p + "," + q; }
 
     int depth() { return this.depth; }
     boolean identicalFactors() { return identicalFactors; }
@@ -649,16 +1756,552 @@ public class Solver implements Runnable, Serializable
 
 
     /**
-     * Sums all desired heuristic functions.
-     * @return an estimate of this node's distance to goal, where 0 = goal
+     * @return the cached estimate, evaluating it first if it was never set
      */
     private double h()
     {
-      if (h != Double.POSITIVE_INFINITY) return h; h = 0;
-      final double numHeuristics = (double) cacheHeuristics.length;
-      for (Heuristic heuristic : cacheHeuristics) h += heuristic.apply(solver(), this);
-      return numHeuristics > 0 ? h / numHeuristics : h;
+      if (h == Double.POSITIVE_INFINITY) h( evaluate() );
+      return h;
     }
 
+    /**
+     * Sets h and re-encodes the sort key, keeping the tie-breaker assigned at generation.
+     * @param h the new estimate
+     */
+    private void h(double h)
+    {
+      this.h = h;
+      this.key = arm.key(depth, h, arm.priority.tie(key));
+    }
+
+    /**
+     * Averages all desired heuristic functions.
+     * @return an estimate of this node's distance to goal, where 0 = goal
+     */
+    private double evaluate()
+    {
+      evaluated.increment();
+      final Flight.Evaluation event = cacheFlight ? Flight.evaluation(cacheFlightSample) : null;
+      if (null == keys)
+      {
+        final double h = arm.h(this, null);
+        if (null != event) event.done(depth, 1, h);
+        return h;
+      }
+
+      // arms often reuse the same heuristics, so only compute each one once
+      final double[] memo = new double[Heuristic.values().length];
+      Arrays.fill(memo, Double.NaN);
+      for (int i = 0; i < keys.length; ++i) keys[i] = cacheArms[1+i].key(depth, cacheArms[1+i].h(this, memo), cacheArms[1+i].priority.tie(keys[i]));
+      final double h = arm.h(this, memo);
+      if (null != event) event.done(depth, 1 + keys.length, h);
+      return h;
+    }
+
+  }
+
+  /**
+   * Streams one stats record per period, for charting runs and comparing machines. Each record is a
+   * handful of cheap reads on the timer thread (counter sums, queue sizes, heap usage, worker cpu time);
+   * it is written and flushed on a thread of its own, so a slow sink never holds up the timer or the workers.
+   * Rates and utilization are over the period since the previous record.
+   */
+  private class Series
+  {
+    private final ThreadMXBean    cpu = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean    memory = ManagementFactory.getMemoryMXBean();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> { final Thread t = new Thread(r, "series"); t.setDaemon(true); return t; });
+    private final long[]          ids; ///< worker thread ids
+    private final long[]          cpuNanos; ///< each worker's cpu time at the previous record (-1 if unknown)
+    private long                  nanos = startTime, expanded = expanded(), generated = generated(), ignored = ignored();
+
+    Series()
+    {
+      ids = threads.stream().mapToLong(Thread::getId).toArray();
+      cpuNanos = new long[ids.length];
+      if (!cacheSeriesJson)
+      {
+        final StringBuilder header = new StringBuilder("t,expanded,expanded/s,generated/s,ignored/s,open,closed,heapUsed,heapMax,depthP50,depthP90,depthP99,hP50,hP90,hP99");
+        for (int i = 1; i <= ids.length; ++i) header.append(",thread").append(i);
+        write(header.append('\n').toString());
+      }
+    }
+
+    synchronized void sample()
+    {
+      final long now = System.nanoTime(), expanded = expanded(), generated = generated(), ignored = ignored();
+      final double seconds = Math.max(1e-9, (now - nanos) / 1e9);
+      final long[] d = depths.snapshot(), h = hs.snapshot();
+      final MemoryUsage heap = memory.getHeapMemoryUsage();
+
+      final double[] utilization = new double[ids.length];
+      for (int i = 0; i < ids.length; ++i)
+      {
+        final long t = cpu.isThreadCpuTimeSupported() ? cpu.getThreadCpuTime(ids[i]) : -1;
+        utilization[i] = t < 0 ? Double.NaN : t < cpuNanos[i] ? 0 : (t - cpuNanos[i]) / 1e9 / seconds; // a finished thread reports -1
+        if (t >= 0) cpuNanos[i] = t;
+      }
+
+      final Object[] values = { (now - startTime) / 1e9, expanded, (expanded - this.expanded) / seconds, (generated - this.generated) / seconds, (ignored - this.ignored) / seconds,
+          open.size(), closedSize(), heap.getUsed(), heap.getMax(),
+          depths.quantile(d, 0.5), depths.quantile(d, 0.9), depths.quantile(d, 0.99), hs.quantile(h, 0.5), hs.quantile(h, 0.9), hs.quantile(h, 0.99) };
+      nanos = now; this.expanded = expanded; this.generated = generated; this.ignored = ignored;
+      write(cacheSeriesJson ? json(values, utilization) : csv(values, utilization));
+    }
+
+    void close()
+    {
+      sample();
+      writer.shutdown();
+      try { if (!writer.awaitTermination(10, TimeUnit.SECONDS)) Log.e("series: records still queued after 10s"); } catch (InterruptedException ignored) {}
+    }
+
+    private void write(String record) { writer.execute(() -> { cacheSeries.print(record); cacheSeries.flush(); }); }
+
+    private String json(Object[] values, double[] utilization)
+    {
+      final String[] names = { "t", "expanded", "expandedPerSecond", "generatedPerSecond", "ignoredPerSecond", "open", "closed", "heapUsed", "heapMax",
+          "depthP50", "depthP90", "depthP99", "hP50", "hP90", "hP99" };
+      final StringBuilder b = new StringBuilder("{\"bits\":").append(cacheSLen2);
+      for (int i = 0; i < names.length; ++i) b.append(",\"").append(names[i]).append("\":").append(number(values[i]));
+      b.append(",\"utilization\":[");
+      for (int i = 0; i < utilization.length; ++i) b.append(0 != i ? "," : "").append(number(utilization[i]));
+      return b.append("]}\n").toString();
+    }
+
+    private String csv(Object[] values, double[] utilization)
+    {
+      final StringBuilder b = new StringBuilder();
+      for (int i = 0; i < values.length; ++i) b.append(0 != i ? "," : "").append(number(values[i]));
+      for (double u : utilization) b.append(',').append(number(u));
+      return b.append('\n').toString();
+    }
+
+    /// json has no NaN, so an unknown value is null (and empty in csv, since both share this)
+    private String number(Object v)
+    {
+      if (!(v instanceof Double)) return String.valueOf(v);
+      final double d = (Double) v;
+      if (Double.isNaN(d) || Double.isInfinite(d)) return cacheSeriesJson ? "null" : "";
+      return String.format(Locale.ROOT, Math.abs(d) >= 1e4 ? "%.0f" : "%.4g", d);
+    }
+  }
+
+  /**
+   * An open list whose nodes live in a {@link NodeArena}. The heap only holds each node's sort key and
+   * slot in two primitive arrays, so the collector never traces the frontier, and it can outgrow the heap.
+   * Nodes are rebuilt on the way out; a popped node is an equal copy of the one pushed.
+   */
+  private class ArenaQueue extends AbstractQueue<Node> implements BlockingQueue<Node>
+  {
+    private final NodeArena     arena;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition     notEmpty = lock.newCondition();
+    private long[]              keys  = new long[1024]; ///< binary heap on key
+    private int[]               slots = new int[1024]; ///< each key's record
+    private int                 size  = 0;
+
+    ArenaQueue(NodeArena arena) { this.arena = arena; }
+
+    @Override public boolean offer(Node n)
+    {
+      // factors are converted before locking, so the lock only covers copying bytes and the heap
+      final byte[] p = n.p.toByteArray(), q = n.q.toByteArray();
+      lock.lock();
+      try
+      {
+        final int slot = arena.allocate();
+        final ByteBuffer chunk = arena.chunk(slot);
+        final int at = arena.offset(slot);
+        chunk.putInt(at + NodeArena.DEPTH, n.depth).putInt(at + NodeArena.FLAGS, n.pending ? 1 : 0).putLong(at + NodeArena.KEY, n.key).putDouble(at + NodeArena.H, n.h);
+        arena.factor(slot, NodeArena.P, p);
+        arena.factor(slot, arena.q(), q);
+
+        if (size == keys.length) { keys = Arrays.copyOf(keys, size << 1); slots = Arrays.copyOf(slots, size << 1); }
+        siftUp(size++, n.key, slot);
+        notEmpty.signal();
+        return true;
+      }
+      catch (Throwable t) { Log.e("arena could not take another node", t); return false; }
+      finally { lock.unlock(); }
+    }
+
+    @Override public Node poll()
+    {
+      final Record r;
+      lock.lock();
+      try { r = 0 != size ? dequeue() : null; }
+      finally { lock.unlock(); }
+      return null != r ? r.node() : null;
+    }
+
+    @Override public Node poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+      long nanos = unit.toNanos(timeout);
+      final Record r;
+      lock.lockInterruptibly();
+      try
+      {
+        while (0 == size) { if (nanos <= 0) return null; nanos = notEmpty.awaitNanos(nanos); }
+        r = dequeue();
+      }
+      finally { lock.unlock(); }
+      return r.node();
+    }
+
+    @Override public Node take() throws InterruptedException
+    {
+      final Record r;
+      lock.lockInterruptibly();
+      try
+      {
+        while (0 == size) notEmpty.await();
+        r = dequeue();
+      }
+      finally { lock.unlock(); }
+      return r.node();
+    }
+
+    @Override public Node peek()
+    {
+      final Record r;
+      lock.lock();
+      try { r = 0 != size ? new Record(slots[0]) : null; }
+      finally { lock.unlock(); }
+      return null != r ? r.node() : null;
+    }
+
+    @Override public int size()
+    {
+      lock.lock();
+      try { return size; }
+      finally { lock.unlock(); }
+    }
+
+    @Override public void clear()
+    {
+      lock.lock();
+      try { size = 0; arena.clear(); }
+      finally { lock.unlock(); }
+    }
+
+    /**
+     * Removes one node equal to o. The heap is scanned under the lock, comparing depth and then the factors
+     * in place, so nothing is rebuilt for nodes that do not match.
+     */
+    @Override public boolean remove(Object o)
+    {
+      if (!(o instanceof Node)) return false;
+      final Node n = (Node) o;
+      lock.lock();
+      try
+      {
+        for (int i = 0; i < size; ++i)
+        {
+          final int slot = slots[i];
+          if (arena.chunk(slot).getInt(arena.offset(slot) + NodeArena.DEPTH) != n.depth) continue;
+          if (!n.p.equals(new BigInteger(1, arena.factor(slot, NodeArena.P))) || !n.q.equals(new BigInteger(1, arena.factor(slot, arena.q())))) continue;
+          removeAt(i);
+          return true;
+        }
+        return false;
+      }
+      finally { lock.unlock(); }
+    }
+
+    /// tests a copy of every node under the lock, then rebuilds the heap from those kept
+    @Override public boolean removeIf(Predicate<? super Node> filter)
+    {
+      lock.lock();
+      try
+      {
+        int kept = 0;
+        for (int i = 0; i < size; ++i)
+        {
+          if (filter.test(new Record(slots[i]).node())) arena.free(slots[i]);
+          else { keys[kept] = keys[i]; slots[kept] = slots[i]; ++kept; }
+        }
+        if (kept == size) return false;
+        size = kept;
+        for (int i = (size >>> 1) - 1; i >= 0; --i) siftDown(i, keys[i], slots[i]);
+        return true;
+      }
+      finally { lock.unlock(); }
+    }
+
+    @Override public boolean removeAll(Collection<?> c) { return removeIf(c::contains); }
+    @Override public boolean retainAll(Collection<?> c) { return removeIf(n -> !c.contains(n)); }
+
+    /// a copy of every node, in no particular order; it cannot remove, use {@link #remove(Object)} or {@link #removeIf} instead
+    @Override public Iterator<Node> iterator()
+    {
+      final List<Record> records = new ArrayList<>();
+      lock.lock();
+      try { for (int i = 0; i < size; ++i) records.add(new Record(slots[i])); }
+      finally { lock.unlock(); }
+      final List<Node> nodes = new ArrayList<>(records.size());
+      for (Record r : records) nodes.add(r.node());
+      return Collections.unmodifiableList(nodes).iterator();
+    }
+
+    @Override public void put(Node n) { offer(n); }
+    @Override public boolean offer(Node n, long timeout, TimeUnit unit) { return offer(n); }
+    @Override public int remainingCapacity() { return Integer.MAX_VALUE; }
+    @Override public int drainTo(Collection<? super Node> c) { return drainTo(c, Integer.MAX_VALUE); }
+    @Override public int drainTo(Collection<? super Node> c, int max)
+    {
+      int n = 0;
+      for (Node node; n < max && null != (node = poll()); ++n) c.add(node);
+      return n;
+    }
+
+    /// removes the top of the heap; the caller holds the lock and has checked size
+    private Record dequeue()
+    {
+      final Record n = new Record(slots[0]);
+      removeAt(0);
+      return n;
+    }
+
+    /// frees entry i's record and fills its place from the end of the heap; the caller holds the lock
+    private void removeAt(int i)
+    {
+      arena.free(slots[i]);
+      final long key = keys[--size];
+      final int slot = slots[size];
+      if (i == size) return;
+      siftDown(i, key, slot);
+      if (slots[i] == slot) siftUp(i, key, slot);
+    }
+
+    /// places key at i or above it; the caller holds the lock
+    private void siftUp(int i, long key, int slot)
+    {
+      for (int parent; i > 0 && keys[parent = (i - 1) >>> 1] > key; i = parent) { keys[i] = keys[parent]; slots[i] = slots[parent]; }
+      keys[i] = key; slots[i] = slot;
+    }
+
+    /// places key at i or below it; the caller holds the lock
+    private void siftDown(int i, long key, int slot)
+    {
+      for (int child; (child = (i << 1) + 1) < size; i = child)
+      {
+        if (child + 1 < size && keys[child + 1] < keys[child]) ++child;
+        if (keys[child] >= key) break;
+        keys[i] = keys[child]; slots[i] = slots[child];
+      }
+      keys[i] = key; slots[i] = slot;
+    }
+
+    /**
+     * A record copied out of the arena under the lock; the node (and its factors) is built after unlocking.
+     */
+    private class Record
+    {
+      final int     depth;
+      final boolean pending;
+      final long    key;
+      final double  h;
+      final byte[]  p, q;
+
+      Record(int slot)
+      {
+        final ByteBuffer chunk = arena.chunk(slot);
+        final int at = arena.offset(slot);
+        depth = chunk.getInt(at + NodeArena.DEPTH);
+        pending = 0 != chunk.getInt(at + NodeArena.FLAGS);
+        key = chunk.getLong(at + NodeArena.KEY);
+        h = chunk.getDouble(at + NodeArena.H);
+        p = arena.factor(slot, NodeArena.P);
+        q = arena.factor(slot, arena.q());
+      }
+
+      Node node()
+      {
+        final Node n = new Node(cacheBase, depth, new BigInteger(1, p), new BigInteger(1, q));
+        n.pending = pending;
+        n.key = key;
+        n.h = h;
+        return n;
+      }
+    }
+  }
+
+  /**
+   * A sub-frontier and the settings that order it. A plain search has just one (open).
+   * Adaptive arms share every node and differ only in heuristic; portfolio arms are independent searches.
+   */
+  private class Arm implements Serializable
+  {
+    private static final long serialVersionUID = 1L;
+
+    final int                           index;
+    final String                        name;
+    final Heuristic[]                   heuristics;
+    final Priority                      priority;
+    final boolean                       weighted;
+    final int                           share; ///< portfolio cpu share
+    final BlockingQueue<Node>           open;
+    final ConcurrentHashMap<Node, Node> closed;
+    final LongAdder                     expanded = new LongAdder();
+    final AtomicLong                    gained   = new AtomicLong(0); ///< depth levels this arm added to the deepest expansion
+    final AtomicInteger                 active   = new AtomicInteger(0); ///< workers currently expanding this arm (portfolio)
+    volatile double                     weight; ///< lowered over time when anytime
+    volatile boolean                    exhausted = false; ///< portfolio member has nothing left to expand
+    long                                pass = 0; ///< stride scheduling position, guarded by cacheStride
+
+    Arm(int index, String name, Heuristic[] heuristics, Priority priority, boolean weighted, double weight, int share, BlockingQueue<Node> open, ConcurrentHashMap<Node, Node> closed)
+    {
+      this.index = index;
+      this.name = name;
+      this.heuristics = heuristics;
+      this.priority = priority;
+      this.weighted = weighted;
+      this.weight = weight;
+      this.share = Math.max(1, share);
+      this.open = open;
+      this.closed = closed;
+    }
+
+    /**
+     * Averages this arm's heuristic functions.
+     * @param n the node to evaluate
+     * @param memo optional values already computed for n, indexed by heuristic ordinal (NaN = not yet)
+     * @return an estimate of this node's distance to goal, where 0 = goal
+     */
+    double h(Node n, double[] memo)
+    {
+      double sum = 0;
+      for (Heuristic heuristic : heuristics)
+      {
+        if (null == memo) { sum += heuristic.apply(Solver.this, n); continue; }
+        final int i = heuristic.ordinal();
+        if (Double.isNaN(memo[i])) memo[i] = heuristic.apply(Solver.this, n);
+        sum += memo[i];
+      }
+      return heuristics.length > 0 ? sum / (double) heuristics.length : sum;
+    }
+
+    long key(int depth, double h, long tie) { return priority.key(weighted ? depth + weight * h : h, tie); }
+
+    @Override public String toString()
+    {
+      if (null != cacheBandit) return name + ":" + expanded + ":expanded:" + gained + ":gained:" + cacheBandit.share(index) + ":share";
+
+      long total = 0, shares = 0; for (Arm a : cacheArms) { total += a.expanded.sum(); shares += a.share; }
+      return name + ":" + expanded + ":expanded:" + open.size() + ":open:" +
+          String.format("%.0f%%", 100.0 * share / shares) + ":share:" +
+          String.format("%.0f%%", 0 < total ? 100.0 * expanded.sum() / total : 0.0) + ":actual" +
+          (exhausted ? ":exhausted" : "");
+    }
+  }
+
+  /**
+   * Stride scheduling over portfolio members: the live member w/the smallest pass runs next,
+   * and each pick advances its pass inversely to its share, so cpu time follows the shares.
+   */
+  private static class Stride implements Serializable
+  {
+    private static final long serialVersionUID = 1L;
+
+    synchronized Arm select(Arm[] arms)
+    {
+      Arm next = null;
+      for (Arm arm : arms) if (!arm.exhausted && (null == next || arm.pass < next.pass)) next = arm;
+      if (null != next) next.pass += strideScale / next.share;
+      return next;
+    }
+  }
+
+  /**
+   * One sub-search of a portfolio.
+   */
+  public static class Member implements Serializable
+  {
+    private static final long serialVersionUID = 1L;
+
+    final Heuristic[] heuristics;
+    final Priority    priority;
+    final boolean     weighted;
+    final double      weight;
+    final int         share;
+
+    /**
+     * @param share relative cpu share among the portfolio members
+     * @param priority tie-breaking policy
+     * @param weighted if true, f = depth + weight * h, otherwise f = h
+     * @param weight weight on h when weighted
+     * @param heuristics heuristics averaged to order this member's open list
+     */
+    public Member(int share, Priority priority, boolean weighted, double weight, Heuristic... heuristics)
+    {
+      if (share < 1) throw new NullPointerException("invalid share: " + share);
+      this.share = share;
+      this.priority = null != priority ? priority : Priority.NONE;
+      this.weighted = weighted;
+      this.weight = weight;
+      this.heuristics = null != heuristics ? heuristics.clone() : new Heuristic[0];
+    }
+    public Member(int share, Priority priority, Heuristic... heuristics) { this(share, priority, false, 1.0, heuristics); }
+    public Member(Heuristic... heuristics) { this(1, Priority.NONE, heuristics); }
+
+    @Override public String toString()
+    {
+      return (heuristics.length > 0 ? Stream.of(heuristics).map(Enum::name).reduce((h1, h2) -> h1 + "+" + h2).orElse("") : "NONE") +
+          "/" + priority.name() + (weighted ? "/w=" + weight : "");
+    }
+  }
+
+  /**
+   * Discounted UCB1 over the arms. A batch that reaches a new deepest level earns 1; otherwise the reward
+   * halves for each level its average expansion trails the deepest, so arms that keep working near the
+   * front still score. Rewards are discounted each round so the allocation can move as the leading heuristic changes.
+   */
+  private static class Bandit implements Serializable
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] rewards, pulls;
+    private int deepest = 0;
+
+    Bandit(int arms)
+    {
+      this.rewards = new double[arms];
+      this.pulls = new double[arms];
+    }
+
+    synchronized int deepest() { return deepest; }
+
+    synchronized int select()
+    {
+      double total = 0; for (double p : pulls) total += p;
+      int best = 0; double bestScore = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < pulls.length; ++i)
+      {
+        if (pulls[i] < 1e-9) return i; // try every arm at least once
+        final double score = rewards[i] / pulls[i] + banditExploration * Math.sqrt(Math.log(Math.max(1.0, total)) / pulls[i]);
+        if (score > bestScore) { best = i; bestScore = score; }
+      }
+      return best;
+    }
+
+    /**
+     * @param arm the arm that expanded the batch
+     * @param depth the deepest expansion in the batch
+     * @param mean the batch's average expansion depth
+     */
+    synchronized void reward(int arm, int depth, double mean)
+    {
+      final double reward = depth > deepest ? 1.0 : Math.pow(0.5, Math.max(0, deepest - mean));
+      if (depth > deepest) deepest = depth;
+      for (int i = 0; i < pulls.length; ++i) { rewards[i] *= banditDiscount; pulls[i] *= banditDiscount; }
+      rewards[arm] += reward; pulls[arm] += 1.0;
+    }
+
+    synchronized String share(int arm)
+    {
+      double total = 0; for (double p : pulls) total += p;
+      return 0 < total ? String.format("%.0f%%", 100.0 * pulls[arm] / total) : "0%";
+    }
   }
 }
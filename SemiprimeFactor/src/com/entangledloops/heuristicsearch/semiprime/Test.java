@@ -1,11 +1,44 @@
 package com.entangledloops.heuristicsearch.semiprime;
 
+import com.entangledloops.heuristicsearch.semiprime.client.Client;
+import com.entangledloops.heuristicsearch.semiprime.server.Coordinator;
+import com.entangledloops.heuristicsearch.semiprime.server.Server;
+import com.entangledloops.heuristicsearch.semiprime.server.Session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
 import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * @author Stephen Dunn
@@ -25,6 +58,36 @@ public class Test
     Key(BigInteger p, BigInteger q, BigInteger s) { this.p = p; this.q = q; this.s = s; }
   }
 
+  /// a test's log file; whatever Log still has queued is written before it closes
+  private static class LogWriter extends PrintWriter
+  {
+    LogWriter(String file) throws java.io.FileNotFoundException { super(file); }
+    @Override public void close() { Log.flush(); super.close(); }
+  }
+
+  /// a harness body; it gets its log file and says whether the behavior under test held
+  private interface Check { boolean run(PrintWriter log) throws Throwable; }
+
+  /**
+   * Runs a harness w/everything logged meanwhile going to its own log file.
+   * @param name log file name, w/o the common prefix and extension
+   * @param check the harness body
+   * @return the body's result, or false if it threw
+   */
+  private static boolean run(String name, Check check)
+  {
+    try (final PrintWriter log = new LogWriter(prefix + name + ".log"))
+    {
+      Log.init(s -> { log.write(s); log.flush(); });
+      return check.run(log);
+    }
+    catch (Throwable t)
+    {
+      System.err.println( t.getMessage() ); t.printStackTrace();
+      return false;
+    }
+  }
+
   /**
    * Generates a p,q,s set for a provided s len.
    * @param len Length of the target semiprime product.
@@ -58,7 +121,7 @@ public class Test
    */
   public static boolean heuristics(int minLen, int maxLen, int repeat, Heuristic... heuristics)
   {
-    try (final PrintWriter log = new PrintWriter(prefix + "heuristics.min-" + minLen + ".max-" + maxLen + ".repeat-" + repeat + ".log");
+    try (final PrintWriter log = new LogWriter(prefix + "heuristics.min-" + minLen + ".max-" + maxLen + ".repeat-" + repeat + ".log");
          final PrintWriter csv = new PrintWriter(prefix + "heuristics.min-" + minLen + ".max-" + maxLen + ".repeat-" + repeat + ".csv"))
       {
         // init
@@ -136,7 +199,7 @@ public class Test
    */
   public static boolean semiprimes(int len, int repeat)
   {
-    try (final PrintWriter log = new PrintWriter(Test.prefix + "semiprimes.len-" + len + ".repeat-" + repeat + ".log");
+    try (final PrintWriter log = new LogWriter(Test.prefix + "semiprimes.len-" + len + ".repeat-" + repeat + ".log");
          final PrintWriter csv = new PrintWriter(Test.prefix + "semiprimes.len-" + len + ".repeat-" + repeat + ".csv"))
     {
       Log.init(log::write);
@@ -225,10 +288,1990 @@ public class Test
     }
   }
 
-  public static void main(String[] args)
+  /// what a search mode cost over several targets, for comparing it against a baseline
+  private static class Cost
   {
-    try { new File(testDir).mkdir(); } catch (Throwable ignored) {}
-    if (!semiprimes(4096, 100)) System.exit(1);
-    //if (!heuristics(20, 30, 10, Heuristic.values())) System.exit(2);
+    final String name;
+    int  searches = 0, factored = 0;
+    long evaluated = 0, expanded = 0, peak = 0, nanos = 0;
+    Cost(String name) { this.name = name; }
+
+    @Override public String toString()
+    {
+      final int n = Math.max(1, searches);
+      return String.format("%-30s factored %d/%d, %9d evaluated, %9d expanded, %8d peak open, %9.2f ms", name, factored, searches,
+          evaluated / n, expanded / n, peak / n, nanos / 1e6 / n);
+    }
+
+    /// relative change of this cost's averages against the baseline's, e.g. "-40% evaluated"
+    String versus(Cost base)
+    {
+      return String.format("%-30s %+.0f%% evaluated, %+.0f%% expanded, %+.0f%% peak open, %+.0f%% time", name,
+          change(evaluated, base.evaluated), change(expanded, base.expanded), change(peak, base.peak), change(nanos, base.nanos));
+    }
+
+    private static double change(long value, long base) { return 0 != base ? 100.0 * (value - base) / base : 0; }
+  }
+
+  /**
+   * Searches a target w/the current settings and adds what it cost. The open list is sampled every
+   * millisecond while the search runs, so the peak of a very short search is its final size.
+   *
+   * @param key the target
+   * @param cost totals to add to
+   * @return true if the search found the target's own primes
+   */
+  private static boolean measure(Key key, Cost cost) throws InterruptedException
+  {
+    final AtomicReference<Packet.Factors> found = new AtomicReference<>(null);
+    Solver.callback(n -> found.set(null != n ? new Packet.Factors(0, n.p, n.q) : null));
+
+    final Solver solver = new Solver(key.s);
+    final LongAccumulator peak = new LongAccumulator(Long::max, 0);
+    final Thread sampler = new Thread(() -> { while (!Thread.interrupted()) { peak.accumulate(solver.openSize()); try { Thread.sleep(1); } catch (InterruptedException e) { return; } } });
+    sampler.setDaemon(true);
+    sampler.start();
+    solver.start().join();
+    sampler.interrupt(); sampler.join();
+    peak.accumulate(solver.openSize());
+
+    final Packet.Factors f = found.get();
+    final boolean factored = null != f && (key.p.equals(f.p) && key.q.equals(f.q) || key.p.equals(f.q) && key.q.equals(f.p));
+    ++cost.searches;
+    if (factored) ++cost.factored;
+    cost.evaluated += solver.evaluated();
+    cost.expanded += solver.expanded();
+    cost.peak += peak.get();
+    cost.nanos += solver.elapsed();
+    solver.cleanup();
+    Solver.release();
+    return factored;
+  }
+
+  /**
+   * Runs a few unmeasured searches w/the current settings, so the jit has compiled the hot path before anything is timed.
+   * @param len length of the throwaway targets
+   */
+  private static void warmup(int len) throws InterruptedException
+  {
+    final Cost ignored = new Cost("warmup");
+    for (int i = 0; i < 3; ++i) measure(key(len), ignored);
+  }
+
+  /**
+   * Compares lazy heuristic evaluation against evaluating every child on generation. Both factor the same
+   * targets w/the same heuristics on one worker, and the log gives average evaluations, expansions, peak
+   * open size and time of each, and how lazy differs from eager.
+   *
+   * @param len length of the target semiprimes
+   * @param targets number of targets
+   * @param heuristics heuristics both modes search w/
+   * @return true if both modes found the same primes for every target
+   */
+  public static boolean lazy(int len, int targets, Heuristic... heuristics)
+  {
+    return run("lazy.len-" + len + ".targets-" + targets, log ->
+    {
+      Solver.processors(1);
+      Solver.heuristics(heuristics);
+      try
+      {
+        return compare(len, targets, new String[] { "eager", "lazy" }, new Runnable[] { () -> Solver.lazyHeuristics(false), () -> Solver.lazyHeuristics(true) });
+      }
+      finally
+      {
+        Solver.lazyHeuristics(false);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Compares adaptive search, where each heuristic orders its own sub-frontier and a bandit shares expansions
+   * between them, against one frontier ordered by the average of the same heuristics. Peak open counts a node
+   * once per sub-frontier holding it, so it also shows what keeping H+1 queues costs.
+   *
+   * @param len length of the target semiprimes
+   * @param targets number of targets
+   * @param heuristics heuristics both modes search w/ (adaptive needs at least 2)
+   * @return true if both modes found the same primes for every target
+   */
+  public static boolean adaptive(int len, int targets, Heuristic... heuristics)
+  {
+    return run("adaptive.len-" + len + ".targets-" + targets, log ->
+    {
+      Solver.processors(1);
+      Solver.heuristics(heuristics);
+      try
+      {
+        return compare(len, targets, new String[] { "combined", "adaptive" }, new Runnable[] { () -> Solver.adaptive(false), () -> Solver.adaptive(true) });
+      }
+      finally
+      {
+        Solver.adaptive(false);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Compares the tie-breaking policies against popping ties in heap order. Every policy factors the same
+   * targets w/the same heuristics on one worker; coarse heuristics such as HAMMING tie most often.
+   *
+   * @param len length of the target semiprimes
+   * @param targets number of targets
+   * @param heuristics heuristics every policy searches w/
+   * @return true if every policy found the same primes for every target
+   */
+  public static boolean priorities(int len, int targets, Heuristic... heuristics)
+  {
+    return run("priorities.len-" + len + ".targets-" + targets, log ->
+    {
+      Solver.processors(1);
+      Solver.heuristics(heuristics);
+      try
+      {
+        final Priority[] policies = Priority.values();
+        final String[] names = new String[policies.length];
+        final Runnable[] configs = new Runnable[policies.length];
+        for (int j = 0; j < policies.length; ++j) { final Priority policy = policies[j]; names[j] = policy.name(); configs[j] = () -> Solver.priority(policy); }
+        return compare(len, targets, names, configs);
+      }
+      finally
+      {
+        Solver.priority(Priority.NONE);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Checks the sort keys against the baseline, which popped nodes in {@link Double#compare} order of f.
+   * f values are drawn from [0, 1), from far beyond any fixed-point range a weighted search could reach, and
+   * in pairs one ulp apart; NONE must pop them in exactly the baseline order, and every other policy must
+   * never pop a larger f before a smaller one (ties within its precision aside) and must break exact ties
+   * the way it says it does.
+   *
+   * @param values number of f values to order
+   * @return true if every policy ordered its keys as expected
+   */
+  public static boolean ordering(int values)
+  {
+    return run("ordering.values-" + values, log ->
+    {
+      final double[] f = new double[values];
+      for (int i = 0; i < values; i += 2)
+      {
+        final double v = 0 == i % 3 ? random.nextDouble() : 0 == i % 5 ? -random.nextDouble() : random.nextDouble() * 1e9;
+        f[i] = v;
+        if (i+1 < values) f[i+1] = Math.nextUp(v);
+      }
+
+      final List<Double> baseline = new ArrayList<>();
+      for (double v : f) baseline.add(v);
+      Collections.sort(baseline, Double::compare);
+
+      boolean ordered = true;
+      for (Priority priority : Priority.values())
+      {
+        final java.util.PriorityQueue<Long> keys = new java.util.PriorityQueue<>();
+        for (int i = 0; i < values; ++i) keys.add(priority.key(f[i], priority.tie(0, i)));
+
+        int misplaced = 0, inversions = 0;
+        double prev = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < values; ++i)
+        {
+          final double popped = priority.f(keys.poll());
+          if (Double.compare(popped, prev) < 0) ++inversions;
+          if (Priority.NONE == priority && Double.compare(popped, baseline.get(i)) != 0) ++misplaced;
+          prev = popped;
+        }
+
+        // exact ties go by policy: fifo pops the first inserted, lifo the last, deepest the deepest
+        final long a = priority.key(1.5, priority.tie(1, 1)), b = priority.key(1.5, priority.tie(2, 2));
+        final boolean ties = Priority.FIFO == priority ? a < b : Priority.LIFO == priority || Priority.DEEPEST == priority ? a > b : true;
+
+        Log.o(String.format("%-8s %d misplaced against baseline, %d inversions, ties %s\n", priority.name(), misplaced, inversions, ties ? "ok" : "wrong"));
+        ordered &= 0 == misplaced && 0 == inversions && ties;
+      }
+      return ordered;
+    });
+  }
+
+  /**
+   * Factors the same targets once per configuration, after warming each one up, and logs every
+   * configuration's averages and how each one differs from the first.
+   *
+   * @param len length of the target semiprimes
+   * @param targets number of targets
+   * @param names a label per configuration
+   * @param configs applies a configuration's solver settings
+   * @return true if every configuration found the same primes for every target
+   */
+  private static boolean compare(int len, int targets, String[] names, Runnable[] configs) throws InterruptedException
+  {
+    final Cost[] costs = new Cost[configs.length];
+    for (int j = 0; j < configs.length; ++j) { costs[j] = new Cost(names[j]); configs[j].run(); warmup(len); }
+    for (int i = 0; i < targets; ++i)
+    {
+      final Key key = key(len);
+      for (int j = 0; j < configs.length; ++j) { configs[j].run(); measure(key, costs[j]); }
+    }
+
+    final StringBuilder result = new StringBuilder();
+    for (Cost cost : costs) result.append(cost).append("\n");
+    for (int j = 1; j < costs.length; ++j) result.append(costs[j].versus(costs[0])).append("\n");
+    Log.o(result.toString());
+
+    boolean factored = true;
+    for (Cost cost : costs) factored &= cost.factored == targets;
+    return factored;
+  }
+
+  /**
+   * Compares anytime search, which starts greedy at anytimeWeight and is tightened toward weight 1 every
+   * period, against weighted search held at weight 1 and against plain greedy search. Time is time to the
+   * factors, since the search stops at the first solution.
+   *
+   * @param len length of the target semiprimes
+   * @param targets number of targets
+   * @param periodMillis time between anytime steps; shorter than a search, or anytime never leaves its start weight
+   * @param heuristics heuristics every configuration searches w/
+   * @return true if every configuration found the same primes for every target
+   */
+  public static boolean anytime(int len, int targets, long periodMillis, Heuristic... heuristics)
+  {
+    return run("anytime.len-" + len + ".targets-" + targets + ".period-" + periodMillis, log ->
+    {
+      Solver.processors(1);
+      Solver.heuristics(heuristics);
+      final long period = Solver.anytimePeriodMillis();
+      try
+      {
+        Solver.weight(1.0);
+        Solver.anytimePeriodMillis(periodMillis);
+        return compare(len, targets,
+            new String[] { "weighted w=1", "greedy", "anytime w=" + Solver.anytimeWeight() + "->1" },
+            new Runnable[] {
+                () -> { Solver.anytime(false); Solver.weighted(true); },
+                () -> { Solver.anytime(false); Solver.weighted(false); },
+                () -> { Solver.anytime(true); Solver.weighted(false); } });
+      }
+      finally
+      {
+        Solver.anytime(false);
+        Solver.weighted(false);
+        Solver.anytimePeriodMillis(period);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Compares a portfolio w/one greedy member per heuristic, sharing closed or not, against each member
+   * searching alone. All run on one worker, so the portfolio splits the same cpu its members get alone;
+   * the log compares every configuration to the shared portfolio.
+   *
+   * @param len length of the target semiprimes
+   * @param targets number of targets
+   * @param heuristics one portfolio member per heuristic (at least 2)
+   * @return true if every configuration found the same primes for every target
+   */
+  public static boolean portfolio(int len, int targets, Heuristic... heuristics)
+  {
+    return run("portfolio.len-" + len + ".targets-" + targets, log ->
+    {
+      Solver.processors(1);
+      try
+      {
+        final Solver.Member[] members = new Solver.Member[heuristics.length];
+        for (int j = 0; j < members.length; ++j) members[j] = new Solver.Member(heuristics[j]);
+
+        final String[] names = new String[members.length + 2];
+        final Runnable[] configs = new Runnable[members.length + 2];
+        names[0] = "portfolio, shared closed"; configs[0] = () -> { Solver.portfolioClosed(true); Solver.portfolio(members); };
+        names[1] = "portfolio, own closed"; configs[1] = () -> { Solver.portfolioClosed(false); Solver.portfolio(members); };
+        for (int j = 0; j < members.length; ++j)
+        {
+          final Solver.Member member = members[j];
+          names[2+j] = member.toString(); configs[2+j] = () -> Solver.portfolio(member);
+        }
+        return compare(len, targets, names, configs);
+      }
+      finally
+      {
+        Solver.portfolio();
+        Solver.portfolioClosed(true);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Compares bytes on the wire and encode+decode throughput of the binary packet framing
+   * against java object serialization, for an UPDATE carrying open/closed node lists and
+   * a SOLUTION_UPDATE carrying p, q, s. Nodes are sent as prefixes of a real key's factors.
+   * The serialization baseline uses Packet.Factors, since Solver.Node drags its solver along.
+   *
+   * @param len length of the target semiprime
+   * @param nodes number of nodes in each of the open and closed lists
+   * @param repeat number of packets to time per format
+   * @return true if both formats round-trip and the binary framing is the smaller of the two for every packet
+   */
+  public static boolean protocol(int len, int nodes, int repeat)
+  {
+    return run("protocol.len-" + len + ".nodes-" + nodes + ".repeat-" + repeat, log ->
+    {
+
+      final Key key = key(len);
+      final List<Packet.Factors> open = new ArrayList<>(nodes), closed = new ArrayList<>(nodes);
+      for (int i = 0; i < nodes; ++i)
+      {
+        final int depth = random.nextInt(len/2);
+        final BigInteger mask = BigInteger.ONE.shiftLeft(depth+1).subtract(BigInteger.ONE);
+        (0 == (i & 1) ? open : closed).add(new Packet.Factors(depth, key.p.and(mask), key.q.and(mask)));
+      }
+      while (open.size() < nodes) open.add(closed.get(open.size() % closed.size()));
+      while (closed.size() < nodes) closed.add(open.get(closed.size() % open.size()));
+
+      final Packet[] packets = { new Packet(Packet.Type.UPDATE, open, closed), new Packet(Packet.Type.SOLUTION_UPDATE, key.p, key.q, key.s) };
+      boolean smaller = true;
+      for (Packet packet : packets)
+      {
+        // binary framing, one reusable buffer
+        ByteBuffer buf = ByteBuffer.allocate(1024);
+        long binaryBytes = 0, start = System.nanoTime();
+        for (int i = 0; i < repeat; ++i)
+        {
+          buf.clear();
+          buf = packet.encode(buf);
+          binaryBytes += buf.limit();
+          buf.position(Packet.HEADER_BYTES);
+          if (Packet.decode(buf).size() != packet.size()) throw new NullPointerException("binary round trip failed");
+        }
+        final double binaryRate = repeat / ((System.nanoTime() - start) / 1e9);
+
+        // object serialization, one long-lived stream reset per packet like a live connection would need
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        final byte[] header = streamHeader();
+        long objectBytes = 0; start = System.nanoTime();
+        for (int i = 0; i < repeat; ++i)
+        {
+          bytes.reset(); out.reset();
+          out.writeObject(packet); out.flush();
+          objectBytes += bytes.size();
+          try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(concat(header, bytes.toByteArray()))))
+          {
+            if (((Packet) in.readObject()).size() != packet.size()) throw new NullPointerException("object round trip failed");
+          }
+        }
+        final double objectRate = repeat / ((System.nanoTime() - start) / 1e9);
+
+        Log.o(packet.type().name() + ":\n" +
+            "\tbinary: " + (binaryBytes / repeat) + " bytes, " + String.format("%.0f", binaryRate) + " packets/s\n" +
+            "\tobject: " + (objectBytes / repeat) + " bytes, " + String.format("%.0f", objectRate) + " packets/s\n" +
+            "\tratio:  " + String.format("%.2f", objectBytes / (double) binaryBytes) + "x smaller, " + String.format("%.2f", binaryRate / objectRate) + "x faster\n");
+        smaller &= binaryBytes < objectBytes;
+      }
+
+      return smaller;
+    });
+  }
+
+  /// the header a fresh ObjectOutputStream writes, so a single packet can be read back on its own
+  private static byte[] streamHeader() throws java.io.IOException
+  {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new ObjectOutputStream(bytes).flush();
+    return bytes.toByteArray();
+  }
+
+  private static byte[] concat(byte[] a, byte[] b)
+  {
+    final byte[] c = new byte[a.length + b.length];
+    System.arraycopy(a, 0, c, 0, a.length);
+    System.arraycopy(b, 0, c, a.length, b.length);
+    return c;
+  }
+
+  /**
+   * Opens many simulated volunteer connections to a local server and measures how it holds up.
+   * Every round, each connection sends a small UPDATE and waits for its UPDATE_ACK; the log
+   * reports round-trip percentiles, heap use after gc, and live threads per round.
+   *
+   * @param connections number of simultaneous loopback connections
+   * @param rounds number of update rounds
+   * @param nodes nodes per update
+   * @param virtualThreads if true the server runs a blocking session per (virtual) thread, otherwise selectors
+   * @return true if every update was acknowledged
+   */
+  public static boolean connections(int connections, int rounds, int nodes) { return connections(connections, rounds, nodes, false); }
+  public static boolean connections(int connections, int rounds, int nodes, boolean virtualThreads)
+  {
+    return run("connections.count-" + connections + ".rounds-" + rounds + ".nodes-" + nodes + (virtualThreads ? ".virtual" : ".nio"), log ->
+    {
+
+      final Server server = new Server(0, null, virtualThreads);
+      final SocketChannel[] channels = new SocketChannel[connections];
+      try
+      {
+        final Key key = key(64);
+        final List<Packet.Factors> update = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; ++i) update.add(new Packet.Factors(i, key.p.and(BigInteger.ONE.shiftLeft(i+1).subtract(BigInteger.ONE)), key.q.and(BigInteger.ONE.shiftLeft(i+1).subtract(BigInteger.ONE))));
+
+        ByteBuffer buf = ByteBuffer.allocate(1024);
+        for (int i = 0; i < connections; ++i)
+        {
+          channels[i] = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()));
+          buf.clear(); buf = new Packet(Packet.Type.USERNAME_UPDATE, "load-" + i).encode(buf);
+          while (buf.hasRemaining()) channels[i].write(buf);
+        }
+        Log.o(connections + " connections open, " + server.sessions() + " sessions on server\n");
+
+        final long[] sent = new long[connections], rtt = new long[connections];
+        for (int round = 0; round < rounds; ++round)
+        {
+          for (int i = 0; i < connections; ++i)
+          {
+            buf.clear(); buf = new Packet(Packet.Type.UPDATE, (long) (round * connections + i), key.s, update, update).encode(buf);
+            sent[i] = System.nanoTime();
+            while (buf.hasRemaining()) channels[i].write(buf);
+          }
+          for (int i = 0; i < connections; ++i)
+          {
+            final Packet ack = frame(channels[i], buf);
+            rtt[i] = System.nanoTime() - sent[i];
+            if (null == ack || Packet.Type.UPDATE_ACK != ack.type() || (long) (round * connections + i) != ack.data(0, Long.class)) throw new NullPointerException("bad ack on connection " + i + ": " + ack);
+          }
+
+          Arrays.sort(rtt);
+          System.gc();
+          final Runtime runtime = Runtime.getRuntime();
+          Log.o("round " + (1+round) + ": " +
+              "rtt p50 " + String.format("%.2f", rtt[rtt.length/2] / 1e6) + " ms, " +
+              "p99 " + String.format("%.2f", rtt[Math.min(rtt.length-1, (int) (rtt.length * 0.99))] / 1e6) + " ms, " +
+              "heap " + ((runtime.totalMemory() - runtime.freeMemory()) >> 20) + " MB, " +
+              "threads " + ManagementFactory.getThreadMXBean().getThreadCount() + "\n");
+        }
+        return true;
+      }
+      finally
+      {
+        for (SocketChannel c : channels) if (null != c) try { c.close(); } catch (Throwable ignored) {}
+        server.close();
+      }
+    });
+  }
+
+  /**
+   * Spreads a closed set across several in-process clients through a local server, then checks
+   * membership from a separate connection. The log reports how evenly the fingerprints were
+   * sharded and how long the batched lookups took to stream back.
+   *
+   * @param clients number of clients holding shards
+   * @param fingerprints number of expanded fingerprints to store
+   * @param batch fingerprints per CLOSED_UPDATE / CLOSED_CHECK packet
+   * @return true if every stored fingerprint was found and no other was
+   */
+  public static boolean sharding(int clients, int fingerprints, int batch)
+  {
+    return run("sharding.clients-" + clients + ".fingerprints-" + fingerprints + ".batch-" + batch, log ->
+    {
+
+      final Server server = new Server(0, null);
+      final List<Client> shards = new ArrayList<>();
+      SocketChannel checker = null;
+      try
+      {
+        final BigInteger target = key(64).s;
+        final long[] stored = new long[fingerprints], missing = new long[fingerprints];
+        for (int i = 0; i < fingerprints; ++i) { stored[i] = random.nextLong(); missing[i] = random.nextLong(); }
+
+        // every client joins the ring before anything is stored, so no entry is orphaned by a later join
+        for (int i = 0; i < clients; ++i) shards.add(new Client("127.0.0.1", server.port(), null));
+        for (Client c : shards) c.write(Packet.Type.CLOSED_UPDATE, 0L, target, new long[0]);
+        while (server.shards() < clients) Thread.sleep(10);
+
+        for (int i = 0; i < fingerprints; i += batch) shards.get((i / batch) % clients).write(Packet.Type.CLOSED_UPDATE, 0L, target, Arrays.copyOfRange(stored, i, Math.min(fingerprints, i + batch)));
+        int held = 0, min = Integer.MAX_VALUE, max = 0;
+        for (final long deadline = System.nanoTime() + 30_000_000_000L; held < fingerprints && System.nanoTime() < deadline; Thread.sleep(10))
+        {
+          held = 0; min = Integer.MAX_VALUE; max = 0;
+          for (Client c : shards) { final int size = c.shard(target); held += size; min = Math.min(min, size); max = Math.max(max, size); }
+        }
+        Log.o(held + " of " + fingerprints + " fingerprints stored across " + clients + " shards, min " + min + ", max " + max + "\n");
+        if (held != fingerprints) throw new NullPointerException("fingerprints were lost in routing");
+
+        // look up the stored fingerprints mixed w/as many that were never stored
+        final SocketChannel c = checker = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()));
+        final Thread watchdog = new Thread(() -> { try { Thread.sleep(30000); c.close(); } catch (Throwable ignored) {} });
+        watchdog.setDaemon(true); watchdog.start();
+
+        ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+        final long start = System.nanoTime();
+        for (int i = 0; i < fingerprints; i += batch)
+        {
+          final int end = Math.min(fingerprints, i + batch);
+          final long[] check = new long[(end - i) << 1];
+          for (int j = i; j < end; ++j) { check[(j - i) << 1] = stored[j]; check[((j - i) << 1) + 1] = missing[j]; }
+          buf.clear(); buf = new Packet(Packet.Type.CLOSED_CHECK, 0L, target, check).encode(buf);
+          while (buf.hasRemaining()) c.write(buf);
+        }
+
+        final Set<Long> expected = new HashSet<>();
+        for (long f : stored) expected.add(f);
+        int found = 0;
+        while (found < fingerprints)
+        {
+          final Packet p = frame(c, buf);
+          if (null == p || Packet.Type.CLOSED_FOUND != p.type()) throw new NullPointerException("bad answer: " + p);
+          for (long f : p.asLongs(2)) { if (!expected.remove(f)) throw new NullPointerException("unexpected fingerprint found: " + f); ++found; }
+        }
+        Log.o(fingerprints * 2 + " fingerprints checked in " + String.format("%.2f", (System.nanoTime() - start) / 1e6) + " ms\n");
+        return true;
+      }
+      finally
+      {
+        if (null != checker) try { checker.close(); } catch (Throwable ignored) {}
+        for (Client c : shards) c.close();
+        server.close();
+      }
+    });
+  }
+
+  /**
+   * Merges updates for many distinct nodes into a server's view of one target: all are generated, then half
+   * of them expanded, and every batch is delivered twice the way a reconnect may. The view only samples
+   * nodes, so past {@link Server.View#MAX_SAMPLE} its counts are estimates; they must stay close.
+   *
+   * @param nodes number of distinct nodes
+   * @return true if the open and closed counts are within 5% of the truth
+   */
+  public static boolean view(int nodes)
+  {
+    return run("view.nodes-" + nodes, log ->
+    {
+      final Server server = new Server(0, null);
+      try
+      {
+        final BigInteger target = key(64).s;
+        final List<Packet.Factors> all = new ArrayList<>(nodes), none = new ArrayList<>();
+        for (int i = 0; i < nodes; ++i) all.add(new Packet.Factors(1 + i % 63, new BigInteger(64, random), new BigInteger(64, random)));
+
+        long seq = 0;
+        for (int pass = 0; pass < 2; ++pass) for (int i = 0; i < nodes; i += 1000)
+        {
+          final List<Packet.Factors> batch = all.subList(i, Math.min(nodes, i + 1000));
+          for (int copy = 0; copy < 2; ++copy) server.update(0 == pass ? new Packet(Packet.Type.UPDATE, seq++, target, batch, none) : new Packet(Packet.Type.UPDATE, seq++, target, none, 0 == (i / 1000) % 2 ? batch : none));
+        }
+
+        final Server.View view = server.view(target);
+        final long expanded = (nodes / 2000) * 1000L + Math.min(1000, Math.max(0, nodes % 2000)), open = nodes - expanded;
+        Log.o(view + ", truth " + open + " open, " + expanded + " closed\n");
+        return Math.abs(view.open() - open) <= 0.05 * open && Math.abs(view.closed() - expanded) <= 0.05 * expanded;
+      }
+      finally { server.close(); }
+    });
+  }
+
+  /**
+   * Pushes UPDATE packets through a client's uplink to a local server as fast as the uplink accepts them.
+   * The log compares the time callers spent in write() (queueing only) w/the time until the server
+   * had received everything, along w/how many frames were coalesced per flush and the bytes saved by compression.
+   *
+   * @param packets number of updates to send
+   * @param nodes nodes per update
+   * @param compress if true, large frames are deflated
+   * @return true if the server received every update
+   */
+  public static boolean uplink(int packets, int nodes, boolean compress)
+  {
+    return run("uplink.packets-" + packets + ".nodes-" + nodes + (compress ? ".deflate" : ""), log ->
+    {
+
+      final AtomicLong received = new AtomicLong(0);
+      final Server server = new Server(0, p -> { if (null != p && Packet.Type.UPDATE == p.type()) received.incrementAndGet(); });
+      Client client = null;
+      try
+      {
+        Client.compress(compress);
+        client = new Client("127.0.0.1", server.port(), p -> {});
+
+        final Key key = key(256);
+        final List<Packet.Factors> update = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; ++i) update.add(new Packet.Factors(i % 256, key.p.and(BigInteger.ONE.shiftLeft(i % 256 + 1).subtract(BigInteger.ONE)), key.q.and(BigInteger.ONE.shiftLeft(i % 256 + 1).subtract(BigInteger.ONE))));
+
+        long writing = 0, retries = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < packets; ++i)
+        {
+          final Packet p = new Packet(Packet.Type.UPDATE, (long) i, key.s, update, update);
+          while (true)
+          {
+            final long before = System.nanoTime();
+            final boolean queued = client.write(p);
+            writing += System.nanoTime() - before;
+            if (queued) break;
+            ++retries; Thread.sleep(1);
+          }
+        }
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (received.get() < packets && System.nanoTime() < deadline) Thread.sleep(1);
+        final long elapsed = System.nanoTime() - start;
+
+        Log.o(received.get() + " of " + packets + " updates received in " + String.format("%.2f", elapsed / 1e6) + " ms, " +
+            String.format("%.2f", writing / 1e6) + " ms spent in write(), " + retries + " retries while the uplink was full\n" + client.uplinkToString() + "\n");
+        return received.get() == packets;
+      }
+      finally
+      {
+        Client.compress(true);
+        if (null != client) client.close();
+        server.close();
+      }
+    });
+  }
+
+  /// packet mix of a simulated volunteer, in parts per 100: mostly updates, some lease round trips, a few reported solutions
+  private static final Packet.Type[] loadMix = { Packet.Type.UPDATE, Packet.Type.OPEN_UPDATE, Packet.Type.SOLUTION_UPDATE };
+  private static final int[]         loadParts = { 80, 15, 5 };
+
+  /**
+   * Load-tests the networking stack over loopback. A local server hosts a target too large to finish while
+   * simulated volunteers (threads in this jvm, or one forked jvm each) send the usual mix of updates, lease
+   * results and solutions back to back, each waiting for its reply before sending the next. Solutions get no reply,
+   * so only their count is kept. Every second the log gives the packets/s the server handled, heap after gc and live threads;
+   * at the end, the round-trip p50/p99 per packet type.
+   *
+   * @param clients number of simulated volunteers
+   * @param seconds how long to send for
+   * @param nodes nodes per update
+   * @param fork if true, each volunteer runs in its own jvm, so heap and threads are the server's alone
+   * @return true if every volunteer ran to the end
+   */
+  public static boolean load(int clients, int seconds, int nodes, boolean fork)
+  {
+    return run("load.clients-" + clients + ".seconds-" + seconds + ".nodes-" + nodes + (fork ? ".fork" : ".threads"), log ->
+    {
+      final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+      final AtomicLong handled = new AtomicLong(0);
+      final Server server = new Server(0, p -> { if (null != p) handled.incrementAndGet(); });
+      final List<Process> volunteers = new ArrayList<>();
+      final List<Thread> threads = new ArrayList<>();
+      Thread host = null;
+      try
+      {
+        final BigInteger target = key(1024).s;
+        host = new Thread(() -> server.coordinate(target));
+        host.start();
+        while (null == server.coordinator(target)) Thread.sleep(10);
+
+        final List<List<long[]>> results = new ArrayList<>();
+        final long start = System.nanoTime(), deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        for (int i = 0; i < clients; ++i)
+        {
+          if (fork)
+          {
+            volunteers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Test.class.getName(), "load", "127.0.0.1", "" + server.port(), "" + seconds, "" + nodes, "" + i)
+                .redirectError(new File(prefix + "load.client-" + i + ".log")).start());
+            continue;
+          }
+          final int client = i;
+          final List<long[]> result = new ArrayList<>();
+          results.add(result);
+          final Thread t = new Thread(() -> { try { result.addAll(simulate("127.0.0.1", server.port(), deadline, nodes, new Random(seed + client))); } catch (Throwable e) { Log.e("load client " + client + " failed", e); } }, "load client " + i);
+          threads.add(t); t.start();
+        }
+
+        final Coordinator coordinator = server.coordinator(target);
+        long before = handled.get();
+        final long leased = coordinator.leased();
+        while (System.nanoTime() < deadline)
+        {
+          Thread.sleep(1000);
+          System.gc();
+          final long now = handled.get();
+          final Runtime runtime = Runtime.getRuntime();
+          Log.o(String.format("%.0f", (System.nanoTime() - start) / 1e9) + " s: " +
+              (now - before) + " packets/s handled, " +
+              server.sessions() + " sessions, " +
+              "heap " + ((runtime.totalMemory() - runtime.freeMemory()) >> 20) + " MB, " +
+              "threads " + ManagementFactory.getThreadMXBean().getThreadCount() + "\n");
+          before = now;
+        }
+
+        for (Thread t : threads) t.join();
+        for (Process p : volunteers)
+        {
+          final List<long[]> result = new ArrayList<>();
+          try (final java.io.BufferedReader in = new java.io.BufferedReader(new java.io.InputStreamReader(p.getInputStream())))
+          {
+            for (String line = in.readLine(); null != line; line = in.readLine())
+            {
+              final String[] samples = line.trim().isEmpty() ? new String[0] : line.trim().split(" ");
+              final long[] rtt = new long[samples.length];
+              for (int j = 0; j < rtt.length; ++j) rtt[j] = Long.parseLong(samples[j]);
+              result.add(rtt);
+            }
+          }
+          p.waitFor();
+          results.add(result);
+        }
+        final double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long total = 0;
+        final StringBuilder summary = new StringBuilder();
+        for (int type = 0; type < loadMix.length; ++type)
+        {
+          int count = 0;
+          for (List<long[]> result : results) if (result.size() == loadMix.length) count += result.get(type).length;
+          final long[] rtt = new long[count];
+          count = 0;
+          for (List<long[]> result : results) if (result.size() == loadMix.length) { System.arraycopy(result.get(type), 0, rtt, count, result.get(type).length); count += result.get(type).length; }
+          Arrays.sort(rtt);
+          total += rtt.length;
+
+          summary.append("\t").append(loadMix[type].name()).append(": ").append(rtt.length).append(" sent");
+          if (Packet.Type.SOLUTION_UPDATE != loadMix[type] && rtt.length > 0)
+          {
+            summary.append(", rtt p50 ").append(String.format("%.2f", rtt[rtt.length/2] / 1e6)).append(" ms")
+                .append(", p99 ").append(String.format("%.2f", rtt[Math.min(rtt.length-1, (int) (rtt.length * 0.99))] / 1e6)).append(" ms");
+          }
+          summary.append("\n");
+        }
+        Log.o(clients + (fork ? " forked" : " in-process") + " clients, " + total + " packets in " + String.format("%.2f", elapsed) + " s = " +
+            String.format("%.0f", total / elapsed) + " packets/s, " + (coordinator.leased() - leased) + " leases issued\n" + summary);
+
+        int finished = 0;
+        for (List<long[]> result : results) if (result.size() == loadMix.length) ++finished;
+        return finished == clients;
+      }
+      finally
+      {
+        for (Process p : volunteers) p.destroyForcibly();
+        if (!server.exiting()) server.close();
+        if (null != host) host.join();
+      }
+    });
+  }
+
+  /**
+   * One simulated volunteer: takes a lease, then sends the load mix back to back until the deadline.
+   * @return round-trip times in nanos per type of the load mix (solutions: 0 each, they get no reply)
+   */
+  private static List<long[]> simulate(String host, int port, long deadline, int nodes, Random random) throws java.io.IOException
+  {
+    final long[][] rtt = new long[loadMix.length][1024];
+    final int[] counts = new int[loadMix.length];
+
+    try (final SocketChannel c = SocketChannel.open(new InetSocketAddress(host, port)))
+    {
+      c.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true); // else a request sent right after a solution waits on the server's delayed ack
+      final BigInteger p = BigInteger.probablePrime(64, random), q = BigInteger.probablePrime(64, random), s = p.multiply(q);
+      final List<Packet.Factors> update = new ArrayList<>(nodes);
+      for (int i = 0; i < nodes; ++i)
+      {
+        final BigInteger mask = BigInteger.ONE.shiftLeft(i % 64 + 1).subtract(BigInteger.ONE);
+        update.add(new Packet.Factors(i % 64, p.and(mask), q.and(mask)));
+      }
+
+      ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+      buf.clear(); buf = new Packet(Packet.Type.USERNAME_UPDATE, "load").encode(buf);
+      while (buf.hasRemaining()) c.write(buf);
+      buf.clear(); buf = new Packet(Packet.Type.OPEN_CHECK).encode(buf);
+      while (buf.hasRemaining()) c.write(buf);
+      Packet lease = reply(c, buf, Packet.Type.OPEN_UPDATE);
+
+      for (long seq = 0; System.nanoTime() < deadline; ++seq)
+      {
+        int type = 0, roll = random.nextInt(100);
+        while (roll >= loadParts[type]) roll -= loadParts[type++];
+
+        final Packet packet;
+        switch (loadMix[type])
+        {
+          case UPDATE: packet = new Packet(Packet.Type.UPDATE, seq, s, update, update); break;
+          case OPEN_UPDATE: packet = new Packet(Packet.Type.OPEN_UPDATE, lease.data(0, Long.class), 0L, lease.asCollection(3)); break; // hand the roots back unexpanded
+          default: packet = new Packet(Packet.Type.SOLUTION_UPDATE, s, 63, p.min(q), p.max(q)); break;
+        }
+
+        buf.clear(); buf = packet.encode(buf);
+        final long sent = System.nanoTime();
+        while (buf.hasRemaining()) c.write(buf);
+        if (Packet.Type.UPDATE == packet.type()) { final Packet ack = reply(c, buf, Packet.Type.UPDATE_ACK); if (seq != ack.data(0, Long.class)) throw new NullPointerException("ack out of order: " + ack); }
+        else if (Packet.Type.OPEN_UPDATE == packet.type()) lease = reply(c, buf, Packet.Type.OPEN_UPDATE);
+        final long elapsed = Packet.Type.SOLUTION_UPDATE != packet.type() ? System.nanoTime() - sent : 0;
+
+        if (counts[type] == rtt[type].length) rtt[type] = Arrays.copyOf(rtt[type], rtt[type].length << 1);
+        rtt[type][counts[type]++] = elapsed;
+      }
+    }
+
+    final List<long[]> result = new ArrayList<>(loadMix.length);
+    for (int i = 0; i < loadMix.length; ++i) result.add(Arrays.copyOf(rtt[i], counts[i]));
+    return result;
+  }
+
+  /// blocking read of the next frame of a type, skipping anything broadcast in between (e.g. other clients' solutions)
+  private static Packet reply(SocketChannel c, ByteBuffer buf, Packet.Type type) throws java.io.IOException
+  {
+    for (Packet p = frame(c, buf); ; p = frame(c, buf))
+    {
+      if (null == p) throw new java.io.EOFException("server closed the connection");
+      if (type == p.type()) return p;
+    }
+  }
+
+  /// blocking read of one whole frame
+  private static Packet frame(SocketChannel c, ByteBuffer buf) throws java.io.IOException
+  {
+    buf.clear(); buf.limit(Packet.HEADER_BYTES);
+    while (buf.hasRemaining()) if (c.read(buf) < 0) return null;
+    final int len = buf.getInt(0);
+    if (len > buf.capacity()) throw new NullPointerException("frame too large for test buffer: " + len);
+    buf.clear(); buf.limit(len);
+    while (buf.hasRemaining()) if (c.read(buf) < 0) return null;
+    buf.flip();
+    return Packet.decode(buf);
+  }
+
+  /**
+   * Measures how leased search scales w/the number of volunteer processes. For each client count
+   * (1, 2, 4, ... maxClients) a local server hosts a target too large to finish, that many
+   * volunteer jvms connect over loopback, and the expansions the coordinator collects in the
+   * time window are logged as expansions/sec next to the ideal linear speedup.
+   *
+   * @param len length of the target semiprime
+   * @param maxClients largest number of volunteer processes
+   * @param seconds measurement window per client count
+   * @return true if the volunteers expanded nodes at every client count
+   */
+  public static boolean leasing(int len, int maxClients, int seconds)
+  {
+    return run("leasing.len-" + len + ".clients-" + maxClients + ".seconds-" + seconds, log ->
+    {
+      final Key key = key(len);
+      final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+      double base = 0;
+      boolean working = true;
+      for (int clients = 1; clients <= maxClients; clients <<= 1)
+      {
+        final Server server = new Server(0, null);
+        final List<Process> volunteers = new ArrayList<>();
+        try
+        {
+          final Thread host = new Thread(() -> server.coordinate(key.s));
+          host.start();
+          while (null == server.coordinator(key.s)) Thread.sleep(10);
+
+          for (int i = 0; i < clients; ++i)
+          {
+            volunteers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Test.class.getName(), "volunteer", "127.0.0.1", "" + server.port())
+                .redirectErrorStream(true).redirectOutput(new File(prefix + "leasing.volunteer-" + i + ".log")).start());
+          }
+
+          // let every volunteer connect and take its first lease before measuring
+          final Coordinator coordinator = server.coordinator(key.s);
+          while (server.sessions() < clients) Thread.sleep(10);
+          Thread.sleep(1000);
+          final long before = coordinator.expanded(), start = System.nanoTime();
+          Thread.sleep(seconds * 1000L);
+          final double rate = (coordinator.expanded() - before) / ((System.nanoTime() - start) / 1e9);
+          if (1 == clients) base = rate;
+          working &= rate > 0;
+
+          Log.o(clients + " clients: " + String.format("%.0f", rate) + " expansions/s, " +
+              String.format("%.2f", base > 0 ? rate / base : 0) + "x (ideal " + clients + "x), " + coordinator + "\n");
+          server.close();
+          host.join();
+        }
+        finally
+        {
+          for (Process p : volunteers) p.destroyForcibly();
+          if (!server.exiting()) server.close();
+        }
+      }
+      return working;
+    });
+  }
+
+  /**
+   * Hosts several targets at once and checks that volunteers are shared among them by weight.
+   * Target i gets weight 2^(n-1-i), so list the smallest first. The log gives each target's share
+   * of the leases issued next to its share of the weights, and when (if) it was solved.
+   *
+   * @param clients number of volunteer processes
+   * @param seconds measurement window
+   * @param lens lengths of the target semiprimes
+   * @return true if every target was leased to some volunteer, so none starved
+   */
+  public static boolean scheduling(int clients, int seconds, int... lens)
+  {
+    return run("scheduling.clients-" + clients + ".seconds-" + seconds + ".lens-" + Arrays.toString(lens).replaceAll("[\\[\\] ]", ""), log ->
+    {
+      final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+      final Server server = new Server(0, null);
+      final List<Process> volunteers = new ArrayList<>();
+      final List<Thread> hosts = new ArrayList<>();
+      try
+      {
+        final Coordinator[] coordinators = new Coordinator[lens.length];
+        final long[] solvedAt = new long[lens.length];
+        double weights = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < lens.length; ++i)
+        {
+          final int target = i;
+          final double weight = 1 << (lens.length - 1 - i);
+          weights += weight;
+          coordinators[i] = new Coordinator(key(lens[i]).s, Coordinator.DEFAULT_FRONTIER_DEPTH, Coordinator.DEFAULT_LEASE_ROOTS, 1L << 12, Coordinator.DEFAULT_LEASE_MILLIS).share(0, weight);
+          hosts.add(new Thread(() -> { if (null != server.coordinate(coordinators[target])) solvedAt[target] = System.nanoTime(); }));
+        }
+        for (Thread host : hosts) host.start();
+
+        for (int i = 0; i < clients; ++i)
+        {
+          volunteers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Test.class.getName(), "volunteer", "127.0.0.1", "" + server.port())
+              .redirectErrorStream(true).redirectOutput(new File(prefix + "scheduling.volunteer-" + i + ".log")).start());
+        }
+        Thread.sleep(seconds * 1000L);
+
+        long leases = 0;
+        boolean shared = true;
+        for (Coordinator c : coordinators) { leases += c.leased(); shared &= c.leased() > 0; }
+        for (int i = 0; i < lens.length; ++i)
+        {
+          final Coordinator c = coordinators[i];
+          Log.o(lens[i] + " bits: " + c.leased() + " leases (" + String.format("%.2f", leases > 0 ? c.leased() / (double) leases : 0) + " of all, weight share " + String.format("%.2f", c.weight() / weights) + "), " +
+              c.expanded() + " expanded, " + (0 != solvedAt[i] ? "solved in " + String.format("%.2f", (solvedAt[i] - start) / 1e9) + " s" : "unsolved") + "\n");
+        }
+        return shared;
+      }
+      finally
+      {
+        for (Process p : volunteers) p.destroyForcibly();
+        if (!server.exiting()) server.close();
+        for (Thread host : hosts) host.join();
+      }
+    });
+  }
+
+  /**
+   * Compares lease wall times on a mix of fast and slow volunteers w/fixed budgets and w/budgets sized to
+   * each client's advertised and observed speed. Slow volunteers evaluate every heuristic on every node.
+   * Each run logs the coordinator, including the average and longest lease time.
+   *
+   * @param len length of the target semiprime
+   * @param fast number of fast volunteer processes
+   * @param slow number of slow volunteer processes
+   * @param seconds measurement window per run
+   * @return true if leases came back w/expanded nodes under both fixed and sized budgets
+   */
+  public static boolean sizing(int len, int fast, int slow, int seconds)
+  {
+    return run("sizing.len-" + len + ".fast-" + fast + ".slow-" + slow + ".seconds-" + seconds, log ->
+    {
+      final Key key = key(len);
+      final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+      boolean working = true;
+      for (final boolean sized : new boolean[] { false, true })
+      {
+        final Server server = new Server(0, null);
+        final List<Process> volunteers = new ArrayList<>();
+        try
+        {
+          final Coordinator coordinator = new Coordinator(key.s, Coordinator.DEFAULT_FRONTIER_DEPTH, Coordinator.DEFAULT_LEASE_ROOTS, Coordinator.DEFAULT_LEASE_BUDGET, Coordinator.DEFAULT_LEASE_MILLIS, sized ? Coordinator.DEFAULT_LEASE_TARGET_MILLIS : 0);
+          final Thread host = new Thread(() -> server.coordinate(coordinator));
+          host.start();
+          while (null == server.coordinator(key.s)) Thread.sleep(10);
+
+          for (int i = 0; i < fast + slow; ++i)
+          {
+            volunteers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Test.class.getName(), "volunteer", "127.0.0.1", "" + server.port(), i < fast ? "fast" : "slow")
+                .redirectErrorStream(true).redirectOutput(new File(prefix + "sizing.volunteer-" + i + (sized ? ".sized" : ".fixed") + ".log")).start());
+          }
+          Thread.sleep(seconds * 1000L);
+
+          Log.o((sized ? "sized" : "fixed") + " budgets: " + coordinator + "\n");
+          working &= coordinator.expanded() > 0;
+          server.close();
+          host.join();
+        }
+        finally
+        {
+          for (Process p : volunteers) p.destroyForcibly();
+          if (!server.exiting()) server.close();
+        }
+      }
+      return working;
+    });
+  }
+
+  /**
+   * Measures how quickly a cluster stops once the target is solved. Volunteer jvms each take one
+   * lease w/an effectively unlimited budget; then a separate connection reports the real factors.
+   * The latency of each volunteer is from the server's broadcast until its lease comes back,
+   * i.e. until its solver has noticed, interrupted its workers, and finished.
+   *
+   * @param len length of the target semiprime
+   * @param clients number of volunteer processes
+   * @return true if every volunteer stopped within the timeout
+   */
+  public static boolean cancellation(int len, int clients) { return cancellation(len, clients, false, false); }
+
+  /**
+   * As above, optionally w/a stalled peer: a raw connection that connects before the volunteers (so the
+   * broadcast reaches it first) and never reads. It joins the closed-set ring alone and sends itself a
+   * large CLOSED_UPDATE, so the server has megabytes queued for it when the goal is announced. After the
+   * volunteers stopped it floods itself again, past {@link Session#MAX_QUEUED_BYTES}, and must be disconnected.
+   *
+   * @param stalled if true, add the stalled peer
+   * @param virtualThreads if true, the server runs blocking sessions instead of selectors
+   * @return true if every volunteer stopped within the timeout and the stalled peer (if any) was disconnected
+   */
+  public static boolean cancellation(int len, int clients, boolean stalled, boolean virtualThreads)
+  {
+    return run("cancellation.len-" + len + ".clients-" + clients + (stalled ? ".stalled" : "") + (virtualThreads ? ".virtual" : ""), log ->
+    {
+      final Key key = key(len);
+      final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+      final AtomicLong announced = new AtomicLong(0);
+      final Queue<Long> stopped = new ConcurrentLinkedQueue<>();
+      final AtomicInteger floods = new AtomicInteger(0), disconnects = new AtomicInteger(0);
+      final Server server = new Server(0, p ->
+      {
+        if (null == p) { disconnects.incrementAndGet(); return; }
+        if (Packet.Type.CLOSED_UPDATE == p.type()) floods.incrementAndGet();
+        else if (Packet.Type.SOLUTION_UPDATE == p.type()) announced.compareAndSet(0, System.nanoTime());
+        else if (Packet.Type.OPEN_UPDATE == p.type() && 0 != announced.get()) stopped.offer(System.nanoTime());
+      }, virtualThreads);
+
+      final List<Process> volunteers = new ArrayList<>();
+      SocketChannel reporter = null, staller = null;
+      try
+      {
+        final Thread host = new Thread(() -> server.coordinate(new Coordinator(key.s, Coordinator.DEFAULT_FRONTIER_DEPTH, 1, Long.MAX_VALUE, TimeUnit.HOURS.toMillis(1))));
+        host.start();
+        while (null == server.coordinator(key.s)) Thread.sleep(10);
+
+        final long[] fingerprints = new long[1 << 20];
+        for (int i = 0; i < fingerprints.length; ++i) fingerprints[i] = random.nextLong();
+        final ByteBuffer flood = new Packet(Packet.Type.CLOSED_UPDATE, 0L, key.s, fingerprints).encode(ByteBuffer.allocate(1024));
+        if (stalled)
+        {
+          staller = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()));
+          if (1 != stuff(staller, flood, 1)) throw new NullPointerException("stalled peer could not send its flood");
+          final long echoed = System.nanoTime() + TimeUnit.SECONDS.toNanos(5); // a server that blocks on the echo never finishes handling it
+          while (floods.get() < 1 && System.nanoTime() < echoed) Thread.sleep(1);
+        }
+
+        for (int i = 0; i < clients; ++i)
+        {
+          volunteers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Test.class.getName(), "volunteer", "127.0.0.1", "" + server.port())
+              .redirectErrorStream(true).redirectOutput(new File(prefix + "cancellation.volunteer-" + i + ".log")).start());
+        }
+
+        // every volunteer must be deep in its lease before the goal is announced
+        final Coordinator coordinator = server.coordinator(key.s);
+        while (coordinator.leases() < clients) Thread.sleep(10);
+        Thread.sleep(1000);
+
+        reporter = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.port()));
+        ByteBuffer buf = ByteBuffer.allocate(1024);
+        buf = new Packet(Packet.Type.SOLUTION_UPDATE, key.s, Math.max(key.p.bitLength(), key.q.bitLength()) - 1, key.p, key.q).encode(buf);
+        while (buf.hasRemaining()) reporter.write(buf);
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (stopped.size() < clients && System.nanoTime() < deadline) Thread.sleep(1);
+        host.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+
+        final long[] latency = stopped.stream().mapToLong(t -> t - announced.get()).sorted().toArray();
+        Log.o(latency.length + " of " + clients + " volunteers stopped" + (latency.length > 0 ?
+            ", latency p50 " + String.format("%.2f", latency[latency.length/2] / 1e6) + " ms, " +
+            "max " + String.format("%.2f", latency[latency.length-1] / 1e6) + " ms" : "") + ", " + coordinator + "\n");
+
+        // past the cap, the server must give up on the stalled peer; reading then runs into the end of the stream
+        boolean dropped = !stalled;
+        if (stalled)
+        {
+          final int sent = stuff(staller, flood, 4);
+          final long handled = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+          while (floods.get() < 1 + sent && 0 == disconnects.get() && System.nanoTime() < handled) Thread.sleep(1);
+          final ByteBuffer sink = ByteBuffer.allocate(1 << 20);
+          final long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+          staller.configureBlocking(false);
+          try { while (!dropped && System.nanoTime() < until) { sink.clear(); if (staller.read(sink) < 0) dropped = true; else if (0 == sink.position()) Thread.sleep(1); } }
+          catch (java.io.IOException e) { dropped = true; }
+          Log.o("stalled peer: " + sent + " more floods sent, " + (dropped ? "disconnected" : "still connected") + "\n");
+        }
+        return latency.length == clients && dropped;
+      }
+      finally
+      {
+        if (null != reporter) try { reporter.close(); } catch (Throwable ignored) {}
+        if (null != staller) try { staller.close(); } catch (Throwable ignored) {}
+        for (Process p : volunteers) p.destroyForcibly();
+        if (!server.exiting()) server.close();
+      }
+    });
+  }
+
+  /**
+   * Sends a frame several times w/o ever reading, for up to 10 s.
+   * @return how many copies went out before the peer closed the connection or time ran out
+   */
+  private static int stuff(SocketChannel c, ByteBuffer frame, int copies) throws java.io.IOException
+  {
+    c.configureBlocking(false);
+    final long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    int sent = 0;
+    try
+    {
+      for (frame.rewind(); sent < copies && System.nanoTime() < until; )
+      {
+        c.write(frame);
+        if (!frame.hasRemaining()) { ++sent; frame.rewind(); }
+      }
+    }
+    catch (java.io.IOException e) { return sent; }
+    finally { c.configureBlocking(true); }
+    return sent;
+  }
+
+  /**
+   * Measures what periodic checkpoints cost a search and how fast one resumes. The same budgeted search
+   * runs w/o and w/checkpoints; the log compares expansions/s, and gives the time spent writing and the time
+   * workers were held up. The final snapshot is then read back and checked against the frontier the solver
+   * stopped with, and a second solver resumes from it.
+   *
+   * @param len length of the target semiprime
+   * @param expansions budget of each run
+   * @param periodMillis time between checkpoints
+   * @return true if the snapshot holds exactly the unexpanded nodes and the resumed search continues from them
+   */
+  public static boolean checkpoint(int len, int expansions, long periodMillis)
+  {
+    return run("checkpoint.len-" + len + ".expansions-" + expansions + ".period-" + periodMillis, log ->
+    {
+      final File file = new File(prefix + "checkpoint.len-" + len + ".bin");
+      final Key key = key(len);
+
+      Solver.processors(1);
+      Solver.heuristics(Heuristic.HAMMING);
+      Solver.callback(n -> {});
+      Solver.checkpointPeriodMillis(periodMillis);
+      try
+      {
+        // warm up, then w/o, w/, and again w/o checkpoints, so jit and heap drift show up on both sides
+        Solver.budget(expansions / 10);
+        new Solver(key.s).start().join();
+        Solver.release(); // finished solvers keep their open and closed lists
+        Solver.budget(expansions);
+
+        final double[] rates = new double[3];
+        long expanded = 0;
+        if (file.exists() && !file.delete()) throw new NullPointerException("stale checkpoint: " + file);
+        for (int run = 0; run < rates.length; ++run)
+        {
+          Solver.checkpoint(1 == run ? file : null);
+          final Solver solver = new Solver(key.s).start().join();
+          rates[run] = solver.expanded() / (solver.elapsed() / 1e9); // the final checkpoint is written after the search ends
+          Solver.release();
+          if (1 != run) continue;
+
+          expanded = solver.expanded();
+          Log.o("checkpoints: " + solver.checkpoints() + ", " + String.format("%.1f", solver.checkpointNanos() / 1e6 / Math.max(1, solver.checkpoints())) + " ms each, open locked " +
+              String.format("%.1f", solver.checkpointPauseNanos() / 1e3 / Math.max(1, solver.checkpoints())) + " us each\n");
+
+          // the last checkpoint was written after the workers stopped, so it must hold exactly what is left in open
+          final long start = System.nanoTime();
+          final Checkpoint.Snapshot snapshot = Checkpoint.read(file);
+          final double readMillis = (System.nanoTime() - start) / 1e6;
+          final Set<Packet.Factors> frontier = new HashSet<>(solver.frontier(Integer.MAX_VALUE)), saved = new HashSet<>(snapshot.open);
+          Log.o("snapshot: " + snapshot.open.size() + " open, " + snapshot.closed.size() + " closed, " + snapshot.bytes + " bytes (" +
+              String.format("%.1f", snapshot.bytes / (double) Math.max(1, snapshot.open.size() + snapshot.closed.size())) + " bytes/node), read in " + String.format("%.1f", readMillis) + " ms\n");
+          if (!frontier.equals(saved)) throw new NullPointerException("snapshot open (" + saved.size() + ") differs from the solver's frontier (" + frontier.size() + ")");
+        }
+        final double without = (rates[0] + rates[2]) / 2;
+        Log.o("w/o checkpoints: " + String.format("%.0f", without) + " expansions/s (" + String.format("%.0f", rates[0]) + ", " + String.format("%.0f", rates[2]) + ")\n" +
+            "w/checkpoints:   " + String.format("%.0f", rates[1]) + " expansions/s (" + String.format("%.1f%%", 100.0 * (1.0 - rates[1] / without)) + " slower)\n");
+
+        Solver.checkpoint(file);
+        final Solver resumed = new Solver(key.s).start().join();
+        Log.o("resumed: " + resumed.expanded() + " total expansions after a second budget of " + expansions + "\n");
+        return resumed.expanded() > expanded;
+      }
+      finally
+      {
+        Solver.checkpoint(null);
+        Solver.budget(0);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Measures what journaling every expansion costs a search and how much work a crash loses w/it.
+   * The same budgeted search runs w/o and w/the journal (checkpoints only at the start and end), and the
+   * log compares expansions/s. Another journaled run is then "crashed" halfway by copying its checkpoint
+   * and journal while it is still writing them; a solver resumed from the copy must replay exactly the
+   * expansions the copy holds, and have the same frontier as a fresh search that stops after as many.
+   *
+   * @param len length of the target semiprime
+   * @param expansions budget of each run
+   * @param syncMillis time between journal writes
+   * @return true if the copy's frontier is recovered exactly
+   */
+  public static boolean journal(int len, int expansions, long syncMillis)
+  {
+    return run("journal.len-" + len + ".expansions-" + expansions + ".sync-" + syncMillis, log ->
+    {
+      final File file = new File(prefix + "journal.len-" + len + ".bin"), crash = new File(prefix + "journal.len-" + len + ".crash.bin");
+      final Key key = key(len);
+
+      Solver.processors(1); // a single worker expands in the same order every run
+      Solver.heuristics(Heuristic.HAMMING);
+      Solver.callback(n -> {});
+      Solver.checkpointPeriodMillis(Long.MAX_VALUE / 2); // the journal holds everything between the first and last snapshot
+      Solver.journalSyncMillis(syncMillis);
+      try
+      {
+        for (File f : new File[] { file, crash })
+        {
+          if (f.exists() && !f.delete()) throw new NullPointerException("stale checkpoint: " + f);
+          Checkpoint.Journal.compact(f, Long.MAX_VALUE);
+        }
+
+        // warm up, then w/o, w/, and again w/o the journal
+        Solver.budget(expansions / 10);
+        new Solver(key.s).start().join();
+        Solver.release();
+        Solver.budget(expansions);
+
+        final double[] rates = new double[3];
+        for (int run = 0; run < rates.length; ++run)
+        {
+          Solver.checkpoint(1 == run ? file : null);
+          Solver.journal(1 == run);
+          final Solver solver = new Solver(key.s).start().join();
+          rates[run] = solver.expanded() / (solver.elapsed() / 1e9);
+          if (1 == run) Log.o("journal: " + solver.journalSyncs() + " syncs, " + String.format("%.2f", solver.journalNanos() / 1e6 / Math.max(1, solver.journalSyncs())) + " ms each\n");
+          Solver.release();
+        }
+        final double without = (rates[0] + rates[2]) / 2;
+        Log.o("w/o journal: " + String.format("%.0f", without) + " expansions/s (" + String.format("%.0f", rates[0]) + ", " + String.format("%.0f", rates[2]) + ")\n" +
+            "w/journal:   " + String.format("%.0f", rates[1]) + " expansions/s (" + String.format("%.1f%%", 100.0 * (1.0 - rates[1] / without)) + " slower)\n");
+
+        // crash halfway: copy the snapshot and whatever the journal has written so far
+        if (file.exists() && !file.delete()) throw new NullPointerException("stale checkpoint: " + file);
+        Checkpoint.Journal.compact(file, Long.MAX_VALUE);
+        Solver.checkpoint(file);
+        Solver.journal(true);
+        final Solver running = new Solver(key.s).start();
+        while (running.expanded() < expansions / 2) Thread.sleep(1);
+        final long crashed = running.expanded();
+        Files.copy(file.toPath(), crash.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        for (long g : Checkpoint.Journal.segments(file)) Files.copy(Checkpoint.Journal.segment(file, g).toPath(), Checkpoint.Journal.segment(crash, g).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        running.join();
+        Solver.release();
+
+        final Checkpoint.Snapshot snapshot = Checkpoint.read(crash);
+        final long[] journaled = { 0 };
+        Checkpoint.Journal.replay(crash, key.s, snapshot.journal, f -> ++journaled[0]);
+        Log.o("crash: " + crashed + " expanded, " + journaled[0] + " journaled (" + String.format("%.0f", (crashed - journaled[0]) / rates[1] * 1000) + " ms of work lost)\n");
+
+        // a fresh search stopped after as many expansions leaves the frontier the copy should resume w/
+        Solver.checkpoint(null);
+        Solver.journal(false);
+        Solver.budget(journaled[0]);
+        final Solver reference = new Solver(key.s).start().join();
+        final Set<Packet.Factors> expected = new HashSet<>(reference.frontier(Integer.MAX_VALUE));
+        Solver.release();
+
+        // the resumed solver expands one more node, which is the only one it may not still have
+        Solver.checkpoint(crash);
+        Solver.journal(true);
+        Solver.budget(1);
+        final long start = System.nanoTime();
+        final Solver resumed = new Solver(key.s).start().join();
+        final double resumeMillis = (System.nanoTime() - start) / 1e6;
+        final Set<Packet.Factors> recovered = new HashSet<>(resumed.frontier(Integer.MAX_VALUE));
+        expected.removeAll(recovered);
+        Log.o("resumed: " + resumed.expanded() + " expanded, " + recovered.size() + " open in " + String.format("%.0f", resumeMillis) + " ms, " + expected.size() + " of the reference frontier missing\n");
+        return 1 == expected.size() && journaled[0] + 1 == resumed.expanded();
+      }
+      finally
+      {
+        Solver.checkpoint(null);
+        Solver.journal(false);
+        Solver.budget(0);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Measures the solved-target store: each target is searched once, then again; the second search must be
+   * answered from the store. The store is then filled w/more results (growing its index), and lookups of
+   * known and unknown targets are timed. Finally the index is deleted, and must be rebuilt from the log.
+   *
+   * @param len length of the target semiprimes
+   * @param targets number of targets to search twice
+   * @param results number of extra results to store
+   * @param lookups number of timed lookups of each kind
+   * @return true if every repeat search was answered w/the right factors, and every stored result is found
+   */
+  public static boolean results(int len, int targets, int results, int lookups)
+  {
+    return run("results.len-" + len + ".targets-" + targets + ".results-" + results, log ->
+    {
+      final File file = new File(prefix + "results.len-" + len + ".idx"), data = new File(file.getPath() + ".dat");
+      for (File f : new File[] { file, data }) if (f.exists() && !f.delete()) throw new NullPointerException("stale result store: " + f);
+
+      final AtomicReference<Packet.Factors> found = new AtomicReference<>(null);
+      Solver.heuristics(Heuristic.HAMMING);
+      Solver.callback(n -> found.set(null != n ? new Packet.Factors(0, n.p, n.q) : null));
+      Solver.results(file);
+      try
+      {
+        // search every target, then repeat each search
+        final List<Key> keys = new ArrayList<>();
+        for (int i = 0; i < targets; ++i) keys.add(key(len));
+        final long[] nanos = new long[2];
+        for (int pass = 0; pass < nanos.length; ++pass)
+        {
+          for (Key key : keys)
+          {
+            found.set(null);
+            final Solver solver = new Solver(key.s);
+            final long start = System.nanoTime();
+            solver.start().join();
+            nanos[pass] += System.nanoTime() - start;
+            final Packet.Factors f = found.get();
+            if (null == f || !key.s.equals(f.p.multiply(f.q))) throw new NullPointerException("no factors for " + key.s + " on pass " + pass);
+            if (1 == pass && 0 != solver.expanded()) throw new NullPointerException("repeat search of " + key.s + " expanded " + solver.expanded() + " nodes");
+          }
+          Solver.release();
+        }
+        Log.o("searched: " + String.format("%.2f", nanos[0] / 1e6 / targets) + " ms per target, then " + String.format("%.1f", nanos[1] / 1e3 / targets) + " us per repeat (start to join)\n");
+
+        // more results than the first index holds, so it is rebuilt larger at least once
+        final Results store = Results.open(file);
+        final List<BigInteger> known = new ArrayList<>();
+        for (Key key : keys) known.add(key.s);
+        final long putStart = System.nanoTime();
+        for (int i = 0; i < results; ++i)
+        {
+          final BigInteger p = BigInteger.probablePrime(len / 2, random), q = BigInteger.probablePrime(len / 2, random), s = p.multiply(q);
+          if (store.put(s, 0, 0, new Packet.Factors(len / 2 - 1, p, q))) known.add(s);
+        }
+        Log.o("stored: " + store.size() + " results (" + String.format("%.1f", (System.nanoTime() - putStart) / 1e3 / Math.max(1, results)) + " us per put incl. primes), " + data.length() + " + " + file.length() + " bytes\n");
+
+        // time hits and misses
+        for (int warm = 0; warm < 2; ++warm)
+        {
+          long hits = 0, hitNanos = 0, missNanos = 0;
+          for (int i = 0; i < lookups; ++i)
+          {
+            final BigInteger s = known.get(random.nextInt(known.size()));
+            long start = System.nanoTime();
+            final Packet.Factors f = store.get(s, 0, 0);
+            hitNanos += System.nanoTime() - start;
+            if (null != f && s.equals(f.p.multiply(f.q))) ++hits;
+
+            final BigInteger unknown = s.add(BigInteger.ONE);
+            start = System.nanoTime();
+            if (null != store.get(unknown, 0, 0)) throw new NullPointerException("found unknown target " + unknown);
+            missNanos += System.nanoTime() - start;
+          }
+          if (hits != lookups) throw new NullPointerException((lookups - hits) + " stored results not found");
+          if (1 == warm) Log.o("lookups: " + String.format("%.2f", hitNanos / 1e3 / lookups) + " us per hit, " + String.format("%.2f", missNanos / 1e3 / lookups) + " us per miss\n");
+        }
+
+        // the index is only a cache of the log; the next miss notices it is gone
+        if (!file.delete()) throw new NullPointerException("could not delete " + file);
+        final long start = System.nanoTime();
+        if (null != store.get(BigInteger.ONE, 0, 0) || !file.exists()) throw new NullPointerException("index not rebuilt");
+        for (BigInteger s : known) if (null == store.get(s, 0, 0)) throw new NullPointerException("lost " + s + " when the index was rebuilt");
+        Log.o("rebuilt: " + store.size() + " results found again in " + String.format("%.1f", (System.nanoTime() - start) / 1e6) + " ms\n");
+        return true;
+      }
+      finally
+      {
+        Solver.results(null);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Measures what keeping open off-heap does to a long search. A small target is first factored w/the arena
+   * to check the search still finds goals. The same budgeted search then runs w/o, w/, and again w/o the
+   * arena; the log compares expansions/s, collections and time spent collecting during each run, and the
+   * heap still in use once it ends.
+   *
+   * @param len length of the target semiprime
+   * @param expansions budget of each run
+   * @return true if the small target was factored w/the arena
+   */
+  public static boolean arena(int len, int expansions)
+  {
+    return run("arena.len-" + len + ".expansions-" + expansions, log ->
+    {
+      final AtomicReference<Packet.Factors> found = new AtomicReference<>(null);
+      Solver.processors(1);
+      Solver.heuristics(Heuristic.HAMMING);
+      Solver.callback(n -> found.set(null != n ? new Packet.Factors(0, n.p, n.q) : null));
+      try
+      {
+        final Key small = key(32);
+        Solver.arena(true);
+        new Solver(small.s).start().join().cleanup();
+        Solver.release();
+        final Packet.Factors f = found.get();
+        if (null == f || !small.s.equals(f.p.multiply(f.q))) throw new NullPointerException("arena search did not factor " + small.s);
+
+        // warm up, then w/o, w/, and again w/o the arena
+        final Key key = key(len);
+        Solver.callback(n -> {});
+        Solver.budget(expansions / 10);
+        new Solver(key.s).start().join().cleanup();
+        Solver.release();
+        Solver.budget(expansions);
+
+        final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int run = 0; run < 3; ++run)
+        {
+          Solver.arena(1 == run);
+          System.gc();
+          long collections = 0, collecting = 0;
+          for (GarbageCollectorMXBean gc : collectors) { collections -= gc.getCollectionCount(); collecting -= gc.getCollectionTime(); }
+
+          final Solver solver = new Solver(key.s).start().join();
+          for (GarbageCollectorMXBean gc : collectors) { collections += gc.getCollectionCount(); collecting += gc.getCollectionTime(); }
+          System.gc();
+          final long heap = memory.getHeapMemoryUsage().getUsed();
+
+          Log.o((1 == run ? "w/arena:   " : "w/o arena: ") + String.format("%.0f", solver.expanded() / (solver.elapsed() / 1e9)) + " expansions/s, " + collections + " collections, " +
+              collecting + " ms collecting, " + (heap >> 20) + " MB heap in use after, " + (solver.arenaBytes() >> 20) + " MB mapped, " + solver.closedSize() + " closed\n");
+          if (1 == run && !removable(solver.open())) throw new IllegalStateException("removing from the arena's open list broke its heap");
+          solver.cleanup();
+          Solver.release();
+        }
+        return true;
+      }
+      finally
+      {
+        Solver.arena(false);
+        Solver.budget(0);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Removes every third node of an open list by equality and then every even-depth node by filter, and checks
+   * exactly those went and the rest still pop in key order.
+   * @param open a finished search's open list; it is emptied
+   * @return true if the removals and the order were right
+   */
+  private static boolean removable(Queue<Solver.Node> open)
+  {
+    final List<Solver.Node> nodes = new ArrayList<>(open);
+    int expected = nodes.size();
+    for (int i = 0; i < nodes.size(); i += 3) { if (!open.remove(nodes.get(i))) return false; --expected; }
+    for (int i = 0; i < nodes.size(); ++i) if (0 != i % 3 && 0 == nodes.get(i).depth() % 2) --expected;
+    open.removeIf(n -> 0 == n.depth() % 2);
+
+    int popped = 0;
+    for (Solver.Node prev = null, n; null != (n = open.poll()); prev = n, ++popped)
+      if (0 == n.depth() % 2 || (null != prev && prev.compareTo(n) > 0)) return false;
+    Log.o("arena open list: " + nodes.size() + " nodes, " + popped + " left after removals, " + expected + " expected\n");
+    return popped == expected;
+  }
+
+  /**
+   * Measures what the per-expansion metrics cost. Several threads first update the same counters the way
+   * expand() used to (shared atomics and a racy max) and the way it does now (striped adders, an accumulated
+   * max and two histograms), and the log compares ns per expansion. A budgeted search then runs w/o and w/stats,
+   * and its depth histogram must account for every expansion.
+   *
+   * @param threads threads updating the counters concurrently
+   * @param updates expansions recorded by each thread
+   * @param len length of the target semiprime
+   * @param expansions budget of each search
+   * @return true if no update was lost and the histogram matches the expansion count
+   */
+  public static boolean metrics(int threads, int updates, int len, int expansions)
+  {
+    return run("metrics.threads-" + threads + ".updates-" + updates + ".len-" + len, log ->
+    {
+
+      final AtomicLong expandedShared = new AtomicLong(), generatedShared = new AtomicLong(), ignoredShared = new AtomicLong(), depthShared = new AtomicLong();
+      final AtomicInteger maxShared = new AtomicInteger();
+      final LongAdder expandedStriped = new LongAdder(), generatedStriped = new LongAdder(), ignoredStriped = new LongAdder(), depthStriped = new LongAdder();
+      final LongAccumulator maxStriped = new LongAccumulator(Math::max, 0);
+      final Histogram depths = new Histogram(64, 0, 1024), hs = new Histogram(64, 0.0, 2.0);
+
+      for (int round = 0; round < 2; ++round) // the first round warms up
+      {
+        final long[] nanos = new long[2];
+        for (int kind = 0; kind < nanos.length; ++kind)
+        {
+          final boolean striped = 1 == kind;
+          final List<Thread> workers = new ArrayList<>();
+          for (int t = 0; t < threads; ++t)
+          {
+            final int seed = t;
+            workers.add(new Thread(() ->
+            {
+              for (int i = 0; i < updates; ++i)
+              {
+                final int depth = (seed * 131 + i) & 1023;
+                if (striped)
+                {
+                  expandedStriped.increment(); generatedStriped.add(2); ignoredStriped.add(2); depthStriped.add(depth);
+                  maxStriped.accumulate(depth); depths.record(depth); hs.record(depth / 512.0);
+                }
+                else
+                {
+                  expandedShared.incrementAndGet(); generatedShared.addAndGet(2); ignoredShared.addAndGet(2); depthShared.addAndGet(depth);
+                  maxShared.set(Math.max(maxShared.get(), depth));
+                }
+              }
+            }));
+          }
+          final long start = System.nanoTime();
+          for (Thread w : workers) w.start();
+          for (Thread w : workers) w.join();
+          nanos[kind] = System.nanoTime() - start;
+        }
+        if (0 == round) continue;
+        Log.o("shared atomics: " + String.format("%.1f", nanos[0] / (double) threads / updates) + " ns per expansion\n" +
+            "striped + histograms: " + String.format("%.1f", nanos[1] / (double) threads / updates) + " ns per expansion\n");
+      }
+      long recorded = 0;
+      for (long c : depths.snapshot()) recorded += c;
+      if (expandedStriped.sum() != 2L * threads * updates || recorded != expandedStriped.sum() || 1023 != maxStriped.get())
+        throw new NullPointerException("lost updates: " + expandedStriped.sum() + " counted, " + recorded + " recorded, max " + maxStriped.get());
+
+      // a search w/o, w/, and again w/o stats
+      final Key key = key(len);
+      Solver.processors(1);
+      Solver.heuristics(Heuristic.HAMMING);
+      Solver.callback(n -> {});
+      Solver.budget(expansions);
+      try
+      {
+        boolean counted = true;
+        for (int run = -1; run < 3; ++run) // run -1 warms up
+        {
+          Solver.stats(1 == run);
+          final long start = System.nanoTime();
+          final Solver solver = new Solver(key.s).start().join();
+          final double seconds = (System.nanoTime() - start) / 1e9;
+          if (run < 0) { Solver.release(); continue; }
+          Log.o((1 == run ? "w/stats:   " : "w/o stats: ") + String.format("%.0f", expansions / seconds) + " expansions/s" + (1 == run ? ", depth " + solver.depths() + ", h " + solver.hs() : "") + "\n");
+          if (1 == run)
+          {
+            long total = 0;
+            for (long c : solver.depths().snapshot()) total += c;
+            counted = total == solver.expanded() && expansions == total;
+          }
+          Solver.release();
+        }
+        return counted;
+      }
+      finally
+      {
+        Solver.stats(true);
+        Solver.budget(0);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Streams a budgeted search's stats as json lines, then as csv, and checks both files: one record per
+   * period (and a last one at the end) w/as many fields as the first, the last counting every expansion.
+   * The log compares expansions/s w/o and w/the stream.
+   *
+   * @param len length of the target semiprime
+   * @param expansions budget of each search
+   * @param periodMillis time between records
+   * @return true if both streams are well formed and complete
+   */
+  public static boolean series(int len, int expansions, long periodMillis)
+  {
+    return run("series.len-" + len + ".expansions-" + expansions + ".period-" + periodMillis, log ->
+    {
+      final Key key = key(len);
+      Solver.processors(1);
+      Solver.heuristics(Heuristic.HAMMING);
+      Solver.callback(n -> {});
+      Solver.budget(expansions);
+      Solver.seriesPeriodMillis(periodMillis);
+      try
+      {
+        new Solver(key.s).start().join(); // warm up
+        Solver.release();
+
+        final double[] rates = new double[3];
+        final File[] files = { null, new File(prefix + "series.len-" + len + ".jsonl"), new File(prefix + "series.len-" + len + ".csv") };
+        for (int run = 0; run < rates.length; ++run)
+        {
+          final PrintWriter out = null != files[run] ? new PrintWriter(files[run]) : null;
+          Solver.series(out);
+          Solver.seriesJson(1 == run);
+          final long start = System.nanoTime();
+          new Solver(key.s).start().join();
+          rates[run] = expansions / ((System.nanoTime() - start) / 1e9);
+          Solver.release();
+          if (null != out) out.close();
+        }
+        Log.o("w/o series: " + String.format("%.0f", rates[0]) + " expansions/s\nw/json:     " + String.format("%.0f", rates[1]) + " expansions/s\nw/csv:      " + String.format("%.0f", rates[2]) + " expansions/s\n");
+
+        final List<String> json = Files.readAllLines(files[1].toPath()), csv = Files.readAllLines(files[2].toPath());
+        Log.o("json: " + json.size() + " records, last: " + json.get(json.size() - 1) + "\ncsv: " + (csv.size() - 1) + " records, " + csv.get(0) + "\n" + csv.get(csv.size() - 1) + "\n");
+        final int fields = json.get(0).split(",").length;
+        for (String line : json) if (!line.startsWith("{\"bits\":") || !line.endsWith("]}") || fields != line.split(",").length) throw new NullPointerException("bad json record: " + line);
+        final int columns = csv.get(0).split(",", -1).length;
+        for (String line : csv) if (columns != line.split(",", -1).length) throw new NullPointerException("bad csv record: " + line);
+        final boolean complete = json.get(json.size() - 1).contains("\"expanded\":" + expansions + ",") && csv.get(csv.size() - 1).split(",")[1].equals(String.valueOf(expansions));
+        return json.size() >= 2 && csv.size() >= 3 && complete;
+      }
+      finally
+      {
+        Solver.series(null);
+        Solver.seriesJson(true);
+        Solver.budget(0);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Records a budgeted search w/the flight recorder, then a burst of packets sent to a local server, and
+   * counts the events of each type in the dump. The log compares expansions/s w/events off, on but not
+   * recorded, and recorded.
+   *
+   * @param len length of the target semiprime
+   * @param expansions budget of each search
+   * @param packets updates sent through a client's uplink
+   * @return true if batches, closed inserts, evaluations and flushes were all recorded (open waits are only kept past 1 ms)
+   */
+  public static boolean flight(int len, int expansions, int packets)
+  {
+    return run("flight.len-" + len + ".expansions-" + expansions + ".packets-" + packets, log ->
+    {
+      if (!Utils.flightRecorder()) { Log.o("no flight recorder in this jvm\n"); return false; }
+
+      final Key key = key(len);
+      Solver.processors(1);
+      Solver.heuristics(Heuristic.HAMMING);
+      Solver.callback(n -> {});
+      Solver.budget(expansions);
+      final File dump = new File(prefix + "flight.len-" + len + ".jfr");
+      final Server server = new Server(0, null);
+      try
+      {
+        new Solver(key.s).start().join(); // warm up
+        Solver.release();
+
+        final double[] rates = new double[3];
+        final Flight.Recording recording = new Flight.Recording();
+        for (int run = 0; run < rates.length; ++run)
+        {
+          Solver.flight(run > 0);
+          if (2 == run) recording.start();
+          final long start = System.nanoTime();
+          new Solver(key.s).start().join();
+          rates[run] = expansions / ((System.nanoTime() - start) / 1e9);
+          Solver.release();
+        }
+
+        final Client client = new Client("127.0.0.1", server.port(), p -> {});
+        try
+        {
+          final List<Packet.Factors> update = Collections.singletonList(new Packet.Factors(1, key.p, key.q));
+          for (int i = 0; i < packets; ++i) while (!client.write(Packet.Type.UPDATE, (long) i, key.s, update, update)) Thread.sleep(1);
+          final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+          while (client.queued() > 0 && System.nanoTime() < deadline) Thread.sleep(1);
+          Thread.sleep(100);
+        }
+        finally { client.close(); }
+
+        recording.stop();
+        recording.dump(dump);
+        recording.close();
+        Log.o("w/o events:        " + String.format("%.0f", rates[0]) + " expansions/s\nevents, no record: " + String.format("%.0f", rates[1]) + " expansions/s\nrecording:         " + String.format("%.0f", rates[2]) + " expansions/s\n");
+
+        final Map<String, Integer> counts = Flight.count(dump);
+        Log.o(dump.length() + " byte recording: " + counts + "\n");
+        final int batches = counts.getOrDefault("semiprime.ExpansionBatch", 0);
+        return batches >= expansions / Solver.flightSample() && counts.containsKey("semiprime.ClosedInsert") && counts.containsKey("semiprime.Evaluation") && counts.containsKey("semiprime.PacketFlush");
+      }
+      finally
+      {
+        Solver.flight(false);
+        Solver.budget(0);
+        Solver.release();
+        server.close();
+      }
+    });
+  }
+
+  /**
+   * Floods the log from several threads at trace level, w/an error every 4096 messages, and checks every
+   * trace was either delivered or counted as dropped and every error was delivered, then times a budgeted search w/every node traced. The log gives the rate callers
+   * could log at, how many messages the ring had to drop, and expansions/s w/o tracing, w/tracing
+   * filtered out by level, and w/tracing kept.
+   *
+   * @param threads logging threads
+   * @param messages messages per thread
+   * @param len length of the target semiprime
+   * @param expansions budget of each search
+   * @return true if no message went missing and no error was dropped
+   */
+  public static boolean logging(int threads, int messages, int len, int expansions)
+  {
+    return run("logging.threads-" + threads + ".messages-" + messages + ".len-" + len, log ->
+    {
+      final Consumer<String> file = s -> { log.write(s); log.flush(); };
+      final LongAdder delivered = new LongAdder(), errors = new LongAdder();
+      Log.init(s -> { if (s.startsWith("trace ")) delivered.increment(); else if (s.startsWith("error ")) errors.increment(); });
+      try
+      {
+        final long droppedBefore = Log.dropped();
+        final List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < threads; ++i)
+        {
+          final int id = i;
+          producers.add(new Thread(() -> { for (int j = 0; j < messages; ++j) { Log.t("trace " + id + " " + j); if (0 == (j & 4095)) Log.e("error " + id + " " + j); } }));
+        }
+        final long start = System.nanoTime();
+        producers.forEach(Thread::start);
+        for (Thread t : producers) t.join();
+        final long elapsed = System.nanoTime() - start;
+        Log.flush();
+        final long sent = (long) threads * messages, dropped = Log.dropped() - droppedBefore, raised = (long) threads * ((messages + 4095) / 4096);
+
+        Log.init(file);
+        Log.o(sent + " messages from " + threads + " threads in " + String.format("%.2f", elapsed / 1e6) + " ms (" + String.format("%.0f", sent / (elapsed / 1e9)) + "/s), " +
+            delivered.sum() + " delivered, " + dropped + " dropped; " + errors.sum() + " of " + raised + " errors delivered\n");
+
+        final Key key = key(len);
+        Solver.processors(1);
+        Solver.heuristics(Heuristic.HAMMING);
+        Solver.callback(n -> {});
+        Solver.budget(expansions);
+        new Solver(key.s).start().join(); // warm up
+        Solver.release();
+
+        final double[] rates = new double[3];
+        for (int run = 0; run < rates.length; ++run)
+        {
+          Solver.printAllNodes(run > 0);
+          Log.level(1 == run ? Log.Level.INFO : Log.Level.TRACE);
+          Log.init(s -> {});
+          final long before = System.nanoTime();
+          new Solver(key.s).start().join();
+          rates[run] = expansions / ((System.nanoTime() - before) / 1e9);
+          Solver.release();
+        }
+        final long traceDropped = Log.dropped() - droppedBefore - dropped;
+        Log.flush();
+        Log.init(file);
+        Log.o("w/o tracing:       " + String.format("%.0f", rates[0]) + " expansions/s\ntracing filtered:  " + String.format("%.0f", rates[1]) + " expansions/s\ntracing kept:      " + String.format("%.0f", rates[2]) + " expansions/s (" + traceDropped + " messages dropped)\n");
+        return delivered.sum() + dropped == sent && errors.sum() == raised;
+      }
+      finally
+      {
+        Log.level(Log.Level.TRACE);
+        Solver.printAllNodes(false);
+        Solver.budget(0);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Traces a budgeted search, 1 in sample nodes plus every node in a depth range, then reads the dump back
+   * and formats it as the offline tool would. The log compares expansions/s w/o and w/tracing, and gives
+   * the dump's size and summary line.
+   *
+   * @param len length of the target semiprime
+   * @param expansions budget of each search
+   * @param sample 1 in this many nodes is traced
+   * @param minDepth first depth traced in full
+   * @param maxDepth last depth traced in full
+   * @return true if every depth in the range was traced and the dump reads back whole
+   */
+  public static boolean tracing(int len, int expansions, int sample, int minDepth, int maxDepth)
+  {
+    return run("tracing.len-" + len + ".expansions-" + expansions + ".sample-" + sample, log ->
+    {
+      final Key key = key(len);
+      Solver.processors(1);
+      Solver.heuristics(Heuristic.HAMMING);
+      Solver.callback(n -> {});
+      Solver.budget(expansions);
+      final File dump = new File(prefix + "tracing.len-" + len + ".trace"), text = new File(prefix + "tracing.len-" + len + ".txt");
+      try
+      {
+        new Solver(key.s).start().join(); // warm up
+        Solver.release();
+
+        final double[] rates = new double[2];
+        for (int run = 0; run < rates.length; ++run)
+        {
+          Solver.trace(1 == run ? dump : null);
+          Solver.traceSample(sample);
+          Solver.traceDepths(minDepth, maxDepth);
+          final long start = System.nanoTime();
+          new Solver(key.s).start().join();
+          rates[run] = expansions / ((System.nanoTime() - start) / 1e9);
+          Solver.release();
+        }
+        Log.o("w/o tracing: " + String.format("%.0f", rates[0]) + " expansions/s\nw/tracing:   " + String.format("%.0f", rates[1]) + " expansions/s\n");
+
+        final List<Trace.Record> records = Trace.read(dump);
+        final Set<Integer> depths = new HashSet<>();
+        for (Trace.Record r : records) if (Trace.EXPANDED == r.event && r.depth >= minDepth && r.depth <= maxDepth) depths.add(r.depth);
+        try (final PrintWriter out = new PrintWriter(text)) { Trace.format(dump, out); }
+        Log.o(dump.length() + " byte dump, " + records.size() + " records, " + text.length() + " bytes formatted\n" + Files.readAllLines(text.toPath()).get(0) + "\n");
+        return depths.size() == maxDepth - minDepth + 1 && dump.length() >= (long) records.size() * Trace.RECORD_BYTES;
+      }
+      finally
+      {
+        Solver.trace(null);
+        Solver.traceDepths(0, -1);
+        Solver.budget(0);
+        Solver.release();
+      }
+    });
+  }
+
+  /**
+   * Hosts a small target w/leases too short to finish a subtree, so every lease hands back a frontier,
+   * and checks the coordinator still finds the factors: a lease that dropped part of its frontier could
+   * make it report the search space exhausted instead.
+   *
+   * @param len length of the target semiprime
+   * @param budget expansions per lease
+   * @param clients forked volunteers
+   * @return true if the coordinator returned the target's factors
+   */
+  public static boolean coverage(int len, long budget, int clients)
+  {
+    return run("coverage.len-" + len + ".budget-" + budget + ".clients-" + clients, log ->
+    {
+      final Key key = key(len);
+      final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+      final Server server = new Server(0, null);
+      final List<Process> volunteers = new ArrayList<>();
+      try
+      {
+        final AtomicReference<Packet.Factors> solution = new AtomicReference<>();
+        final Coordinator coordinator = new Coordinator(key.s, 2, 1, budget, TimeUnit.MINUTES.toMillis(10));
+        final Thread host = new Thread(() -> solution.set(server.coordinate(coordinator)));
+        host.start();
+        while (null == server.coordinator(key.s)) Thread.sleep(10);
+
+        for (int i = 0; i < clients; ++i)
+        {
+          volunteers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Test.class.getName(), "volunteer", "127.0.0.1", "" + server.port())
+              .redirectErrorStream(true).redirectOutput(new File(prefix + "coverage.volunteer-" + i + ".log")).start());
+        }
+
+        final long start = System.nanoTime();
+        host.join(TimeUnit.MINUTES.toMillis(10));
+        final Packet.Factors f = solution.get();
+        Log.o((null != f ? "solved " + f.p + " * " + f.q : "not solved") + " in " + String.format("%.2f", (System.nanoTime() - start) / 1e9) + " s, " + coordinator + "\n");
+        return null != f && key.s.equals(f.p.multiply(f.q));
+      }
+      finally
+      {
+        for (Process p : volunteers) p.destroyForcibly();
+        if (!server.exiting()) server.close();
+      }
+    });
+  }
+
+  /**
+   * Connects to a server and works on whatever it leases until killed.
+   */
+  private static void volunteer(String host, int port, boolean slow)
+  {
+    Solver.networkSearch(true);
+    Solver.processors(1);
+    if (slow) Solver.heuristics(Heuristic.values()); // every heuristic is evaluated on every node
+    else Solver.heuristics(Heuristic.HAMMING);
+    Solver.callback(n -> {});
+    new Client(host, port, null);
+  }
+
+  /**
+   * A forked load-test volunteer: runs until the window closes, then prints its round trips on stdout, one line per type of the load mix.
+   */
+  private static void load(String host, int port, int seconds, int nodes, int client)
+  {
+    try
+    {
+      final List<long[]> result = simulate(host, port, System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds), nodes, new Random(seed + client));
+      final StringBuilder out = new StringBuilder();
+      for (long[] rtt : result)
+      {
+        for (long t : rtt) out.append(t).append(' ');
+        out.append('\n');
+      }
+      System.out.print(out); System.out.flush();
+    }
+    catch (Throwable t) { System.err.println( t.getMessage() ); t.printStackTrace(); }
+  }
+
+  public static void main(String[] args)
+  {
+    if (args.length >= 6 && "load".equals(args[0])) { load(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5])); return; }
+    if (args.length >= 3 && "volunteer".equals(args[0])) { volunteer(args[1], Integer.parseInt(args[2]), args.length > 3 && "slow".equals(args[3])); return; }
+    try { new File(testDir).mkdir(); } catch (Throwable ignored) {}
+    if (!semiprimes(4096, 100)) System.exit(1);
+    //if (!heuristics(20, 30, 10, Heuristic.values())) System.exit(2);
+
+    // every harness, sized to finish in a few minutes on one core; the exit code tells which one failed
+    if (!lazy(24, 4, Heuristic.HAMMING)) System.exit(3);
+    if (!adaptive(24, 4, Heuristic.HAMMING, Heuristic.DIST_EXPECTED_SUMMED)) System.exit(4);
+    if (!priorities(24, 4, Heuristic.HAMMING)) System.exit(5);
+    if (!ordering(100000)) System.exit(6);
+    if (!anytime(24, 4, 5, Heuristic.HAMMING)) System.exit(7);
+    if (!portfolio(24, 4, Heuristic.HAMMING, Heuristic.DIST_EXPECTED_SUMMED)) System.exit(8);
+    if (!protocol(256, 1000, 1000)) System.exit(9);
+    if (!connections(64, 5, 16) || !connections(64, 5, 16, true)) System.exit(10);
+    if (!sharding(4, 100000, 1000)) System.exit(11);
+    if (!view(100000)) System.exit(12);
+    if (!uplink(1000, 64, true)) System.exit(13);
+    if (!load(4, 5, 16, false)) System.exit(14);
+    if (!leasing(256, 2, 3)) System.exit(15);
+    if (!scheduling(3, 5, 32, 48, 256)) System.exit(16);
+    if (!sizing(256, 1, 1, 5)) System.exit(17);
+    if (!cancellation(256, 2) || !cancellation(256, 2, true, false) || !cancellation(256, 2, true, true)) System.exit(18);
+    if (!checkpoint(256, 100000, 50)) System.exit(19);
+    if (!journal(256, 100000, 10)) System.exit(20);
+    if (!results(32, 4, 10000, 10000)) System.exit(21);
+    if (!arena(256, 100000)) System.exit(22);
+    if (!metrics(4, 100000, 256, 100000)) System.exit(23);
+    if (!series(256, 100000, 50)) System.exit(24);
+    if (Utils.flightRecorder() && !flight(256, 100000, 1000)) System.exit(25);
+    if (!logging(4, 100000, 256, 20000)) System.exit(26);
+    if (!tracing(256, 100000, 64, 4, 8)) System.exit(27);
+    if (!coverage(32, 64, 2)) System.exit(28);
   }
 }
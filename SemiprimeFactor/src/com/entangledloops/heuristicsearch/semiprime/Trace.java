@@ -0,0 +1,195 @@
+package com.entangledloops.heuristicsearch.semiprime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node tracing cheap enough to leave on for big targets: instead of formatting every node, a sample
+ * of them (1 in n, chosen by the node's hash, so every event of a sampled node is kept) plus every node
+ * inside a chosen depth range is written as a fixed 32-byte record into an off-heap ring. When the
+ * ring is full the oldest records are overwritten. {@link #dump(File)} saves the ring; {@link #main}
+ * formats a saved one offline.
+ *
+ * A record is [long nanos][long fingerprint][double h][int depth][short thread][byte event][byte unused].
+ * Writers only race if they lap the whole ring, in which case a record may be torn.
+ *
+ * @since October 19, 2026
+ */
+public class Trace
+{
+  public static final byte GENERATED  = 0;
+  public static final byte IGNORED    = 1;
+  public static final byte EXPANDED   = 2;
+  public static final byte REINSERTED = 3;
+  private static final String[] EVENTS = { "generated", "ignored", "expanded", "reinserted" };
+
+  public static final int RECORD_BYTES = 32;
+  private static final int MAGIC   = 0x53505452; ///< "SPTR"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES + 2 * Integer.BYTES + Long.BYTES;
+
+  private final ByteBuffer ring;
+  private final int        mask; ///< records - 1
+  private final int        sample;
+  private final int        minDepth, maxDepth;
+  private final int        bits; ///< of the target, for the dump's header
+  private final long       start = System.nanoTime();
+  private final AtomicLong written = new AtomicLong(0);
+
+  /**
+   * @param records ring capacity, rounded up to a power of 2
+   * @param sample 1 in this many nodes is traced (0 traces none outside the depth range)
+   * @param minDepth first depth always traced
+   * @param maxDepth last depth always traced (below minDepth for no range)
+   * @param bits the target's length, kept w/the dump
+   */
+  public Trace(int records, int sample, int minDepth, int maxDepth, int bits)
+  {
+    if (records < 1 || records > 1 << 26) throw new NullPointerException("invalid trace size: " + records);
+    final int capacity = Integer.highestOneBit(records) == records ? records : Integer.highestOneBit(records) << 1;
+    this.ring = ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    this.mask = capacity - 1;
+    this.sample = sample;
+    this.minDepth = minDepth;
+    this.maxDepth = maxDepth;
+    this.bits = bits;
+  }
+
+  public int capacity() { return mask + 1; }
+  public long written() { return written.get(); } ///< includes records since overwritten
+
+  /**
+   * @param depth the node's depth
+   * @param hash the node's hash code
+   * @return true if the node should be traced
+   */
+  public boolean wants(int depth, int hash)
+  {
+    if (depth >= minDepth && depth <= maxDepth) return true;
+    return sample > 0 && 0 == Long.remainderUnsigned(Fingerprints.mix(hash), sample);
+  }
+
+  public void record(byte event, int depth, double h, long fingerprint)
+  {
+    final int at = (int) (written.getAndIncrement() & mask) * RECORD_BYTES;
+    ring.putLong(at, System.nanoTime() - start);
+    ring.putLong(at + 8, fingerprint);
+    ring.putDouble(at + 16, h);
+    ring.putInt(at + 24, depth);
+    ring.putShort(at + 28, (short) Thread.currentThread().getId());
+    ring.put(at + 30, event);
+  }
+
+  /**
+   * Saves the ring, oldest record first. Records written during the dump may or may not be included.
+   */
+  public void dump(File file) throws IOException
+  {
+    final long total = written.get();
+    final int count = (int) Math.min(total, capacity());
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(VERSION).putLong(total).putInt(count).putInt(bits).putLong(start);
+    header.flip();
+
+    try (final FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      while (header.hasRemaining()) out.write(header);
+      final int first = (int) ((total - count) & mask);
+      final ByteBuffer all = ring.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      // the oldest records run from first to the end of the ring, the rest from its start
+      for (ByteBuffer part : new ByteBuffer[] { slice(all, first, Math.min(count, capacity() - first)), slice(all, 0, count - Math.min(count, capacity() - first)) })
+        while (part.hasRemaining()) out.write(part);
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer ring, int record, int records)
+  {
+    final ByteBuffer b = ring.duplicate();
+    b.limit((record + records) * RECORD_BYTES).position(record * RECORD_BYTES);
+    return b;
+  }
+
+  /**
+   * One decoded record.
+   */
+  public static class Record
+  {
+    public final long   nanos; ///< since the trace started
+    public final long   fingerprint;
+    public final double h;
+    public final int    depth;
+    public final int    thread;
+    public final byte   event;
+
+    Record(ByteBuffer b)
+    {
+      nanos = b.getLong(); fingerprint = b.getLong(); h = b.getDouble(); depth = b.getInt();
+      thread = b.getShort() & 0xFFFF; event = b.get(); b.get();
+    }
+
+    public String event() { return event >= 0 && event < EVENTS.length ? EVENTS[event] : "unknown"; }
+
+    @Override public String toString() { return String.format("%.6f\t%s\t%d\t%.6g\t%016x\t%d", nanos / 1e9, event(), depth, h, fingerprint, thread); }
+  }
+
+  /**
+   * @return the records of a dump, oldest first
+   */
+  public static List<Record> read(File file) throws IOException
+  {
+    final ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    if (b.remaining() < HEADER_BYTES || MAGIC != b.getInt()) throw new IOException("not a trace: " + file);
+    final int version = b.getInt();
+    if (VERSION != version) throw new IOException("unsupported trace version: " + version);
+    b.getLong(); final int count = b.getInt(); b.getInt(); b.getLong();
+    if (b.remaining() < (long) count * RECORD_BYTES) throw new IOException("truncated trace: " + file);
+
+    final List<Record> records = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) records.add(new Record(b));
+    return records;
+  }
+
+  /**
+   * Writes a dump as text: a summary line, then one tab-separated line per record.
+   */
+  public static void format(File file, PrintWriter out) throws IOException
+  {
+    final ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file.toPath()), 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    header.getInt(); header.getInt();
+    final long total = header.getLong(); final int count = header.getInt(), bits = header.getInt();
+
+    final List<Record> records = read(file);
+    final long[] events = new long[EVENTS.length];
+    for (Record r : records) if (r.event >= 0 && r.event < EVENTS.length) ++events[r.event];
+    out.print("# " + bits + "-bit target, " + total + " records traced, last " + count + " kept:");
+    for (int i = 0; i < EVENTS.length; ++i) out.print(" " + events[i] + " " + EVENTS[i]);
+    out.println();
+    out.println("seconds\tevent\tdepth\th\tfingerprint\tthread");
+    for (Record r : records) out.println(r);
+    out.flush();
+  }
+
+  /**
+   * Formats saved traces to stdout.
+   * @param args dump files
+   */
+  public static void main(String[] args)
+  {
+    if (0 == args.length) { System.err.println("usage: Trace <dump>..."); System.exit(1); }
+    final PrintWriter out = new PrintWriter(System.out);
+    for (String arg : args)
+    {
+      try { format(new File(arg), out); }
+      catch (IOException e) { System.err.println(arg + ": " + e.getMessage()); }
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.entangledloops.heuristicsearch.semiprime;
 
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.concurrent.locks.Lock;
 
@@ -10,6 +11,45 @@ import java.util.concurrent.locks.Lock;
  */
 public class Utils
 {
+  private static final Method ofVirtual = method("java.lang.Thread", "ofVirtual");
+  private static final Method name      = method("java.lang.Thread$Builder", "name", String.class);
+  private static final Method unstarted = method("java.lang.Thread$Builder", "unstarted", Runnable.class);
+  private static final Method isAvailable = method("jdk.jfr.FlightRecorder", "isAvailable");
+
+  /// looked up reflectively so the same source still builds for java 8
+  private static Method method(String klass, String method, Class<?>... params)
+  {
+    try { return Class.forName(klass).getMethod(method, params); }
+    catch (Throwable t) { return null; }
+  }
+
+  /**
+   * @return true if this jvm supports virtual threads (java 21+)
+   */
+  public static boolean virtualThreads() { return null != ofVirtual && null != name && null != unstarted; }
+
+  /**
+   * @return true if this jvm has a flight recorder that can be used (java 8u262+ or 11+, not disabled)
+   */
+  public static boolean flightRecorder()
+  {
+    try { return null != isAvailable && (Boolean) isAvailable.invoke(null); }
+    catch (Throwable t) { return false; }
+  }
+
+  /**
+   * Creates an unstarted thread, virtual if requested and supported, otherwise a platform thread.
+   */
+  public static Thread thread(Runnable task, String threadName, boolean virtual)
+  {
+    if (virtual && virtualThreads())
+    {
+      try { return (Thread) unstarted.invoke(name.invoke(ofVirtual.invoke(null), threadName), task); }
+      catch (Throwable t) { Log.e("virtual thread creation failed", t); }
+    }
+    return new Thread(task, threadName);
+  }
+
   public static boolean lockAndRun(Lock lock, Runnable task)
   {
     if (null == lock || null == task) return false;
@@ -1,17 +1,34 @@
 package com.entangledloops.heuristicsearch.semiprime.client;
 
+import com.entangledloops.heuristicsearch.semiprime.Fingerprints;
+import com.entangledloops.heuristicsearch.semiprime.Flight;
 import com.entangledloops.heuristicsearch.semiprime.Log;
 import com.entangledloops.heuristicsearch.semiprime.Packet;
 import com.entangledloops.heuristicsearch.semiprime.Solver;
+import com.entangledloops.heuristicsearch.semiprime.Utils;
 import com.entangledloops.heuristicsearch.semiprime.server.Server;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.zip.Deflater;
 
 import static com.entangledloops.heuristicsearch.semiprime.Log.o;
 
@@ -24,19 +41,47 @@ public class Client
   // client backend
   private final AtomicReference<Socket> socket       = new AtomicReference<>();
   private final AtomicReference<Thread> clientThread = new AtomicReference<>();
+  private final AtomicReference<Thread> writerThread = new AtomicReference<>();
 
   // i/o
-  private final AtomicReference<ObjectInputStream>  in  = new AtomicReference<>();
-  private final AtomicReference<ObjectOutputStream> out = new AtomicReference<>();
+  private static final int BUFFER_BYTES = 64 << 10; ///< initial frame buffer size, grows as needed
+  private final AtomicReference<DataInputStream>  in  = new AtomicReference<>();
+  private final AtomicReference<DataOutputStream> out = new AtomicReference<>();
+  private ByteBuffer inBuffer  = ByteBuffer.allocate(BUFFER_BYTES); ///< reused for every received frame (client thread only)
+  private ByteBuffer outBuffer = ByteBuffer.allocate(BUFFER_BYTES); ///< reused for every flush (writer thread only)
   private final Consumer<Packet> callback; ///< called every received packet
 
+  // uplink: any thread queues packets, the writer thread coalesces them into as few flushes as possible
+  private static final int UPLINK_CAPACITY    = 1024; ///< queued packets beyond this are refused, the caller retries later
+  private static final int UPLINK_FLUSH_BYTES = 64 << 10; ///< stop coalescing once a flush holds this much
+  private static final int COMPRESS_BYTES     = 1 << 10; ///< smaller frames are never deflated
+  private static final AtomicBoolean compress = new AtomicBoolean(true); ///< if true, large frames are deflated
+  private final BlockingQueue<Packet> uplink   = new LinkedBlockingQueue<>(UPLINK_CAPACITY);
+  private final Deflater              deflater = new Deflater(Deflater.BEST_SPEED); ///< writer thread only
+  private final AtomicLong            frames   = new AtomicLong(0);
+  private final AtomicLong            flushes  = new AtomicLong(0);
+  private final AtomicLong            refused  = new AtomicLong(0); ///< packets not queued because the uplink was full
+  private final AtomicLong            rawBytes = new AtomicLong(0); ///< encoded size of everything sent
+  private final AtomicLong            sentBytes = new AtomicLong(0); ///< after compression
+  private final boolean               flight    = Solver.flight() && Utils.flightRecorder(); ///< if set, reads and flushes emit flight recorder events
+
   // client info
   private final AtomicReference<String> username = new AtomicReference<>();
   private final AtomicReference<String> email    = new AtomicReference<>();
   private final AtomicReference<String> ip       = new AtomicReference<>();
   private final AtomicReference<String> hostname = new AtomicReference<>();
 
+  // leased work, run one at a time off the reader thread
+  private static final int  FRONTIER_BATCH        = 4096; ///< unexpanded nodes handed back per packet; a lease's whole frontier goes back
+  private static final long IDLE_RETRY_MILLIS     = 5000L; ///< wait before asking again when the server has no work
+  private static final long BENCHMARK_EXPANSIONS  = 1L << 13; ///< budget of the search timed to advertise this machine's speed
+  private final ExecutorService leaseWorker = Executors.newSingleThreadExecutor();
+
+  // this machine's share of the distributed closed set, per target
+  private final ConcurrentHashMap<BigInteger, Fingerprints> shards = new ConcurrentHashMap<>();
+
   // state
+  private static final AtomicBoolean virtualThreads = new AtomicBoolean(false); ///< if true (and on java 21+), new connections read on a virtual thread
   private final AtomicBoolean connected = new AtomicBoolean(false);
   private final boolean inbound;
   private final int port;
@@ -118,8 +163,13 @@ public class Client
     if (!connected.compareAndSet(true, false)) return;
 
     o("closing " + (outbound() ? "outbound" : "inbound") + " connection: " + toString());
+    o(uplinkToString());
+    leaseWorker.shutdownNow();
     try { socket().close(); } catch (Throwable t) { Log.e(t); }
 
+    final Thread writer = writerThread.getAndSet(null);
+    if (null != writer && Thread.currentThread() != writer) writer.interrupt();
+
     final Thread thread = clientThread.getAndSet(null);
     if (null != thread && Thread.currentThread() != thread)
     {
@@ -129,15 +179,64 @@ public class Client
     else if (null != callback) callback.accept(null);
   }
 
-  private String readln() { return read(String.class); }
-  public Packet read() { return read(Packet.class); }
-  private <T> T read(Class<T> klass) { try { return klass.cast(in().readObject()); } catch (Throwable t) { return null; } }
+  /**
+   * Blocks until the next frame arrives.
+   * @return the decoded packet, or null if the connection failed or the frame was corrupt
+   */
+  public Packet read()
+  {
+    try
+    {
+      final int prefix = in().readInt(), len = Packet.length(prefix);
+      final Flight.PacketReceived event = flight ? Flight.received() : null; // idle time waiting for the prefix is not counted
+      if (len > Packet.MAX_FRAME_BYTES) { Log.e(toString() + ": invalid frame length: " + len); return null; }
+      if (len > inBuffer.capacity()) inBuffer = ByteBuffer.allocate(Math.max(len, inBuffer.capacity() << 1));
+
+      in().readFully(inBuffer.array(), 0, len);
+      inBuffer.clear(); inBuffer.limit(len);
+      final Packet packet = Packet.decode(inBuffer, Packet.compressed(prefix));
+      if (null != event) event.done(packet, len, Packet.compressed(prefix));
+      return packet;
+    }
+    catch (IllegalArgumentException e) { Log.e(toString() + ": " + e.getMessage()); return null; }
+    catch (Throwable t) { return null; }
+  }
 
   public boolean write(Packet.Type type, Object... data) { return write(new Packet(type, data)); }
-  private boolean write(Object obj) { try { out().writeObject(obj); return true; } catch (Throwable t) { return false; } }
+  /**
+   * Queues a packet for the writer thread, so callers never block on the network.
+   * @return false if disconnected or the uplink is full (the caller should retry later)
+   */
+  public boolean write(Packet packet)
+  {
+    if (null == packet || disconnected()) return false;
+    if (uplink.offer(packet)) return true;
+    refused.incrementAndGet();
+    return false;
+  }
 
-  private ObjectInputStream in() { return in.get(); }
-  private ObjectOutputStream out() { return out.get(); }
+  /**
+   * Queues a packet that must not be lost, waiting while the uplink is full.
+   * @return false if disconnected first
+   */
+  private boolean send(Packet packet) throws InterruptedException
+  {
+    while (!write(packet)) { if (disconnected()) return false; Thread.sleep(1); }
+    return true;
+  }
+
+  /**
+   * @return packets waiting to be sent; a growing uplink means the server or network is not keeping up
+   */
+  public int queued() { return uplink.size(); }
+
+  public String uplinkToString() { return "uplink: " + frames.get() + " frames in " + flushes.get() + " flushes, " + rawBytes.get() + " bytes sent as " + sentBytes.get() + ", " + refused.get() + " refused, " + uplink.size() + " unsent"; }
+
+  public static boolean compress() { return compress.get(); }
+  public static void compress(boolean enabled) { compress.set(enabled); }
+
+  private DataInputStream in() { return in.get(); }
+  private DataOutputStream out() { return out.get(); }
 
   public String ip() { return ip.get(); }
   public String hostname() { return hostname.get(); }
@@ -148,21 +247,36 @@ public class Client
   public String username() { return username.get(); }
   public String username(String username) { Log.o("username updated: " + username() + " -> " + username); return this.username.getAndSet(username); }
 
+  public static boolean virtualThreads() { return virtualThreads.get(); }
+  public static void virtualThreads(boolean enabled) { virtualThreads.set(enabled); }
+
   private Socket socket() { return socket.get(); }
   public boolean connected() { return connected.get(); }
   public boolean disconnected() { return !connected(); }
 
+  /**
+   * @return number of fingerprints of the target's closed set held here
+   */
+  public int shard(BigInteger target)
+  {
+    final Fingerprints shard = shards.get(target);
+    return null != shard ? shard.size() : 0;
+  }
+
   private void init() throws IOException
   {
     final String bound = (outbound() ? "outbound" : "inbound");
     if (!connected.compareAndSet(false, true)) { Log.e(bound + " client already connected: " + toString()); return; }
     o("new " + bound + " connection...");
 
-    this.out.set(new ObjectOutputStream( socket().getOutputStream() ));
-    out().flush();
-    this.in.set(new ObjectInputStream( socket().getInputStream() ));
+    this.out.set(new DataOutputStream( new BufferedOutputStream(socket().getOutputStream()) ));
+    this.in.set(new DataInputStream( new BufferedInputStream(socket().getInputStream()) ));
 
-    final Thread thread = new Thread( new ClientThread() );
+    final Thread writer = Utils.thread(new WriterThread(), bound + " client " + socket().getPort() + " writer", virtualThreads());
+    this.writerThread.set(writer);
+    writer.start();
+
+    final Thread thread = Utils.thread(new ClientThread(), bound + " client " + socket().getPort(), virtualThreads());
     this.clientThread.set(thread);
     thread.start();
 
@@ -183,20 +297,109 @@ public class Client
       switch (p.type())
       {
         case UPDATE: { break; }
-        case TARGET_UPDATE: { break; }
+        case TARGET_UPDATE: { if (Solver.networkSearch()) write(Packet.Type.OPEN_CHECK); break; } // new target hosted, ask for work
         case USERNAME_UPDATE: { username( p.asString() ); break; }
         case EMAIL_UPDATE: { email( p.asString() ); break; }
-        case OPEN_UPDATE: { break; }
+        case OPEN_UPDATE: { leaseWorker.execute(() -> work(p)); break; }
         case OPEN_CHECK: { break; }
-        case CLOSED_UPDATE: { break; }
-        case CLOSED_CHECK: { break; }
-        case SOLUTION_UPDATE: { break; }
+        case CLOSED_UPDATE: { shards.computeIfAbsent(p.data(1, BigInteger.class), t -> new Fingerprints()).addAll(p.asLongs(2)); break; } // id, target, fingerprints this machine owns
+        case CLOSED_CHECK: { closedCheck(p); break; }
+        case SOLUTION_UPDATE: { Solver.cancel(p.data(0, BigInteger.class), new Packet.Factors(p.data(1, Integer.class), p.data(2, BigInteger.class), p.data(3, BigInteger.class))); break; } // target, depth, p, q
         case ERROR: { break; }
+        case UPDATE_ACK: { Solver.acknowledge(p.data(0, Long.class)); break; }
+        case CLOSED_FOUND: { Solver.duplicates(p.data(1, BigInteger.class), p.asLongs(2)); break; } // id, target, fingerprints expanded elsewhere
         default: Log.e("unhandled packet type received: " + p.type().name());
       }
     }
   }
 
+  /**
+   * Tells the server what this machine can do, so it can size leases to it, then asks for work.
+   * Runs on the lease worker, so the benchmark never overlaps a leased search.
+   */
+  private void advertise()
+  {
+    write(Packet.Type.CAPABILITY_UPDATE, Solver.processors(), Solver.processorCap(), Solver.memoryCap(), benchmark());
+    write(Packet.Type.OPEN_CHECK);
+  }
+
+  /**
+   * Times a short search that cannot finish within its budget. It runs as a self-contained unit, so it
+   * is not synced to the server and leaves the user's checkpoint, results and streams alone, and its
+   * completion never reaches the user's callback.
+   * The search is run twice and only the second is timed, so a cold jvm does not look slow.
+   * @return expansions/s w/the current solver settings
+   */
+  public static double benchmark()
+  {
+    try
+    {
+      final BigInteger target = new BigInteger(ClientGui.RSA_2048.trim().replace("\n",""));
+      double rate = 0;
+      for (int run = 0; run < 2; ++run)
+      {
+        final Solver solver = new Solver(target, new Solver.Unit(null, BENCHMARK_EXPANSIONS, false, n -> {}));
+        try
+        {
+          final long start = System.nanoTime();
+          solver.start().join();
+          rate = solver.expanded() / Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        }
+        finally { solver.retire(); }
+      }
+      return rate;
+    }
+    catch (Throwable t) { Log.e("benchmark failed", t); return 0; }
+  }
+
+  /**
+   * Answers a lookup against this machine's shard. Every check is answered, even w/nothing found,
+   * so the server can forget it.
+   * @param p id, target, fingerprints
+   */
+  private void closedCheck(Packet p)
+  {
+    final Fingerprints shard = shards.get(p.data(1, BigInteger.class));
+    write(Packet.Type.CLOSED_FOUND, p.data(0, Long.class), p.data(1, BigInteger.class), null != shard ? shard.containsAll(p.asLongs(2)) : new long[0]);
+  }
+
+  /**
+   * Searches a leased work unit and reports back every unexpanded node so the server can lease them
+   * to someone else; nothing may be dropped, or the subtrees below it would never be searched.
+   * Large frontiers go back in batches: all but the last are flagged partial, the last completes the lease.
+   * A goal is reported by the solver as soon as it is found.
+   * @param lease id, target, expansion budget, subtree roots
+   */
+  private void work(Packet lease)
+  {
+    try
+    {
+      final long id = lease.data(0, Long.class);
+      final BigInteger target = lease.data(1, BigInteger.class);
+      final long budget = lease.data(2, Long.class);
+      final Collection<Packet.Factors> roots = lease.asCollection(3);
+      if (roots.isEmpty())
+      {
+        Thread.sleep(IDLE_RETRY_MILLIS);
+        if (connected()) write(Packet.Type.OPEN_CHECK);
+        return;
+      }
+
+      o("lease " + id + ": " + roots.size() + " subtrees, budget " + budget);
+      final Solver solver = new Solver(target, new Solver.Unit(roots, budget, Solver.networkSearch()));
+      final List<Packet.Factors> frontier;
+      try { solver.start().join(); frontier = solver.frontier(Integer.MAX_VALUE); }
+      finally { solver.retire(); }
+
+      // a goal was already reported by the solver the moment it was found
+      int from = 0;
+      for (; frontier.size() - from > FRONTIER_BATCH; from += FRONTIER_BATCH) if (!send(new Packet(Packet.Type.OPEN_UPDATE, id, 0L, new ArrayList<>(frontier.subList(from, from + FRONTIER_BATCH)), true))) return;
+      send(new Packet(Packet.Type.OPEN_UPDATE, id, solver.expanded(), new ArrayList<>(frontier.subList(from, frontier.size()))));
+    }
+    catch (InterruptedException ignored) {}
+    catch (Throwable t) { Log.e(toString() + ": lease failed", t); }
+  }
+
   /**
    * Thread that handles incoming packets for both local and remote clients.
    */
@@ -215,7 +418,8 @@ public class Client
       if (!handshake()) { Log.e(toString() + ": handshake failure"); return; }
       o(Client.this.toString() + ": connection established");
 
-      Solver.client(Client.this);
+      if (outbound()) Solver.client(Client.this); // inbound connections are not this machine's uplink
+      if (outbound() && Solver.networkSearch()) leaseWorker.execute(Client.this::advertise); // volunteer for work
       try { while (connected() && !Thread.interrupted()) callback.accept( read() ); }
       catch (Throwable t) { if (connected() && !Thread.interrupted()) Log.e(t); }
 
@@ -224,6 +428,48 @@ public class Client
     }
   }
 
+  /**
+   * Sends queued packets: waits for one, then coalesces whatever else is queued into the same flush.
+   */
+  private class WriterThread implements Runnable
+  {
+    @Override public void run()
+    {
+      try
+      {
+        while (connected() && !Thread.interrupted())
+        {
+          Packet p = uplink.take();
+          final Flight.PacketFlush event = flight ? Flight.flush() : null;
+          final long framesBefore = frames.get(), rawBefore = rawBytes.get();
+          outBuffer.clear();
+          do
+          {
+            final int start = outBuffer.position();
+            try { outBuffer = p.encode(outBuffer); outBuffer.position(outBuffer.limit()).limit(outBuffer.capacity()); }
+            catch (Throwable t) { Log.e(Client.this.toString() + ": failed to encode " + p, t); outBuffer.position(start).limit(outBuffer.capacity()); continue; }
+
+            final int len = outBuffer.position() - start;
+            rawBytes.addAndGet(len);
+            if (compress() && len >= COMPRESS_BYTES) Packet.deflate(outBuffer, start, deflater);
+            frames.incrementAndGet();
+          }
+          while (outBuffer.position() < UPLINK_FLUSH_BYTES && null != (p = uplink.poll()));
+
+          final DataOutputStream out = out();
+          out.write(outBuffer.array(), 0, outBuffer.position());
+          out.flush();
+          flushes.incrementAndGet();
+          sentBytes.addAndGet(outBuffer.position());
+          if (null != event) event.done((int) (frames.get() - framesBefore), rawBytes.get() - rawBefore, outBuffer.position());
+        }
+      }
+      catch (InterruptedException ignored) {}
+      catch (Throwable t) { if (connected()) { Log.e(Client.this.toString() + ": write failure: " + t.getMessage()); close(); } }
+      finally { deflater.end(); }
+    }
+  }
+
   public static void main(String[] args)
   {
     new ClientGui();
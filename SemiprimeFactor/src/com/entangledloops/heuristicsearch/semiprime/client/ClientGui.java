@@ -95,6 +95,8 @@ public class ClientGui extends JFrame implements DocumentListener
   private static final String COMPRESS_MEMORY_NAME   = "compress memory";
   private static final String PRINT_ALL_NODES_NAME   = "print all nodes";
   private static final String WRITE_CSV_NAME         = "write search csv";
+  private static final String ANYTIME_NAME           = "anytime search";
+  private static final String ANYTIME_WEIGHT_NAME    = "anytime weight";
   private static final String PROCESSORS_NAME        = "processors";
   private static final String PROCESSOR_CAP_NAME     = "processor cap";
   private static final String MEMORY_CAP_NAME        = "memory cap";
@@ -120,6 +122,7 @@ public class ClientGui extends JFrame implements DocumentListener
   private static final int DEFAULT_PROCESSOR_CAP  = Solver.processorCap();
   private static final int DEFAULT_MEMORY_CAP     = Solver.memoryCap();
   private static final int DEFAULT_IDLE_MINUTES   = 5;
+  private static final int DEFAULT_ANYTIME_WEIGHT = (int) Solver.anytimeWeight();
   private static final int DEFAULT_PORT           = 12288;
   private static final int DEFAULT_WIDTH          = 1024;
   private static final int DEFAULT_HEIGHT         = 768;
@@ -134,6 +137,7 @@ public class ClientGui extends JFrame implements DocumentListener
   private static final boolean DEFAULT_BACKGROUND        = Solver.background();
   private static final boolean DEFAULT_PRINT_ALL_NODES   = Solver.printAllNodes();
   private static final boolean DEFAULT_WRITE_CSV         = null != Solver.csv();
+  private static final boolean DEFAULT_ANYTIME           = Solver.anytime();
 
   //////////////////////////////////////////////////////////////////////////////
   // gui
@@ -189,6 +193,8 @@ public class ClientGui extends JFrame implements DocumentListener
   private JCheckBox   chkBackground;
   private JCheckBox   chkPrintAllNodes;
   private JCheckBox   chkWriteCsv;
+  private JCheckBox   chkAnytime;
+  private JTextField  txtAnytimeWeight;
   private JCheckBox[] chkHeuristics;
   private JButton     btnSearch;
   private JTextArea   txtSemiprime;
@@ -518,6 +524,19 @@ public class ClientGui extends JFrame implements DocumentListener
     chkWriteCsv.setToolTipText("<html>All nodes generated will be written to disk in CSV format in order of occurrence.<br>This may bring search speed to a halt and/or fill your disk!</html>");
     chkWriteCsv.addActionListener((e) -> { try { Solver.csv(chkWriteCsv.isSelected() ? new PrintWriter("search-results.csv") : null); } catch (Throwable t) { Log.e(t); } });
 
+    final String anytimeHelp = "<html>Search starts greedy, w/this weight on h in f = depth + weight * h,<br>then halves it every few seconds until plain weighted search remains.<br>Open nodes are re-sorted in place; no work is thrown away.</html>";
+
+    chkAnytime = getCheckBox(ANYTIME_NAME, DEFAULT_ANYTIME);
+    chkAnytime.setToolTipText(anytimeHelp);
+    chkAnytime.addActionListener((e) -> { Solver.anytime(chkAnytime.isSelected()); txtAnytimeWeight.setEnabled(chkAnytime.isSelected()); });
+
+    final JLabel lblAnytimeWeight = getLabel("anytime start weight");
+    lblAnytimeWeight.setToolTipText(anytimeHelp);
+
+    txtAnytimeWeight = getNumberTextField(""+DEFAULT_ANYTIME_WEIGHT, 4);
+    txtAnytimeWeight.setToolTipText(anytimeHelp);
+    txtAnytimeWeight.setEnabled(DEFAULT_ANYTIME);
+
     chkBackground = getCheckBox("work in background", prefs.getBoolean(BACKGROUND_NAME, DEFAULT_BACKGROUND));
     chkBackground.setToolTipText("Only run when system is idle.");
     chkBackground.addActionListener(l -> { Solver.background(chkBackground.isSelected()); Log.o("background: " + (Solver.background() ? "yes" : "no")); });
@@ -715,6 +734,8 @@ public class ClientGui extends JFrame implements DocumentListener
           Solver.restrictNetwork(chkRestrictNetwork.isSelected());
           Solver.background(chkBackground.isSelected());
           Solver.printAllNodes(chkPrintAllNodes.isSelected());
+          Solver.anytime(chkAnytime.isSelected());
+          try { Solver.anytimeWeight(Integer.parseInt(clean(txtAnytimeWeight.getText()))); } catch (NumberFormatException ignored) { txtAnytimeWeight.setText(""+(int) Solver.anytimeWeight()); }
           Solver.processors(sldProcessors.getValue());
           Solver.processorCap(sldProcessorCap.getValue());
           Solver.memoryCap(sldMemoryCap.getValue());
@@ -774,7 +795,7 @@ public class ClientGui extends JFrame implements DocumentListener
 
     /////////////////////////////////////
 
-    final JPanel pnlSearchOptions = new JPanel(new GridLayout(3,3));
+    final JPanel pnlSearchOptions = new JPanel(new GridLayout(4,3));
     pnlSearchOptions.setBorder(BorderFactory.createTitledBorder(
             BorderFactory.createLineBorder(Color.BLACK),
             "Search Options",
@@ -790,6 +811,9 @@ public class ClientGui extends JFrame implements DocumentListener
     pnlSearchOptions.add(chkPrintAllNodes);
     pnlSearchOptions.add(chkWriteCsv);
     pnlSearchOptions.add(chkBackground);
+    pnlSearchOptions.add(chkAnytime);
+    pnlSearchOptions.add(lblAnytimeWeight);
+    pnlSearchOptions.add(txtAnytimeWeight);
 
     final JPanel pnlHeuristics = new JPanel(new GridLayout(1+(chkHeuristics.length/3),3));
     for (JCheckBox h : chkHeuristics) pnlHeuristics.add(h);
@@ -1335,6 +1359,11 @@ public class ClientGui extends JFrame implements DocumentListener
     prefs.putBoolean(RESTRICT_DISK_NAME, chkRestrictDisk.isSelected());
     prefs.putBoolean(PRINT_ALL_NODES_NAME, chkPrintAllNodes.isSelected());
     prefs.putBoolean(WRITE_CSV_NAME, chkWriteCsv.isSelected());
+    prefs.putBoolean(ANYTIME_NAME, chkAnytime.isSelected());
+
+    int anytimeWeight = prefs.getInt(ANYTIME_WEIGHT_NAME, DEFAULT_ANYTIME_WEIGHT);
+    try { anytimeWeight = Integer.parseInt(txtAnytimeWeight.getText().trim()); } catch (Throwable ignored) {}
+    prefs.putInt(ANYTIME_WEIGHT_NAME, anytimeWeight);
 
     Log.o("search settings saved");
   }
@@ -1380,6 +1409,9 @@ public class ClientGui extends JFrame implements DocumentListener
     chkRestrictDisk.setSelected(prefs.getBoolean(RESTRICT_DISK_NAME, DEFAULT_RESTRICT_DISK));
     chkPrintAllNodes.setSelected(prefs.getBoolean(PRINT_ALL_NODES_NAME, DEFAULT_PRINT_ALL_NODES));
     chkWriteCsv.setSelected(prefs.getBoolean(WRITE_CSV_NAME, DEFAULT_WRITE_CSV));
+    chkAnytime.setSelected(prefs.getBoolean(ANYTIME_NAME, DEFAULT_ANYTIME));
+    txtAnytimeWeight.setText(""+prefs.getInt(ANYTIME_WEIGHT_NAME, DEFAULT_ANYTIME_WEIGHT));
+    txtAnytimeWeight.setEnabled(chkAnytime.isSelected());
 
     updateSemiprimeInfo();
 
@@ -1432,6 +1464,9 @@ public class ClientGui extends JFrame implements DocumentListener
     chkRestrictDisk.setSelected(Solver.restrictDisk());
     chkPrintAllNodes.setSelected(Solver.printAllNodes());
     chkWriteCsv.setSelected(null != Solver.csv());
+    chkAnytime.setSelected(Solver.anytime());
+    txtAnytimeWeight.setText(""+(int) Solver.anytimeWeight());
+    txtAnytimeWeight.setEnabled(chkAnytime.isSelected());
 
     txtInternalBase.setText(""+Solver.internalBase());
     txtP1Len.setText(""+Solver.pLen2());
@@ -1481,6 +1516,9 @@ public class ClientGui extends JFrame implements DocumentListener
     chkRestrictDisk.setSelected(DEFAULT_RESTRICT_DISK);
     chkPrintAllNodes.setSelected(DEFAULT_PRINT_ALL_NODES);
     chkWriteCsv.setSelected(DEFAULT_WRITE_CSV);
+    chkAnytime.setSelected(DEFAULT_ANYTIME);
+    txtAnytimeWeight.setText(""+DEFAULT_ANYTIME_WEIGHT);
+    txtAnytimeWeight.setEnabled(DEFAULT_ANYTIME);
 
     Log.o("search settings reset");
   }
@@ -0,0 +1,306 @@
+package com.entangledloops.heuristicsearch.semiprime.server;
+
+import com.entangledloops.heuristicsearch.semiprime.Log;
+import com.entangledloops.heuristicsearch.semiprime.Packet;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Splits one target into work units and leases them to clients.
+ *
+ * The target is expanded to every valid low-bit prefix of a fixed depth; each prefix is the root of
+ * a subtree. A lease hands a client a few roots and an expansion budget. When the budget runs out the
+ * client returns every unexpanded node (in batches if there are many), which become new units. Leases held by a client that
+ * disconnects, or that outlive their deadline, go back to the queue for someone else.
+ *
+ * A server may host several targets at once; their priority and weight decide how it shares clients among them.
+ *
+ * @since October 19, 2026
+ */
+public class Coordinator
+{
+  public static final int  DEFAULT_FRONTIER_DEPTH = 10; ///< bits fixed by the initial units
+  public static final int  DEFAULT_LEASE_ROOTS    = 8; ///< units per lease
+  public static final long DEFAULT_LEASE_BUDGET   = 1L << 16; ///< expansions per lease
+  public static final long DEFAULT_LEASE_MILLIS   = 60000L; ///< a lease not returned by then is re-leased
+  public static final long DEFAULT_LEASE_TARGET_MILLIS = 2000L; ///< wall time every lease should take, whatever the client's speed
+  public static final long MIN_LEASE_BUDGET       = 1L << 8;
+  public static final long MAX_LEASE_BUDGET       = 1L << 30;
+
+  private final BigInteger target;
+  private final int        leaseRoots;
+  private final long       leaseBudget;
+  private final long       leaseMillis;
+  private final long       leaseTargetMillis; ///< if > 0, budgets are sized to each client's speed, otherwise always leaseBudget
+
+  /// deepest units first, so leases keep pushing toward full-length factors
+  private final PriorityBlockingQueue<Packet.Factors> units = new PriorityBlockingQueue<>(11, Comparator.comparingInt((Packet.Factors f) -> f.depth).reversed());
+  private final ConcurrentHashMap<Long, Lease>        leases = new ConcurrentHashMap<>();
+
+  private static final AtomicLong nextLease = new AtomicLong(0); ///< unique across targets, so a returned lease finds its coordinator
+  private final AtomicLong leased    = new AtomicLong(0);
+  private final AtomicLong returned  = new AtomicLong(0);
+  private final AtomicLong expired   = new AtomicLong(0); ///< leases taken back after a disconnect or deadline
+  private final AtomicLong expanded  = new AtomicLong(0); ///< total reported by clients
+  private final AtomicLong leaseNanos = new AtomicLong(0); ///< wall time of all returned leases
+  private final AtomicLong longestLeaseNanos = new AtomicLong(0);
+
+  private final AtomicReference<Packet.Factors> solution = new AtomicReference<>(null);
+  private final CountDownLatch                  done     = new CountDownLatch(1);
+  private final long                            started  = System.nanoTime();
+
+  // scheduling among hosted targets
+  private volatile int    priority = 0; ///< higher priorities get every lease while they have work
+  private volatile double weight   = 1.0; ///< share of leases relative to targets of equal priority
+  double pass = 0; ///< leases issued / weight, guarded by the server's scheduler
+
+  /// one outstanding work unit
+  private static class Lease
+  {
+    final long id;
+    final Session session;
+    final List<Packet.Factors> roots;
+    final long issued; ///< nanoTime
+    volatile long deadline; ///< nanoTime; renewed by every partial frontier
+
+    Lease(long id, Session session, List<Packet.Factors> roots, long issued, long deadline)
+    {
+      this.id = id;
+      this.session = session;
+      this.roots = roots;
+      this.issued = issued;
+      this.deadline = deadline;
+    }
+  }
+
+  public Coordinator(BigInteger target) { this(target, DEFAULT_FRONTIER_DEPTH, DEFAULT_LEASE_ROOTS, DEFAULT_LEASE_BUDGET, DEFAULT_LEASE_MILLIS, DEFAULT_LEASE_TARGET_MILLIS); }
+  public Coordinator(BigInteger target, int frontierDepth, int leaseRoots, long leaseBudget, long leaseMillis) { this(target, frontierDepth, leaseRoots, leaseBudget, leaseMillis, 0); }
+
+  /**
+   * @param leaseBudget expansions per lease, or the first lease's when sizing to clients
+   * @param leaseTargetMillis if > 0, each client's budget is sized so a lease takes about this long on it
+   */
+  public Coordinator(BigInteger target, int frontierDepth, int leaseRoots, long leaseBudget, long leaseMillis, long leaseTargetMillis)
+  {
+    if (null == target || !target.testBit(0)) throw new NullPointerException("invalid target: " + target);
+    if (leaseRoots < 1 || leaseBudget < 1 || leaseMillis < 1) throw new NullPointerException("invalid lease settings");
+
+    this.target = target;
+    this.leaseRoots = leaseRoots;
+    this.leaseBudget = leaseBudget;
+    this.leaseMillis = leaseMillis;
+    this.leaseTargetMillis = leaseTargetMillis;
+
+    units.addAll(frontier(target, Math.max(0, Math.min(frontierDepth, target.bitLength() / 2 - 1))));
+    Log.o("coordinator: " + units.size() + " work units for " + target);
+  }
+
+  @Override public String toString()
+  {
+    return "coordinator: " + target.bitLength() + "-bit target, priority " + priority + ", weight " + weight + ", " + units.size() + " queued, " + leases.size() + " leased, " +
+        leased.get() + " leases issued, " + returned.get() + " returned, " + expired.get() + " expired, " +
+        expanded.get() + " expanded by clients, lease time avg " + String.format("%.0f", returned.get() > 0 ? leaseNanos.get() / 1e6 / returned.get() : 0) + " ms, " +
+        "max " + String.format("%.0f", longestLeaseNanos.get() / 1e6) + " ms" + (null != solution.get() ? ", solved" : "");
+  }
+
+  public BigInteger target() { return target; }
+  public Packet.Factors solution() { return solution.get(); }
+  public boolean done() { return 0 == done.getCount(); }
+  public long expanded() { return expanded.get(); }
+  public long leased() { return leased.get(); }
+  public int leases() { return leases.size(); }
+  public int queued() { return units.size(); }
+  public double rate() { return expanded.get() / Math.max(1e-9, (System.nanoTime() - started) / 1e9); } ///< expansions/s since hosting began
+
+  public int priority() { return priority; }
+  public double weight() { return weight; }
+
+  /**
+   * @param priority targets of higher priority are leased first
+   * @param weight share of leases among targets of equal priority, > 0
+   */
+  public Coordinator share(int priority, double weight)
+  {
+    if (!(weight > 0) || Double.isInfinite(weight)) throw new NullPointerException("invalid weight: " + weight);
+    this.priority = priority;
+    this.weight = weight;
+    return this;
+  }
+
+  /**
+   * @return true if a lease requested now would get work
+   */
+  boolean available()
+  {
+    expire();
+    return !done() && !units.isEmpty();
+  }
+
+  /**
+   * Every valid node at a depth, i.e. every pair of odd p <= q whose product agrees w/the target in the low depth+1 bits.
+   * This is the same rule the solver uses to prune children, applied breadth-first.
+   */
+  static List<Packet.Factors> frontier(BigInteger target, int depth)
+  {
+    List<Packet.Factors> level = new ArrayList<>();
+    level.add(new Packet.Factors(0, BigInteger.ONE, BigInteger.ONE));
+    for (int d = 1; d <= depth; ++d)
+    {
+      final List<Packet.Factors> next = new ArrayList<>();
+      for (Packet.Factors n : level)
+      {
+        for (int i = 0; i < 2; ++i)
+        {
+          for (int j = 0; j < 2; ++j)
+          {
+            if (i > j && n.p.equals(n.q)) continue; // mirror image of (j, i)
+            final BigInteger f1 = 0 != i ? n.p.setBit(d) : n.p, f2 = 0 != j ? n.q.setBit(d) : n.q;
+            final BigInteger p = f1.min(f2), q = f1.max(f2), s = p.multiply(q);
+            if (s.testBit(d) == target.testBit(d) && s.bitLength() <= target.bitLength()) next.add(new Packet.Factors(d, p, q));
+          }
+        }
+      }
+      level = next;
+    }
+    return level;
+  }
+
+  /**
+   * @param session the client asking for work
+   * @return the lease to send: id, target, budget, roots (no roots if nothing is available right now)
+   */
+  Packet lease(Session session)
+  {
+    expire();
+
+    final List<Packet.Factors> roots = new ArrayList<>(leaseRoots);
+    if (!done()) units.drainTo(roots, leaseRoots);
+    if (roots.isEmpty()) return new Packet(Packet.Type.OPEN_UPDATE, -1L, target, 0L, roots);
+
+    final long id = nextLease.incrementAndGet(), now = System.nanoTime();
+    leases.put(id, new Lease(id, session, roots, now, now + TimeUnit.MILLISECONDS.toNanos(leaseMillis)));
+    leased.incrementAndGet();
+    return new Packet(Packet.Type.OPEN_UPDATE, id, target, budget(session), roots);
+  }
+
+  /**
+   * Sizes a lease so it takes about leaseTargetMillis on this client; until its speed is known, the fixed budget.
+   * This only evens out leases that end on their budget; a lease slowed by whatever else the client runs
+   * (or one whose subtrees run out first) is not bounded by the target.
+   */
+  long budget(Session session)
+  {
+    final double rate = session.rate();
+    if (leaseTargetMillis <= 0 || !(rate > 0)) return leaseBudget;
+    return Math.max(MIN_LEASE_BUDGET, Math.min(MAX_LEASE_BUDGET, (long) (rate * leaseTargetMillis / 1000.0)));
+  }
+
+  /**
+   * A client finished a lease without finding the goal.
+   * @param id the lease
+   * @param expansions how many nodes the client expanded
+   * @param frontier the last of the client's unexpanded nodes, queued as new units
+   * @return false if the lease is not (or no longer) one of this target's
+   */
+  boolean complete(Session session, long id, long expansions, Collection<Packet.Factors> frontier)
+  {
+    final Lease lease = leases.get(id);
+    if (null == lease || lease.session != session || !leases.remove(id, lease)) return false;
+
+    final long nanos = System.nanoTime() - lease.issued;
+    session.observe(expansions, nanos);
+    leaseNanos.addAndGet(nanos);
+    longestLeaseNanos.accumulateAndGet(nanos, Math::max);
+    returned.incrementAndGet();
+    expanded.addAndGet(expansions);
+    if (!done()) units.addAll(frontier);
+    exhausted();
+    return true;
+  }
+
+  /**
+   * Queues part of a lease's frontier; the lease stays open until the last part completes it.
+   * Each part shows the client is still working on the lease, so it renews the deadline; a lease that
+   * still expires meanwhile has its roots searched again, so nothing is lost either way.
+   * @return false if the lease is not (or no longer) one of this target's
+   */
+  boolean extend(Session session, long id, Collection<Packet.Factors> frontier)
+  {
+    final Lease lease = leases.get(id);
+    if (null == lease || lease.session != session) return false;
+    lease.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+    if (!done()) units.addAll(frontier);
+    return true;
+  }
+
+  /**
+   * Accepts a goal if it really factors the target.
+   * @return true if this was the first valid solution
+   */
+  boolean solved(Packet.Factors f)
+  {
+    if (null == f || BigInteger.ONE.equals(f.p) || BigInteger.ONE.equals(f.q) || !target.equals(f.p.multiply(f.q))) { Log.e("coordinator: rejected bogus solution " + f); return false; }
+    if (!solution.compareAndSet(null, f)) return false;
+
+    Log.o("coordinator: solved " + target + " = " + f.p + " * " + f.q);
+    units.clear(); leases.clear();
+    done.countDown();
+    return true;
+  }
+
+  /**
+   * Gives up on the target, e.g. when the server shuts down.
+   */
+  void stop() { if (done.getCount() > 0) { Log.o("coordinator: stopped " + target); done.countDown(); } }
+
+  /**
+   * Puts back every lease a disconnected client held.
+   */
+  void release(Session session)
+  {
+    for (Lease lease : leases.values()) if (lease.session == session) requeue(lease);
+  }
+
+  /**
+   * Puts back every lease past its deadline.
+   */
+  void expire()
+  {
+    final long now = System.nanoTime();
+    for (Lease lease : leases.values()) if (now - lease.deadline > 0) requeue(lease);
+  }
+
+  private void requeue(Lease lease)
+  {
+    if (!leases.remove(lease.id, lease)) return;
+    expired.incrementAndGet();
+    if (!done()) units.addAll(lease.roots);
+  }
+
+  /// no units left anywhere means every subtree was searched (or dropped) w/o finding the goal
+  private void exhausted()
+  {
+    if (units.isEmpty() && leases.isEmpty() && done.getCount() > 0) { Log.o("coordinator: search space exhausted for " + target); done.countDown(); }
+  }
+
+  /**
+   * Blocks until a client solves the target or all units are exhausted.
+   * @return the solution, or null if none was found or the wait was interrupted
+   */
+  public Packet.Factors await()
+  {
+    try { while (!done.await(leaseMillis, TimeUnit.MILLISECONDS)) { expire(); Log.o(toString()); } }
+    catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    return solution.get();
+  }
+}
@@ -1,22 +1,46 @@
 package com.entangledloops.heuristicsearch.semiprime.server;
 
+import com.entangledloops.heuristicsearch.semiprime.Fingerprints;
 import com.entangledloops.heuristicsearch.semiprime.Log;
 import com.entangledloops.heuristicsearch.semiprime.Packet;
 import com.entangledloops.heuristicsearch.semiprime.Solver;
-import com.entangledloops.heuristicsearch.semiprime.client.Client;
+import com.entangledloops.heuristicsearch.semiprime.Utils;
 import com.entangledloops.heuristicsearch.semiprime.client.ClientGui;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
 
 /**
+ * Non-blocking server: a few i/o threads each run a selector over their share of the connections,
+ * and decoded packets are handled on a worker pool, so thousands of clients do not need thousands of threads.
+ *
+ * Alternatively each session can run plain blocking i/o on its own virtual thread (java 21+),
+ * which scales the same way w/o the selector machinery.
+ *
  * @author Stephen Dunn
  * @since October 31, 2015
  */
@@ -26,13 +50,35 @@ public class Server
   public static final String DEFAULT_HOST = "semiprime.servebeer.com";
   public static final int    DEFAULT_PORT = 12288;
 
+  public static final int DEFAULT_IO_THREADS     = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+  public static final int DEFAULT_WORKER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+  public static final int SHARD_POINTS           = 64; ///< points per session on the shard ring, evens out shard sizes
+
   // server backend
-  private final int          port; ///< port hosting was launch on
-  private final ServerSocket socket;
-  private final AtomicReference<Thread> serverThread = new AtomicReference<>();
+  private final int                 port; ///< port hosting was launched on (the bound port if 0 was requested)
+  private final ServerSocketChannel socket;
+  private final Loop[]              loops; ///< loop 0 also accepts new connections (none if blocking)
+  private final ExecutorService     workers; ///< null if blocking
+  private final Thread              acceptor; ///< accepts new connections if blocking, otherwise null
+  private final boolean             virtualThreads; ///< blocking sessions, one (virtual) thread each
+  private final Consumer<Packet>    callback; ///< optional, called after the server handles each packet (null on disconnect)
+  private final AtomicInteger       nextLoop = new AtomicInteger(0);
+  private final AtomicLong          nextSession = new AtomicLong(0);
 
   // state vars
-  private final Queue<Client> clients          = new ConcurrentLinkedQueue<>();
+  private final Queue<Session> sessions         = new ConcurrentLinkedQueue<>();
+  private final ConcurrentHashMap<BigInteger, View> views = new ConcurrentHashMap<>(); ///< merged search state of all clients, per target
+  private final ConcurrentHashMap<BigInteger, Coordinator> coordinators = new ConcurrentHashMap<>(); ///< targets being hosted, sharing clients by priority and weight
+  private final ConcurrentHashMap<BigInteger, double[]> shares = new ConcurrentHashMap<>(); ///< { priority, weight } set for targets not hosted yet
+  private final Object scheduler = new Object(); ///< guards every coordinator's pass
+  private final ConcurrentHashMap<BigInteger, Packet.Factors> solutions = new ConcurrentHashMap<>(); ///< verified factors, per target
+
+  // distributed closed set: each fingerprint is owned by the session at the next point on the ring
+  private final ConcurrentSkipListMap<Long, Session> ring   = new ConcurrentSkipListMap<>();
+  private final ConcurrentHashMap<Long, Session[]>   checks = new ConcurrentHashMap<>(); ///< forwarded CLOSED_CHECK id -> { requester, owner }
+  private final AtomicLong                           nextCheck = new AtomicLong(1);
+  private final AtomicInteger                        shards = new AtomicInteger(0);
+
   private final AtomicBoolean ready            = new AtomicBoolean(false); ///< server ready for new clients?
   private final AtomicBoolean exiting          = new AtomicBoolean(false); ///< are we dying?
   private final TimeUnit      shutdownTimeUnit = TimeUnit.MILLISECONDS;
@@ -45,18 +91,52 @@ public class Server
   //////////////////////////////////////////////////////////////////////////////
 
   public Server() { this(DEFAULT_PORT, null); }
-  public Server(int port, Consumer<Packet> socketEventCallback)
+  public Server(int port, Consumer<Packet> socketEventCallback) { this(port, socketEventCallback, DEFAULT_IO_THREADS, DEFAULT_WORKER_THREADS); }
+  public Server(int port, Consumer<Packet> socketEventCallback, int ioThreads, int workerThreads) { this(port, socketEventCallback, ioThreads, workerThreads, false); }
+
+  /**
+   * @param virtualThreads if true, every session blocks on its own virtual thread instead of sharing selectors (platform threads before java 21)
+   */
+  public Server(int port, Consumer<Packet> socketEventCallback, boolean virtualThreads) { this(port, socketEventCallback, DEFAULT_IO_THREADS, DEFAULT_WORKER_THREADS, virtualThreads); }
+
+  private Server(int port, Consumer<Packet> socketEventCallback, int ioThreads, int workerThreads, boolean virtualThreads)
   {
-    if (port < 1 || port > 65535) { Log.e("server port is invalid: " + port); throw new NullPointerException(); }
+    if (port < 0 || port > 65535) { Log.e("server port is invalid: " + port); throw new NullPointerException(); }
+    if (ioThreads < 1 || workerThreads < 1) { Log.e("server needs at least 1 i/o and 1 worker thread"); throw new NullPointerException(); }
+    if (virtualThreads && !Utils.virtualThreads()) Log.e("virtual threads need java 21+, sessions will use platform threads");
 
-    this.port = port;
+    this.callback = socketEventCallback;
+    this.virtualThreads = virtualThreads;
 
     try
     {
       Log.o("launching new socket server..."); // 'launched' msg printed in new start
-      socket = new ServerSocket(port, Integer.MAX_VALUE);
-      serverThread.set(new Thread(new ServerThread()));
-      serverThread.get().start();
+      socket = ServerSocketChannel.open();
+      socket.bind(new InetSocketAddress(port), Integer.MAX_VALUE);
+      this.port = socket.socket().getLocalPort();
+
+      if (virtualThreads)
+      {
+        workers = null;
+        loops = new Loop[0];
+        acceptor = new Thread(this::acceptBlocking, "server accept");
+
+        ready.set(true);
+        acceptor.start();
+        Log.o("server launched on port " + this.port + " w/a " + (Utils.virtualThreads() ? "virtual" : "platform") + " thread per session, ready to accept clients");
+        return;
+      }
+
+      socket.configureBlocking(false);
+      acceptor = null;
+      workers = Executors.newFixedThreadPool(workerThreads);
+      loops = new Loop[ioThreads];
+      for (int i = 0; i < loops.length; ++i) loops[i] = new Loop(i);
+      socket.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+
+      ready.set(true);
+      for (Loop loop : loops) loop.thread.start();
+      Log.o("server launched on port " + this.port + " w/" + ioThreads + " i/o and " + workerThreads + " worker threads, ready to accept clients");
     }
     catch (Throwable t)
     {
@@ -68,12 +148,20 @@ public class Server
 
   @Override public String toString()
   {
-    return Stream.of(clients).map(Object::toString).reduce((c1,c2) -> c1 + "\n" + c2).orElse("no connected clients");
+    return sessions.stream().map(Object::toString).reduce((c1,c2) -> c1 + "\n" + c2).orElse("no connected clients");
   }
 
-  ServerSocket socket() { return socket; }
+  ServerSocket socket() { return socket.socket(); }
+  public int port() { return port; }
+  public int sessions() { return sessions.size(); }
+  public int shards() { return shards.get(); }
+  public View view(BigInteger target) { return views.get(target); }
+  public Coordinator coordinator(BigInteger target) { return coordinators.get(target); }
+  public Collection<Coordinator> coordinators() { return coordinators.values(); }
+  public Packet.Factors solution(BigInteger target) { return solutions.get(target); }
   public boolean ready() { return ready.get() && !exiting(); }
   public boolean exiting() { return exiting.get(); }
+  public boolean virtualThreads() { return virtualThreads; }
 
   /**
    * Closes all client connections and exits the server.
@@ -83,48 +171,458 @@ public class Server
     if (!exiting.compareAndSet(false, true)) { Log.e("server already closed"); return; }
     try
     {
+      Log.o("server shutting down...");
+      ready.set(false);
+      for (Coordinator c : coordinators.values()) c.stop();
       socket.close();
-      final Thread thread = serverThread.getAndSet(null);
-      if (null != thread && Thread.currentThread() != thread) { thread.join(shutdownTimeUnit.toMillis(shutdownTimeout)); }
+
+      final long deadline = System.nanoTime() + shutdownTimeUnit.toNanos(shutdownTimeout);
+      for (Loop loop : loops)
+      {
+        loop.selector.wakeup();
+        if (Thread.currentThread() != loop.thread) loop.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+      }
+      if (null != acceptor && Thread.currentThread() != acceptor) acceptor.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+
+      Session s; while (null != (s = sessions.poll())) s.close();
+      if (null != workers)
+      {
+        workers.shutdown();
+        workers.awaitTermination(Math.max(1, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      }
+      Log.o("server shutdown");
     }
     catch (Throwable t) { Log.e("error during server shutdown", t); }
   }
 
+  /**
+   * Hosts a target: leases its subtrees to connected clients until one of them factors it.
+   * Several targets may be hosted at once from different threads; clients are shared among them, see {@link #share}.
+   * @param target the semiprime
+   * @return the factors (depth = len of the larger factor - 1), or null if the search space was exhausted
+   */
+  public Packet.Factors coordinate(BigInteger target) { return coordinate(new Coordinator(target)); }
+
+  /**
+   * Hosts a target w/custom lease settings.
+   * @param c a new coordinator for the target
+   * @return the factors, or null if the search space was exhausted
+   */
+  public Packet.Factors coordinate(Coordinator c)
+  {
+    final BigInteger target = c.target();
+    if (null != solutions.get(target)) return solutions.get(target);
+
+    final double[] share = shares.get(target);
+    if (null != share) c.share((int) share[0], share[1]);
+    synchronized (scheduler)
+    {
+      if (null != coordinators.putIfAbsent(target, c)) { Log.e("server is already hosting " + target); return null; }
+      // start level w/the others, or a newcomer would get every lease until it caught up
+      c.pass = coordinators.values().stream().filter(o -> o != c).mapToDouble(o -> o.pass).min().orElse(0);
+    }
+    try
+    {
+      // wake idle clients, they may have been told there was no work
+      for (Session s : sessions) s.write(Packet.Type.TARGET_UPDATE, target);
+      final Packet.Factors solution = c.await();
+      Log.o(c.toString());
+      return solution;
+    }
+    finally { coordinators.remove(target, c); }
+  }
+
+  /**
+   * Sets how a target shares clients w/the others hosted at the same time. May be called before or while it is hosted.
+   * @param priority targets of higher priority get every lease while they have work
+   * @param weight share of leases among targets of equal priority, > 0
+   */
+  public void share(BigInteger target, int priority, double weight)
+  {
+    if (!(weight > 0) || Double.isInfinite(weight)) { Log.e("invalid weight: " + weight); return; }
+    shares.put(target, new double[] { priority, weight });
+    final Coordinator c = coordinators.get(target);
+    if (null != c) c.share(priority, weight);
+  }
+
+  /**
+   * Picks the target for a client's next lease: the highest priority w/work available, and among those the one
+   * furthest behind its weighted share (stride scheduling: each lease advances a target's pass by 1 / weight).
+   * @return the lease, or an idle one if no target has work right now
+   */
+  private Packet lease(Session s)
+  {
+    synchronized (scheduler)
+    {
+      for (int tries = coordinators.size(); tries > 0; --tries)
+      {
+        Coordinator best = null;
+        for (Coordinator c : coordinators.values())
+        {
+          if (!c.available()) continue;
+          if (null == best || c.priority() > best.priority() || (c.priority() == best.priority() && c.pass < best.pass)) best = c;
+        }
+        if (null == best) break;
+
+        final Packet lease = best.lease(s);
+        if (lease.data(0, Long.class) < 0) continue; // drained by a returning lease in between
+        best.pass += 1.0 / best.weight();
+        return lease;
+      }
+    }
+    return idle();
+  }
+
+  /**
+   * Hands a finished lease to the coordinator that issued it.
+   * @param p an OPEN_UPDATE packet: id, expanded, frontier
+   */
+  private void complete(Session s, Packet p)
+  {
+    final long id = p.data(0, Long.class);
+    for (Coordinator c : coordinators.values()) if (c.complete(s, id, p.data(1, Long.class), p.asCollection(2))) return;
+    Log.o("ignoring stale lease " + id + " from " + s);
+  }
+
+  /// true if more of the lease's frontier follows this packet
+  private static boolean partial(Packet p) { return p.size() > 3 && Boolean.TRUE.equals(p.data(3, Boolean.class)); }
+
+  /**
+   * Queues one batch of a lease's frontier that is still being sent.
+   * @param p an OPEN_UPDATE packet: id, 0, frontier, true
+   */
+  private void extend(Session s, Packet p)
+  {
+    final long id = p.data(0, Long.class);
+    for (Coordinator c : coordinators.values()) if (c.extend(s, id, p.asCollection(2))) return;
+    Log.o("ignoring stale lease " + id + " from " + s);
+  }
+
+  /**
+   * Handles one packet from a client on a worker thread.
+   * @param s the sending session
+   * @param p the packet, or null if the client disconnected
+   */
+  private void handle(Session s, Packet p)
+  {
+    if (null == p) { sessions.remove(s); leave(s); for (Coordinator c : coordinators.values()) c.release(s); Log.o(s + ": connection closed"); }
+    else switch (p.type())
+    {
+      case UPDATE: { s.write(update(p)); break; }
+      case TARGET_UPDATE: { break; }
+      case USERNAME_UPDATE: { s.username( p.asString() ); break; }
+      case EMAIL_UPDATE: { s.email( p.asString() ); break; }
+      case OPEN_UPDATE: { if (partial(p)) extend(s, p); else { complete(s, p); s.write(lease(s)); } break; } // lease result: id, expanded, frontier[, partial]
+      case OPEN_CHECK: { s.write(lease(s)); break; } // lease request
+      case CLOSED_UPDATE: { closedUpdate(s, p); break; } // id, target, fingerprints
+      case CLOSED_CHECK: { closedCheck(s, p); break; } // id, target, fingerprints
+      case SOLUTION_UPDATE: { solved(s, p.data(0, BigInteger.class), new Packet.Factors(p.data(1, Integer.class), p.data(2, BigInteger.class), p.data(3, BigInteger.class))); break; } // target, depth, p, q
+      case ERROR: { break; }
+      case UPDATE_ACK: { break; }
+      case CLOSED_FOUND: { closedFound(p); break; } // id, target, fingerprints
+      case CAPABILITY_UPDATE: { s.capabilities(p.data(0, Integer.class), p.data(1, Integer.class), p.data(2, Integer.class), p.data(3, Double.class)); break; } // processors, cpu %, memory %, expansions/s
+      default: Log.e("unhandled packet type received: " + p.type().name());
+    }
+
+    if (null != callback) callback.accept(p);
+  }
+
+  /**
+   * Verifies a reported goal and, the first time a target is solved, tells every other client to stop searching it.
+   * Writes only queue, so a client that stopped reading cannot hold up the ones after it; its session is
+   * disconnected instead once its queue backs up (see {@link Session}).
+   * @param s the reporting session
+   * @param target the semiprime
+   * @param f the claimed factors
+   */
+  private void solved(Session s, BigInteger target, Packet.Factors f)
+  {
+    if (null == target || BigInteger.ONE.equals(f.p) || BigInteger.ONE.equals(f.q) || !target.equals(f.p.multiply(f.q))) { Log.e(s + ": rejected bogus solution for " + target + ": " + f); return; }
+    if (null != solutions.putIfAbsent(target, f)) return;
+
+    Log.o(s + ": solved " + target + " = " + f.p + " * " + f.q);
+    for (Session other : sessions) if (other != s) other.write(Packet.Type.SOLUTION_UPDATE, target, f.depth, f.p, f.q);
+
+    final Coordinator c = coordinators.get(target);
+    if (null != c) c.solved(f);
+  }
+
+  /// an empty lease, the client will ask again later
+  private static Packet idle() { return new Packet(Packet.Type.OPEN_UPDATE, -1L, BigInteger.ZERO, 0L, new ArrayList<>()); }
+
+  /**
+   * Merges a client's delta update into the view of its target.
+   * Updates may arrive twice after a reconnect, which merging tolerates.
+   * @param p an UPDATE packet: seq, target, generated nodes, expanded nodes
+   * @return the acknowledgement to send back, or null if the update was malformed
+   */
+  public Packet update(Packet p)
+  {
+    try
+    {
+      final long seq = p.data(0, Long.class);
+      final BigInteger target = p.data(1, BigInteger.class);
+      views.computeIfAbsent(target, View::new).merge(p.asCollection(2), p.asCollection(3));
+      return new Packet(Packet.Type.UPDATE_ACK, seq);
+    }
+    catch (Throwable t) { Log.e("invalid update: " + p, t); return null; }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //
+  // Distributed closed set
+  //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Routes a batch of expanded fingerprints to the sessions that own them.
+   * The sender joins the ring first, so every client that contributes entries also contributes capacity.
+   * Joining moves part of other shards' ranges to the new session; entries stored before then are not
+   * moved with them, which only means fewer duplicates are found.
+   * @param s the sending session
+   * @param p a CLOSED_UPDATE packet: id, target, fingerprints
+   */
+  private void closedUpdate(Session s, Packet p)
+  {
+    join(s);
+    final BigInteger target = p.data(1, BigInteger.class);
+    for (Map.Entry<Session, long[]> e : partition(p.asLongs(2)).entrySet()) e.getKey().write(Packet.Type.CLOSED_UPDATE, 0L, target, e.getValue());
+  }
+
+  /**
+   * Splits a batch of lookups across the owning sessions; each part gets its own id so the answer can be routed back.
+   * @param s the requesting session
+   * @param p a CLOSED_CHECK packet: id, target, fingerprints
+   */
+  private void closedCheck(Session s, Packet p)
+  {
+    final BigInteger target = p.data(1, BigInteger.class);
+    for (Map.Entry<Session, long[]> e : partition(p.asLongs(2)).entrySet())
+    {
+      final long id = nextCheck.getAndIncrement();
+      checks.put(id, new Session[] { s, e.getKey() });
+      if (!e.getKey().write(Packet.Type.CLOSED_CHECK, id, target, e.getValue())) checks.remove(id);
+    }
+  }
+
+  /**
+   * Passes an owner's answer back to whoever asked. Empty answers only retire the check.
+   * @param p a CLOSED_FOUND packet: id, target, fingerprints
+   */
+  private void closedFound(Packet p)
+  {
+    final Session[] check = checks.remove(p.data(0, Long.class));
+    final long[] found = p.asLongs(2);
+    if (null != check && found.length > 0) check[0].write(Packet.Type.CLOSED_FOUND, 0L, p.data(1, BigInteger.class), found);
+  }
+
+  private void join(Session s)
+  {
+    if (s.disconnected() || s.shard(true)) return;
+    for (int i = 0; i < SHARD_POINTS; ++i) ring.put(Fingerprints.mix(s.id() * SHARD_POINTS + i), s);
+    shards.incrementAndGet();
+  }
+
+  /// drops a closed session's shard and any checks waiting on it
+  private void leave(Session s)
+  {
+    if (s.shard(false))
+    {
+      for (int i = 0; i < SHARD_POINTS; ++i) ring.remove(Fingerprints.mix(s.id() * SHARD_POINTS + i), s);
+      shards.decrementAndGet();
+    }
+    checks.values().removeIf(check -> s == check[0] || s == check[1]);
+  }
+
+  private Session owner(long fingerprint)
+  {
+    Map.Entry<Long, Session> e = ring.ceilingEntry(fingerprint);
+    if (null == e) e = ring.firstEntry(); // wrap around
+    return null != e ? e.getValue() : null;
+  }
+
+  /**
+   * @return the batch split by owning session (empty if no session holds a shard yet)
+   */
+  private Map<Session, long[]> partition(long[] fingerprints)
+  {
+    final Session[] owners = new Session[fingerprints.length];
+    final Map<Session, Integer> counts = new HashMap<>();
+    for (int i = 0; i < fingerprints.length; ++i)
+    {
+      if (null == (owners[i] = owner(fingerprints[i]))) return new HashMap<>();
+      counts.merge(owners[i], 1, Integer::sum);
+    }
+
+    final Map<Session, long[]> parts = new HashMap<>();
+    for (Map.Entry<Session, Integer> e : counts.entrySet()) parts.put(e.getKey(), new long[e.getValue()]);
+    for (int i = 0; i < fingerprints.length; ++i)
+    {
+      final int left = counts.merge(owners[i], -1, Integer::sum);
+      parts.get(owners[i])[left] = fingerprints[i];
+    }
+    return parts;
+  }
+
   //////////////////////////////////////////////////////////////////////////////
   //
   // Helper classes
   //
   //////////////////////////////////////////////////////////////////////////////
 
+  /**
+   * Union of the search state reported by every client working on one target, kept as a bounded sample.
+   * Only nodes whose fingerprint has its low {@link #level} bits clear are remembered (open, or expanded by
+   * some client); when more than {@link #MAX_SAMPLE} are, the level goes up and half of them are dropped.
+   * The same node is always in or out of the sample, so duplicate updates still merge, and the counts are
+   * the sampled ones scaled back up: exact until the first level change, estimates after.
+   */
+  public static class View
+  {
+    public static final int MAX_SAMPLE = 1 << 16; ///< nodes remembered per target
+
+    private final BigInteger          target;
+    private final Map<Long, Boolean>  sample = new HashMap<>(); ///< fingerprint -> expanded somewhere; guarded by this
+    private int                       level  = 0; ///< 1 in 2^level nodes are sampled; guarded by this
+
+    View(BigInteger target) { this.target = target; }
+
+    @Override public String toString() { return target + ": " + open() + " open, " + closed() + " closed (1 in " + (1L << level()) + " sampled)"; }
+
+    synchronized void merge(Collection<Packet.Factors> generated, Collection<Packet.Factors> expanded)
+    {
+      for (Packet.Factors f : expanded) { final long fp = Fingerprints.fingerprint(f.depth, f.p, f.q); if (sampled(fp)) sample.put(fp, true); }
+      for (Packet.Factors f : generated) { final long fp = Fingerprints.fingerprint(f.depth, f.p, f.q); if (sampled(fp)) sample.putIfAbsent(fp, false); }
+      while (sample.size() > MAX_SAMPLE) { ++level; sample.keySet().removeIf(fp -> !sampled(fp)); }
+    }
+
+    private boolean sampled(long fp) { return 0 == (fp & ((1L << level) - 1)); }
+
+    public BigInteger target() { return target; }
+    public synchronized int level() { return level; }
+
+    /// @return about how many nodes were generated somewhere and expanded nowhere yet
+    public synchronized long open() { return count(false) << level; }
+
+    /// @return about how many nodes some client expanded
+    public synchronized long closed() { return count(true) << level; }
+
+    private long count(boolean expanded)
+    {
+      long n = 0;
+      for (boolean e : sample.values()) if (e == expanded) ++n;
+      return n;
+    }
+  }
 
   /**
-   * Handles incoming client connections.
+   * One i/o thread: accepts (loop 0 only), reads, and flushes the sessions registered w/its selector.
    */
-  private class ServerThread implements Runnable
+  class Loop implements Runnable
   {
-    @Override public void run()
+    private final Selector selector;
+    private final Thread   thread;
+    private final Queue<Session> registrations = new ConcurrentLinkedQueue<>(); ///< accepted, not yet registered
+    private final Queue<Session> flushes       = new ConcurrentLinkedQueue<>(); ///< have queued output
+
+    Loop(int i) throws IOException
     {
-      if (!ready.compareAndSet(false, true) || exiting()) { Log.e("duplicate server start launch?"); return; }
+      this.selector = Selector.open();
+      this.thread = new Thread(this, "server i/o " + i);
+    }
+
+    void register(Session s) { registrations.offer(s); selector.wakeup(); }
+    void flush(Session s) { flushes.offer(s); selector.wakeup(); }
 
+    @Override public void run()
+    {
       try
       {
-        Log.o("server launched and ready to accept clients");
         while (!exiting() && !Thread.interrupted())
         {
-          try { clients.add(new Client( socket.accept() )); }
-          catch (Throwable t) { if (!exiting() && !Thread.interrupted()) Log.e("client accept failure: " + t); }
+          selector.select();
+
+          Session s;
+          while (null != (s = registrations.poll()))
+          {
+            // start out writable so anything queued before registration is flushed
+            try { s.key( s.channel().register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, s) ); }
+            catch (Throwable t) { Log.e(s + ": registration failure", t); s.close(); }
+          }
+          while (null != (s = flushes.poll()))
+          {
+            s.flushPending(false);
+            final SelectionKey key = s.channel().keyFor(selector);
+            try { if (null != key && key.isValid() && !s.flush()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE); }
+            catch (Throwable t) { s.close(); }
+          }
+
+          final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext())
+          {
+            final SelectionKey key = keys.next(); keys.remove();
+            if (!key.isValid()) continue;
+
+            if (key.isAcceptable()) { accept(); continue; }
+
+            s = (Session) key.attachment();
+            try
+            {
+              if (key.isReadable() && !s.read()) { s.close(); continue; }
+              if (key.isValid() && key.isWritable() && s.flush()) key.interestOps(SelectionKey.OP_READ);
+            }
+            catch (Throwable t) { s.close(); }
+          }
         }
       }
-      catch (Throwable t) { if (!exiting() && !Thread.interrupted()) Log.e(t); }
+      catch (Throwable t) { if (!exiting()) Log.e(t); }
+      finally { try { selector.close(); } catch (Throwable ignored) {} }
+    }
+  }
 
+  /// accepts every pending connection and spreads them across the i/o loops
+  private void accept()
+  {
+    SocketChannel c;
+    try
+    {
+      while (null != (c = socket.accept()))
+      {
+        try
+        {
+          c.configureBlocking(false);
+          c.setOption(StandardSocketOptions.TCP_NODELAY, true);
+          final Loop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+          final Session s = new Session(nextSession.getAndIncrement(), c, loop, workers, this::handle);
+          sessions.add(s);
+          loop.register(s);
+        }
+        catch (Throwable t) { Log.e("client accept failure: " + t); try { c.close(); } catch (Throwable ignored) {} }
+      }
+    }
+    catch (Throwable t) { if (!exiting()) Log.e("client accept failure: " + t); }
+  }
+
+  /// blocking mode: accepts until the socket is closed, starting a thread per session
+  private void acceptBlocking()
+  {
+    while (!exiting())
+    {
+      SocketChannel c = null;
       try
       {
-        Log.o("server shutting down...");
-        serverThread.set(null); exiting.set(true); ready.set(false);
-        Client c; while (null != (c = clients.poll())) { if (c.connected()) c.close(); }
-        Log.o("server shutdown");
+        c = socket.accept();
+        c.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        final Session s = new Session(nextSession.getAndIncrement(), c, null, null, this::handle);
+        sessions.add(s);
+        Utils.thread(s::run, "session " + s.id(), true).start();
+      }
+      catch (Throwable t)
+      {
+        if (exiting()) return;
+        Log.e("client accept failure: " + t);
+        if (null != c) try { c.close(); } catch (Throwable ignored) {}
       }
-      catch (Throwable t) { Log.e("error during server shutdown", t); }
     }
   }
 
@@ -134,10 +632,18 @@ public class Server
     final ServerGui serverGui = new ServerGui();
 
     Solver.networkHost(true);
-    for (final String semiprime : semiprimes)
+    Solver.server(serverGui.server());
+    Solver.callback(n -> Log.o(null != n ? "solution: " + n.p + " * " + n.q : "no solution found"));
+
+    // host every target at once; smaller targets get a larger share so they finish first while the large ones keep moving
+    final List<Solver> solvers = new ArrayList<>();
+    for (int i = 0; i < semiprimes.length; ++i)
     {
-      final Solver solver = new Solver(new BigInteger(semiprime.trim().replace("\n","")));
-      solver.start(); solver.join();
+      final BigInteger target = new BigInteger(semiprimes[i].trim().replace("\n",""));
+      serverGui.server().share(target, 0, 1 << (semiprimes.length - 1 - i));
+      solvers.add(new Solver(target));
     }
+    for (Solver solver : solvers) solver.start();
+    for (Solver solver : solvers) solver.join();
   }
 }
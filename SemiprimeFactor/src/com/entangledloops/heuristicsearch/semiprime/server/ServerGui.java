@@ -6,10 +6,17 @@ import com.entangledloops.heuristicsearch.semiprime.Solver;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.text.DefaultHighlighter;
 import java.awt.*;
 import java.awt.event.WindowEvent;
+import java.math.BigInteger;
 import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Stephen Dunn
@@ -28,6 +35,7 @@ public class ServerGui extends JFrame implements DocumentListener
   private static final int    DEFAULT_HEIGHT = 768;
   private static final int    HISTORY_ROWS   = 10;
   private static final int    HISTORY_COLS   = 20;
+  private static final int    TARGETS_PERIOD_MILLIS = 1000; ///< refresh rate of the hosted targets table
 
   //////////////////////////////////////////////////////////////////////////////
   //
@@ -36,6 +44,7 @@ public class ServerGui extends JFrame implements DocumentListener
   //////////////////////////////////////////////////////////////////////////////
 
   private JTextArea txtHistory;
+  private Targets   targets;
 
   //////////////////////////////////////////////////////////////////////////////
   //
@@ -65,6 +74,7 @@ public class ServerGui extends JFrame implements DocumentListener
   }
 
   public ServerSocket socket() { return server.socket(); }
+  public Server server() { return server; }
 
   public boolean ready() { return server.ready(); }
 
@@ -115,8 +125,16 @@ public class ServerGui extends JFrame implements DocumentListener
     DefaultHighlighter highlighter = new DefaultHighlighter();
     txtHistory.setHighlighter(highlighter);
 
+    // per-target progress, refreshed while the gui is up
+    targets = new Targets();
+    final JTable tblTargets = new JTable(targets);
+    tblTargets.setFillsViewportHeight(true);
+    final JScrollPane scrollPaneTargets = new JScrollPane(tblTargets);
+    new Timer(TARGETS_PERIOD_MILLIS, e -> targets.refresh()).start();
+
     // organize them and add them to the panel
-    final JPanel mainPanel = new JPanel(new GridLayout(1, 1));
+    final JPanel mainPanel = new JPanel(new GridLayout(2, 1));
+    mainPanel.add(scrollPaneTargets);
     mainPanel.add(scrollPaneHistory);
 
     // add the panel to the frame and show everything
@@ -136,6 +154,45 @@ public class ServerGui extends JFrame implements DocumentListener
     return true;
   }
 
+  /**
+   * One row per hosted target: its share, lease activity, and throughput over the last refresh.
+   */
+  private class Targets extends AbstractTableModel
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final String[] columns = { "target", "priority", "weight", "queued units", "leases out", "leases issued", "expanded", "expansions/s" };
+    private final List<Object[]> rows = new ArrayList<>();
+    private final Map<BigInteger, long[]> last = new HashMap<>(); ///< { expanded, nanoTime } at the previous refresh
+
+    void refresh()
+    {
+      rows.clear();
+      final long now = System.nanoTime();
+      final Map<BigInteger, long[]> seen = new HashMap<>();
+      final List<Coordinator> hosted = new ArrayList<>(server.coordinators());
+      hosted.sort(Comparator.comparing(Coordinator::target));
+      for (Coordinator c : hosted)
+      {
+        final long expanded = c.expanded();
+        final long[] prev = last.get(c.target());
+        final double rate = null != prev && now > prev[1] ? (expanded - prev[0]) / ((now - prev[1]) / 1e9) : c.rate();
+        seen.put(c.target(), new long[] { expanded, now });
+
+        final String digits = c.target().toString();
+        rows.add(new Object[] { c.target().bitLength() + " bits: " + (digits.length() > 12 ? digits.substring(0, 12) + "..." : digits),
+            c.priority(), c.weight(), c.queued(), c.leases(), c.leased(), expanded, String.format("%.0f", rate) });
+      }
+      last.clear(); last.putAll(seen);
+      fireTableDataChanged();
+    }
+
+    @Override public int getRowCount() { return rows.size(); }
+    @Override public int getColumnCount() { return columns.length; }
+    @Override public String getColumnName(int column) { return columns[column]; }
+    @Override public Object getValueAt(int row, int column) { return rows.get(row)[column]; }
+  }
+
   @Override
   public void insertUpdate(DocumentEvent e)
   {
@@ -0,0 +1,333 @@
+package com.entangledloops.heuristicsearch.semiprime.server;
+
+import com.entangledloops.heuristicsearch.semiprime.Log;
+import com.entangledloops.heuristicsearch.semiprime.Packet;
+import com.entangledloops.heuristicsearch.semiprime.Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * One inbound connection on a non-blocking server.
+ *
+ * Bytes are read and written only by the session's i/o thread. Complete frames are decoded there
+ * and handed to the worker pool, one packet at a time per session so each client's packets are
+ * handled in the order they arrived. Any thread may write; frames are appended to the session's
+ * out buffer and flushed by the i/o thread once the channel is writable.
+ *
+ * W/o an i/o thread the session is blocking instead: its own (usually virtual) thread runs
+ * read() in a loop and handles each packet inline, and a second one sends the frames writers queue.
+ *
+ * Either way a write never waits on the peer, so one slow client cannot hold up a broadcast. What is
+ * queued for a client is bounded: once more than {@link #MAX_QUEUED_BYTES} wait, or nothing queued has
+ * gone out for {@link #STALL_MILLIS}, the client is taken to have stopped reading and is disconnected.
+ *
+ * @since October 19, 2026
+ */
+public class Session
+{
+  private static final int BUFFER_BYTES = 4 << 10; ///< initial per-connection buffer size, grows to fit the largest frame
+  public static final int  MAX_QUEUED_BYTES = 16 << 20; ///< a client w/more than this waiting to be sent is disconnected
+  public static final long STALL_MILLIS     = 10000L; ///< a client that has taken none of its queued bytes for this long is disconnected
+
+  private final long          id; ///< unique per server, places this session on the closed-set shard ring
+  private final SocketChannel channel;
+  private final Server.Loop   loop; ///< the i/o thread that owns this channel, or null if blocking
+  private final String        address;
+  private SelectionKey        key;
+
+  // i/o buffers
+  private ByteBuffer in  = ByteBuffer.allocate(BUFFER_BYTES); ///< i/o thread only
+  private ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES); ///< in write mode, guarded by this (unused if blocking)
+  private final BlockingQueue<ByteBuffer> outbox = new LinkedBlockingQueue<>(); ///< blocking mode: encoded frames for the writer thread
+  private final AtomicLong queued = new AtomicLong(0); ///< blocking mode: bytes in the outbox
+  private volatile long    progress = System.nanoTime(); ///< when queued bytes last went out (or were first queued)
+
+  // dispatch
+  private final Queue<Packet> inbox      = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean dispatched = new AtomicBoolean(false); ///< true while a worker owns the inbox
+  private final Executor                      workers; ///< null if blocking
+  private final BiConsumer<Session, Packet>   handler;
+
+  // client info
+  private final AtomicReference<String> username = new AtomicReference<>();
+  private final AtomicReference<String> email    = new AtomicReference<>();
+
+  // advertised capabilities and measured speed, used to size leases
+  private volatile int    processors   = 0;
+  private volatile int    processorCap = 0;
+  private volatile int    memoryCap    = 0;
+  private volatile double rate         = 0; ///< expansions/s: advertised at first, then learned from returned leases
+
+  private final AtomicBoolean connected    = new AtomicBoolean(true);
+  private final AtomicBoolean shard        = new AtomicBoolean(false); ///< holds a shard of the distributed closed set
+  private final AtomicBoolean flushPending = new AtomicBoolean(false); ///< already queued on the i/o thread, so no need to wake it again
+
+  Session(long id, SocketChannel channel, Server.Loop loop, Executor workers, BiConsumer<Session, Packet> handler)
+  {
+    this.id = id;
+    this.channel = channel;
+    this.loop = loop;
+    this.workers = workers;
+    this.handler = handler;
+
+    String address;
+    try { address = channel.getRemoteAddress().toString(); } catch (Throwable t) { address = "unknown"; }
+    this.address = address;
+  }
+
+  @Override public String toString()
+  {
+    final String username = username();
+    final String email = email();
+    return address + " : " + (null != username ? username : "anonymous") + (null != email ? " : " + email : "");
+  }
+
+  public String email() { return email.get(); }
+  public String email(String email) { Log.o("email updated: " + email() + " -> " + email); return this.email.getAndSet(email); }
+
+  public String username() { return username.get(); }
+  public String username(String username) { Log.o("username updated: " + username() + " -> " + username); return this.username.getAndSet(username); }
+
+  public int processors() { return processors; }
+  public int processorCap() { return processorCap; }
+  public int memoryCap() { return memoryCap; }
+  public double rate() { return rate; }
+
+  /**
+   * Records what the client advertised about itself.
+   * @param rate expansions/s the client measured on a short benchmark search
+   */
+  public void capabilities(int processors, int processorCap, int memoryCap, double rate)
+  {
+    this.processors = processors;
+    this.processorCap = processorCap;
+    this.memoryCap = memoryCap;
+    if (rate > 0 && !Double.isInfinite(rate)) this.rate = rate;
+    Log.o(toString() + ": " + processors + " processors, " + processorCap + "% cpu, " + memoryCap + "% memory, " + String.format("%.0f", rate) + " expansions/s");
+  }
+
+  /**
+   * Folds the speed seen on a returned lease into the estimate, so leases track the client's real throughput.
+   * @param nanos wall time from lease to return
+   */
+  void observe(long expansions, long nanos)
+  {
+    if (expansions <= 0 || nanos <= 0) return;
+    final double observed = expansions / (nanos / 1e9);
+    rate = rate > 0 ? 0.5 * rate + 0.5 * observed : observed;
+  }
+
+  public boolean connected() { return connected.get(); }
+  public boolean disconnected() { return !connected(); }
+
+  public long id() { return id; }
+  public boolean shard() { return shard.get(); }
+  boolean shard(boolean shard) { return this.shard.getAndSet(shard); }
+
+  boolean blocking() { return null == loop; }
+  SocketChannel channel() { return channel; }
+  void key(SelectionKey key) { this.key = key; }
+  void flushPending(boolean pending) { flushPending.set(pending); }
+
+  /**
+   * Queues a packet for this client. Safe to call from any thread, and never waits on the client.
+   * @return false if the session is closed, the packet could not be encoded, or the client stopped reading (and was disconnected)
+   */
+  public boolean write(Packet.Type type, Object... data) { return write(new Packet(type, data)); }
+  public boolean write(Packet packet)
+  {
+    if (null == packet || disconnected()) return false;
+    if (blocking()) return queue(packet);
+
+    final long backlog;
+    final boolean backedUp;
+    synchronized (this)
+    {
+      backlog = out.position();
+      if (!(backedUp = backedUp(backlog)))
+      {
+        try { out = packet.encode(out); out.position(out.limit()).limit(out.capacity()); }
+        catch (Throwable t) { Log.e(toString() + ": failed to encode " + packet, t); return false; }
+        if (0 == backlog) progress = System.nanoTime();
+      }
+    }
+    if (backedUp) return overflow(backlog);
+    if (flushPending.compareAndSet(false, true)) loop.flush(this);
+    return true;
+  }
+
+  /// blocking mode: encodes the frame on the caller's thread and leaves it for the writer
+  private boolean queue(Packet packet)
+  {
+    final long backlog = queued.get();
+    if (backedUp(backlog)) return overflow(backlog);
+
+    final ByteBuffer frame;
+    try { frame = packet.encode(ByteBuffer.allocate(BUFFER_BYTES)); }
+    catch (Throwable t) { Log.e(toString() + ": failed to encode " + packet, t); return false; }
+    if (0 == queued.getAndAdd(frame.remaining())) progress = System.nanoTime();
+    outbox.offer(frame);
+    return true;
+  }
+
+  /// true if the client has stopped taking what is sent to it
+  private boolean backedUp(long backlog)
+  {
+    return backlog > MAX_QUEUED_BYTES || (backlog > 0 && System.nanoTime() - progress > TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS));
+  }
+
+  private boolean overflow(long backlog)
+  {
+    Log.e(toString() + ": not reading, disconnecting w/" + backlog + " bytes unsent");
+    close();
+    return false;
+  }
+
+  /**
+   * Closes the connection and tells the handler (w/a null packet) after any queued packets.
+   */
+  public void close()
+  {
+    if (!connected.compareAndSet(true, false)) return;
+    try { if (null != key) key.cancel(); channel.close(); }
+    catch (Throwable t) { Log.e(t); }
+    if (blocking()) outbox.offer(CLOSED_FRAME);
+    dispatch(null);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //
+  // i/o thread
+  //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Reads what is available and dispatches every complete frame.
+   * @return false if the peer closed the connection or sent a corrupt frame
+   */
+  boolean read() throws IOException
+  {
+    if (channel.read(in) < 0) return false;
+
+    in.flip();
+    while (in.remaining() >= Packet.HEADER_BYTES)
+    {
+      final int prefix = in.getInt(in.position()), len = Packet.length(prefix);
+      if (len > Packet.MAX_FRAME_BYTES) { Log.e(toString() + ": invalid frame length: " + len); return false; }
+      if (in.remaining() < Packet.HEADER_BYTES + len) break;
+
+      final int end = in.position() + Packet.HEADER_BYTES + len, limit = in.limit();
+      in.position(in.position() + Packet.HEADER_BYTES).limit(end);
+      try { dispatch(Packet.decode(in, Packet.compressed(prefix))); }
+      catch (IllegalArgumentException e) { Log.e(toString() + ": " + e.getMessage()); return false; }
+      in.limit(limit).position(end);
+    }
+    in.compact();
+
+    // make room for a partial frame that does not fit yet
+    if (!in.hasRemaining() || (in.position() >= Packet.HEADER_BYTES && Packet.length(in.getInt(0)) + Packet.HEADER_BYTES > in.capacity()))
+    {
+      final int needed = in.position() >= Packet.HEADER_BYTES ? Packet.length(in.getInt(0)) + Packet.HEADER_BYTES : in.capacity() << 1;
+      final ByteBuffer larger = ByteBuffer.allocate(Math.max(needed, in.capacity() << 1));
+      in.flip();
+      larger.put(in);
+      in = larger;
+    }
+    return true;
+  }
+
+  /**
+   * Writes as much of the out buffer as the socket will take.
+   * @return true if everything queued so far was written
+   */
+  synchronized boolean flush() throws IOException
+  {
+    out.flip();
+    try { if (channel.write(out) > 0) progress = System.nanoTime(); return !out.hasRemaining(); }
+    finally { out.compact(); }
+  }
+
+  /**
+   * Blocking mode: starts the writer, then reads and handles packets until the connection closes.
+   */
+  void run()
+  {
+    Utils.thread(this::send, "session " + id + " writer", true).start();
+    try { while (connected() && read()); }
+    catch (Throwable t) { if (connected()) Log.e(toString() + ": read failure: " + t.getMessage()); }
+    close();
+  }
+
+  private static final ByteBuffer CLOSED_FRAME = ByteBuffer.allocate(0); ///< marks the end of the outbox
+
+  /// blocking mode: the writer thread, sending queued frames in order until the session closes
+  private void send()
+  {
+    try
+    {
+      for (ByteBuffer frame; CLOSED_FRAME != (frame = outbox.take()); )
+      {
+        final int bytes = frame.remaining();
+        while (frame.hasRemaining()) channel.write(frame);
+        progress = System.nanoTime();
+        queued.addAndGet(-bytes);
+      }
+    }
+    catch (InterruptedException ignored) {}
+    catch (IOException e) { if (connected()) Log.e(toString() + ": write failure: " + e.getMessage()); }
+    close();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //
+  // worker pool
+  //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final Packet CLOSED = new Packet(Packet.Type.ERROR); ///< marks the end of the inbox
+
+  private void dispatch(Packet p)
+  {
+    if (blocking())
+    {
+      try { handler.accept(this, p); }
+      catch (Throwable t) { Log.e(toString() + ": error handling " + p, t); }
+      return;
+    }
+
+    inbox.offer(null != p ? p : CLOSED);
+    if (!dispatched.compareAndSet(false, true)) return;
+    try { workers.execute(this::drain); }
+    catch (Throwable t) { dispatched.set(false); } // server is shutting down
+  }
+
+  /// runs on a worker, handling packets in arrival order until the inbox is empty
+  private void drain()
+  {
+    while (true)
+    {
+      Packet p;
+      while (null != (p = inbox.poll()))
+      {
+        try { handler.accept(this, CLOSED == p ? null : p); }
+        catch (Throwable t) { Log.e(toString() + ": error handling " + p, t); }
+      }
+
+      dispatched.set(false);
+      if (inbox.isEmpty() || !dispatched.compareAndSet(false, true)) return;
+    }
+  }
+}